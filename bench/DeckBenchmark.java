@@ -0,0 +1,324 @@
+/**
+ * The {@code DeckBenchmark} class measures the stages of the deck pipeline,
+ * so that a change can be checked for speed-ups and regressions.
+ *
+ * <p>The JMH suite in {@code bench/jmh} (built by {@code bench/pom.xml})
+ * measures the same stages with forks and proper statistics; this is the quick
+ * check that needs nothing but the JDK: every benchmark is warmed up first,
+ * then run in several timed rounds, and the mean time per operation and the
+ * spread between rounds are printed. Results are fed into a sink so the JIT
+ * cannot remove the work.</p>
+ *
+ * <ul>
+ *     <li><strong>parse:</strong> {@link SlayTheSpire#readTxtFile(String, DeckTally)}
+ *     over deck sizes and invalid-line ratios;</li>
+ *     <li><strong>tally:</strong> {@code calculateTotalDeckCost} for a
+ *     {@code HashMap} and a {@link CardTable};</li>
+ *     <li><strong>ids:</strong> {@link DeckIDAllocator} as the ID history
+ *     grows, including the time to open it;</li>
+ *     <li><strong>pdf:</strong> {@link GeneratePDFFile#generatePDF} and
+ *     {@link GeneratePDFFile#generateVoidPDF} (needs iText on the classpath);</li>
+ *     <li><strong>report:</strong> every {@link ReportWriter} format written to
+ *     memory from the same parsed deck (PDF only with iText).</li>
+ * </ul>
+ *
+ * <p>Input decks come from {@link SyntheticDeckGenerator} with fixed seeds.
+ * Usage: {@code [--quick] [parse|tally|ids|pdf|report ...]}; without names every
+ * benchmark runs. Compile with
+ * {@code javac -cp itextpdf.jar -d out src/*.java bench/*.java}.</p>
+ */
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class DeckBenchmark {
+
+    /**
+     * One benchmarked operation. The returned value goes into the sink.
+     */
+    interface Operation {
+        long run() throws Exception;
+    }
+
+    private static volatile long sink;
+
+    private final long warmup_millis;
+    private final long round_millis;
+    private final int rounds;
+
+    /**
+     * Creates a harness with the given timing.
+     *
+     * @param warmup_millis how long each benchmark runs before it is measured
+     * @param round_millis how long each measured round lasts
+     * @param rounds how many rounds are measured
+     */
+    public DeckBenchmark(long warmup_millis, long round_millis, int rounds) {
+        this.warmup_millis = warmup_millis;
+        this.round_millis = round_millis;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Runs one benchmark and prints its line of the results table.
+     *
+     * @param name the benchmark name
+     * @param params the parameters of this run
+     * @param operation the operation to measure
+     * @throws Exception if the operation fails
+     */
+    public void measure(String name, String params, Operation operation) throws Exception {
+        runFor(operation, warmup_millis);
+
+        double[] nanos_per_op = new double[rounds];
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            long ops = runFor(operation, round_millis);
+            nanos_per_op[round] = (double) (System.nanoTime() - start) / ops;
+        }
+
+        Arrays.sort(nanos_per_op);
+        double mean = Arrays.stream(nanos_per_op).average().orElse(0);
+        System.out.printf("%-10s %-32s %14.1f %12.1f %12.1f %14.0f%n", name, params, mean,
+                nanos_per_op[0], nanos_per_op[rounds - 1], 1_000_000_000.0 / mean);
+    }
+
+    private static long runFor(Operation operation, long millis) throws Exception {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        long local = 0;
+        do {
+            local += operation.run();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        sink += local;
+        return ops;
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-10s %-32s %14s %12s %12s %14s%n", "benchmark", "params", "ns/op (mean)", "min", "max", "ops/s");
+    }
+
+    /**
+     * Parses synthetic decks of several sizes and invalid ratios.
+     */
+    void benchParse(Path work) throws Exception {
+        int[] sizes = {10, 100, 1000};
+        double[] ratios = {0.0, 0.005, 0.05};
+        for (int size : sizes) {
+            for (double ratio : ratios) {
+                Path deck = work.resolve("parse_" + size + "_" + ratio + ".txt");
+                SyntheticDeckGenerator.generate(deck, size, ratio, 40, 7L);
+                String deck_path = deck.toString();
+                measure("parse", "lines=" + size + " invalid=" + ratio, () -> {
+                    DeckTally tally = new DeckTally();
+                    boolean valid = SlayTheSpire.readTxtFile(deck_path, tally);
+                    return tally.cardDeck.size() + (valid ? 1 : 0);
+                });
+            }
+        }
+    }
+
+    /**
+     * Sums the deck cost from a HashMap and from a CardTable.
+     */
+    void benchTally() throws Exception {
+        for (int distinct : new int[] {8, 100, 10_000}) {
+            HashMap<String, Integer> map = new HashMap<>();
+            CardTable table = new CardTable();
+            Random random = new Random(distinct);
+            for (int i = 0; i < distinct; i++) {
+                int cost = random.nextInt(7);
+                map.put(SyntheticDeckGenerator.cardName(i), cost);
+                table.add(SyntheticDeckGenerator.cardName(i), cost);
+            }
+            measure("tally", "HashMap cards=" + distinct, () -> SlayTheSpire.calculateTotalDeckCost(map));
+            measure("tally", "CardTable cards=" + distinct, () -> SlayTheSpire.calculateTotalDeckCost(table));
+        }
+    }
+
+    /**
+     * Allocates IDs against histories of growing size.
+     */
+    void benchIds(Path work) throws Exception {
+        for (int history : new int[] {0, 100_000, 1_000_000}) {
+            Path directory = Files.createDirectories(work.resolve("ids_" + history));
+            Path history_file = directory.resolve("DeckIDs.txt");
+            writeHistory(history_file, history);
+
+            long start = System.nanoTime();
+            DeckIDAllocator allocator = new DeckIDAllocator(history_file, 64);
+            double open_ms = (System.nanoTime() - start) / 1_000_000.0;
+            System.out.printf("%-10s %-32s %14s%n", "ids", "open history=" + history, String.format("%.1f ms", open_ms));
+
+            measure("ids", "nextId block=64 history=" + history, allocator::nextId);
+            measure("ids", "format history=" + history, () -> DeckIDAllocator.format(allocator.nextId()).length());
+        }
+    }
+
+    /**
+     * Renders report and VOID PDFs into a temporary directory.
+     */
+    void benchPdf(Path work) throws Exception {
+        try {
+            Class.forName("com.itextpdf.text.Document");
+        } catch (ClassNotFoundException e) {
+            System.out.printf("%-10s %-32s%n", "pdf", "skipped, iText is not on the classpath");
+            return;
+        }
+
+        PrintStream out = System.out;
+        for (int distinct : new int[] {8, 200}) {
+            Path deck = work.resolve("pdf_" + distinct + ".txt");
+            SyntheticDeckGenerator.generate(deck, 1000, 0.0, distinct, 11L);
+            DeckTally tally = new DeckTally();
+            SlayTheSpire.readTxtFile(deck.toString(), tally);
+            String pdf = work.resolve("bench_" + distinct + ".pdf").toString();
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); //generatePDF prints every path
+            try {
+                measure("pdf", "generatePDF cards=" + distinct, () -> {
+                    GeneratePDFFile.generatePDF(pdf, "000000001", tally.cardDeck.totalCost(), tally.cardDeck, tally.invalid_cards);
+                    return new File(pdf).length();
+                });
+            } finally {
+                System.setOut(out);
+            }
+        }
+
+        String void_pdf = work.resolve("bench_void.pdf").toString();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            measure("pdf", "generateVoidPDF", () -> {
+                GeneratePDFFile.generateVoidPDF(void_pdf, "000000001");
+                return new File(void_pdf).length();
+            });
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * Writes one parsed deck with every report format into memory.
+     */
+    void benchReport(Path work) throws Exception {
+        boolean itext = true;
+        try {
+            Class.forName("com.itextpdf.text.Document");
+        } catch (ClassNotFoundException e) {
+            itext = false;
+        }
+
+        for (int distinct : new int[] {8, 200}) {
+            Path deck = work.resolve("report_" + distinct + ".txt");
+            SyntheticDeckGenerator.generate(deck, 1000, 0.005, distinct, 13L);
+            DeckTally tally = new DeckTally();
+            SlayTheSpire.readTxtFile(deck.toString(), tally);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+
+            for (String format : new String[] {"csv", "jsonl", "bin", "pdf"}) {
+                if (format.equals("pdf") && !itext) {
+                    System.out.printf("%-10s %-32s%n", "report", "pdf skipped, iText is not on the classpath");
+                    continue;
+                }
+                ReportWriter writer = ReportWriter.forFormat(format);
+                measure("report", format + " cards=" + distinct, () -> {
+                    out.reset();
+                    writer.writeReport(out, "000000001", tally.cardDeck.totalCost(), tally.cardDeck, tally.invalid_cards);
+                    return out.size();
+                });
+            }
+        }
+    }
+
+    /**
+     * Writes {@code count} distinct random IDs, one per line.
+     *
+     * @param history_file the ID history to write
+     * @param count how many IDs it lists
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeHistory(Path history_file, int count) throws IOException {
+        Random random = new Random(count);
+        Set<Integer> ids = new HashSet<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(history_file, StandardCharsets.US_ASCII)) {
+            while (ids.size() < count) {
+                int id = random.nextInt(DeckIDAllocator.ID_SPACE);
+                if (ids.add(id)) {
+                    writer.write(DeckIDAllocator.format(id));
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Runs the selected benchmarks.
+     *
+     * @param args {@code [--quick] [parse|tally|ids|pdf|report ...]}
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        boolean quick = false;
+        Set<String> selected = new HashSet<>();
+        for (String arg : args) {
+            if (arg.equals("--quick")) {
+                quick = true;
+            } else {
+                selected.add(arg);
+            }
+        }
+        if (selected.isEmpty()) {
+            selected.addAll(List.of("parse", "tally", "ids", "pdf", "report"));
+        }
+
+        DeckBenchmark bench = quick ? new DeckBenchmark(200, 200, 3) : new DeckBenchmark(2000, 1000, 5);
+        Path work = Files.createTempDirectory("deck-bench");
+        try {
+            printHeader();
+            if (selected.contains("parse")) {
+                bench.benchParse(work);
+            }
+            if (selected.contains("tally")) {
+                bench.benchTally();
+            }
+            if (selected.contains("ids")) {
+                bench.benchIds(work);
+            }
+            if (selected.contains("pdf")) {
+                bench.benchPdf(work);
+            }
+            if (selected.contains("report")) {
+                bench.benchReport(work);
+            }
+        } finally {
+            deleteTree(work);
+        }
+        if (sink == 42) {
+            System.out.println(); //keeps the sink alive
+        }
+    }
+}
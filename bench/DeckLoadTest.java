@@ -0,0 +1,268 @@
+/**
+ * The {@code DeckLoadTest} class is a small local load-test client for
+ * {@link DeckServer}.
+ *
+ * <p>A few synthetic decks are made by {@link SyntheticDeckGenerator} and
+ * posted over and over by {@code --concurrency} client threads, each sending
+ * its next request as soon as the last one is answered. The whole response is
+ * read, so the time includes rendering. After a warm-up the latencies of all
+ * requests are sorted and the p50, p99 and maximum latency and the requests per
+ * second are printed.</p>
+ *
+ * <p>Before the load, one deck is posted and its response checked: status
+ * 200, an {@code X-Deck-Id} header, and a body that is a report of that
+ * format for that ID. The {@code deck_render_errors_total} and
+ * {@code deck_reports_rendered_total} counters of {@code /metrics} are read
+ * before and after. The run fails with exit status 1 if the check fails, a
+ * request fails, or the server counted a render error.</p>
+ *
+ * <p>Usage: {@code [--url http://127.0.0.1:8080/deck] [--requests N]
+ * [--concurrency N] [--warmup N] [--lines N] [--invalid ratio] [--decks N]
+ * [--format pdf|csv|jsonl|bin]}. Start the server first with
+ * {@code SlayTheSpire --serve}.</p>
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class DeckLoadTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final URI uri;
+    private final byte[][] decks;
+
+    /**
+     * Creates a client for the given endpoint and request bodies.
+     *
+     * @param uri the {@code /deck} endpoint, with any query
+     * @param decks the deck texts, sent in turn
+     */
+    public DeckLoadTest(URI uri, byte[][] decks) {
+        this.uri = uri;
+        this.decks = decks;
+    }
+
+    /**
+     * Sends one deck and reads the whole response.
+     *
+     * @return the number of response bytes
+     */
+    private long send(int index) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "text/plain; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(decks[index % decks.length]))
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long bytes = 0;
+        try (InputStream in = response.body()) {
+            byte[] buf = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buf)) > 0) {
+                bytes += read;
+            }
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode());
+        }
+        return bytes;
+    }
+
+    /**
+     * Posts the first deck once and checks the response: status 200, a deck
+     * ID, and a non-empty body in the requested format that names that ID.
+     *
+     * @param format the requested format, {@code null} for the server's
+     * @throws IOException if the response is not a report
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    public void check(String format) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "text/plain; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(decks[0]))
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("check: HTTP " + response.statusCode());
+        }
+        String deck_ID = response.headers().firstValue("X-Deck-Id").orElse(null);
+        if (deck_ID == null) {
+            throw new IOException("check: no X-Deck-Id header");
+        }
+        byte[] body = response.body();
+        if (body.length == 0) {
+            throw new IOException("check: empty report for deck " + deck_ID);
+        }
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        if (format == null || format.equals("pdf")) {
+            if (!text.startsWith("%PDF") || !text.contains("%%EOF")) { //a PDF cut short has no trailer
+                throw new IOException("check: deck " + deck_ID + " is not a whole PDF (" + body.length + " bytes)");
+            }
+        } else if (!format.equals("bin") && !text.contains(deck_ID)) {
+            throw new IOException("check: the " + format + " report does not name deck " + deck_ID);
+        }
+        System.out.println("Check:       deck " + deck_ID + ", " + body.length + " bytes of " + (format == null ? "pdf" : format));
+    }
+
+    /**
+     * Reads one counter without labels from {@code /metrics}.
+     *
+     * @param name the counter name
+     * @return its value, or -1 if the server does not report it
+     * @throws IOException if the metrics cannot be fetched
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    public long counter(String name) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri.resolve("/metrics")).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("metrics: HTTP " + response.statusCode());
+        }
+        for (String line : response.body().split("\n")) {
+            if (line.startsWith(name + " ")) {
+                return Long.parseLong(line.substring(name.length() + 1).trim());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sends {@code requests} decks from {@code concurrency} threads and
+     * returns the latency of each request in nanoseconds; failed requests
+     * are {@code -1}.
+     *
+     * @param requests how many requests to send
+     * @param concurrency how many requests are in flight at once
+     * @return the latencies, in request order
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public long[] run(int requests, int concurrency) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        Thread[] threads = new Thread[concurrency];
+        for (int t = 0; t < concurrency; t++) {
+            threads[t] = new Thread(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < requests) {
+                    long start = System.nanoTime();
+                    try {
+                        send(index);
+                        latencies[index] = System.nanoTime() - start;
+                    } catch (IOException e) {
+                        latencies[index] = -1;
+                    } catch (InterruptedException e) {
+                        latencies[index] = -1;
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }, "deck-load-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return latencies;
+    }
+
+    /**
+     * Returns the value at a percentile of sorted latencies, by the
+     * nearest-rank method.
+     */
+    private static long percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * Prints the latency percentiles and throughput of a run.
+     *
+     * @param latencies the latencies returned by {@link #run(int, int)}
+     * @param elapsed_nanos the wall-clock time of the run
+     * @param concurrency the number of client threads
+     */
+    public static void printResults(long[] latencies, long elapsed_nanos, int concurrency) {
+        long[] ok = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        double seconds = elapsed_nanos / 1e9;
+        System.out.println("Requests:    " + latencies.length + " (" + (latencies.length - ok.length) + " failed), "
+                + concurrency + " concurrent");
+        System.out.printf("Throughput:  %.1f requests/s%n", seconds > 0 ? ok.length / seconds : 0.0);
+        if (ok.length > 0) {
+            System.out.printf("Latency:     p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    percentile(ok, 50) / 1e6, percentile(ok, 99) / 1e6, ok[ok.length - 1] / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:" + DeckServer.DEFAULT_PORT + "/deck";
+        String format = null;
+        int requests = 2000;
+        int concurrency = 8;
+        int warmup = 200;
+        int lines = 200;
+        double invalid_ratio = 0.02;
+        int deck_count = 16;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url": url = args[i + 1]; break;
+                case "--format": format = args[i + 1]; break;
+                case "--requests": requests = Integer.parseInt(args[i + 1]); break;
+                case "--concurrency": concurrency = Integer.parseInt(args[i + 1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--lines": lines = Integer.parseInt(args[i + 1]); break;
+                case "--invalid": invalid_ratio = Double.parseDouble(args[i + 1]); break;
+                case "--decks": deck_count = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("deck-load");
+        byte[][] decks = new byte[deck_count][];
+        try {
+            for (int d = 0; d < deck_count; d++) {
+                Path deck = dir.resolve("deck" + d + ".txt");
+                SyntheticDeckGenerator.generate(deck, lines, invalid_ratio, 20, d);
+                decks[d] = Files.readAllBytes(deck);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        DeckLoadTest load = new DeckLoadTest(URI.create(format == null ? url : url + "?format=" + format), decks);
+        long errors_before = load.counter("deck_render_errors_total");
+        long rendered_before = load.counter("deck_reports_rendered_total");
+        try {
+            load.check(format);
+        } catch (IOException e) {
+            System.out.println("FAILED " + e.getMessage());
+            System.exit(1);
+        }
+        load.run(warmup, concurrency);
+        long start = System.nanoTime();
+        long[] latencies = load.run(requests, concurrency);
+        printResults(latencies, System.nanoTime() - start, concurrency);
+
+        long failed = Arrays.stream(latencies).filter(latency -> latency < 0).count();
+        long errors = load.counter("deck_render_errors_total") - errors_before;
+        long rendered = load.counter("deck_reports_rendered_total") - rendered_before;
+        System.out.println("Server:      " + rendered + " reports rendered, " + errors + " render errors");
+        if (failed > 0 || errors != 0 || rendered < 1 + warmup + requests) {
+            System.out.println("FAILED " + failed + " failed requests, " + errors + " render errors, "
+                    + rendered + " of " + (1 + warmup + requests) + " reports rendered");
+            System.exit(1);
+        }
+    }
+}
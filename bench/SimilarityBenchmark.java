@@ -0,0 +1,135 @@
+/**
+ * The {@code SimilarityBenchmark} class measures how {@link DeckSimilarity}
+ * scales with the number of decks.
+ *
+ * <p>Synthetic decks are made in families: a base deck of 20 cards from a pool
+ * of 400, and four variants that each swap one or two cards or change one
+ * card count. For every index size the time to add and build all decks, the
+ * mean time of an LSH query, the mean time of a brute-force scan over all
+ * signatures, and the recall of LSH against the brute-force scan (the share
+ * of decks at or above the threshold that LSH also finds) are printed. LSH
+ * query time should stay nearly flat while the scan grows with the index.</p>
+ *
+ * <p>Usage: {@code [--sizes 10000,100000,300000] [--queries N] [--threshold 0.8]}.</p>
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SimilarityBenchmark {
+
+    private static final int POOL = 400;
+    private static final int DECK_CARDS = 20;
+    private static final int FAMILY = 5;
+
+    private static volatile long sink;
+
+    /**
+     * Makes deck {@code deck} of the synthetic set; decks of one family share
+     * most of their cards.
+     */
+    static CardTable makeDeck(int deck) {
+        Random family = new Random(deck / FAMILY);
+        int[] cards = new int[DECK_CARDS];
+        int[] counts = new int[DECK_CARDS];
+        for (int c = 0; c < DECK_CARDS; c++) {
+            cards[c] = family.nextInt(POOL);
+            counts[c] = 1 + family.nextInt(3);
+        }
+
+        if (deck % FAMILY != 0) { //a variant of the base deck
+            Random variant = new Random(deck);
+            int changes = 1 + variant.nextInt(2);
+            for (int i = 0; i < changes; i++) {
+                int c = variant.nextInt(DECK_CARDS);
+                if (variant.nextBoolean()) {
+                    cards[c] = variant.nextInt(POOL);
+                } else {
+                    counts[c] = 1 + (counts[c] % 3);
+                }
+            }
+        }
+
+        CardTable table = new CardTable();
+        for (int c = 0; c < DECK_CARDS; c++) {
+            table.add(SyntheticDeckGenerator.cardName(cards[c]), 1, counts[c]);
+        }
+        return table;
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = {10_000, 100_000, 300_000};
+        int queries = 1000;
+        double threshold = 0.8;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes":
+                    String[] parts = args[i + 1].split(",");
+                    sizes = new int[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        sizes[p] = Integer.parseInt(parts[p].trim());
+                    }
+                    break;
+                case "--queries": queries = Integer.parseInt(args[i + 1]); break;
+                case "--threshold": threshold = Double.parseDouble(args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        System.out.printf("%-10s %12s %14s %14s %10s %12s%n", "decks", "build ms", "lsh us/query", "scan us/query",
+                "recall", "matches/q");
+        for (int size : sizes) {
+            run(size, queries, threshold);
+        }
+    }
+
+    private static void run(int size, int queries, double threshold) {
+        DeckSimilarity index = new DeckSimilarity();
+        long start = System.nanoTime();
+        for (int deck = 0; deck < size; deck++) {
+            index.add("deck" + deck, makeDeck(deck));
+        }
+        index.build();
+        double build_ms = (System.nanoTime() - start) / 1e6;
+
+        Random random = new Random(size);
+        int[] query_decks = new int[queries];
+        List<CardTable> query_tables = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            query_decks[q] = random.nextInt(size);
+            query_tables.add(makeDeck(query_decks[q]));
+        }
+
+        for (int q = 0; q < Math.min(queries, 200); q++) { //warm-up
+            sink += index.query(query_tables.get(q), threshold, Integer.MAX_VALUE).size();
+        }
+        long found = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            found += index.query(query_tables.get(q), threshold, Integer.MAX_VALUE).size();
+        }
+        double lsh_us = (System.nanoTime() - start) / 1e3 / queries;
+
+        int scan_queries = Math.max(1, Math.min(queries, 20_000_000 / size)); //the scan is linear, keep it short
+        long expected = 0;
+        long recalled = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < scan_queries; q++) {
+            for (int deck = 0; deck < size; deck++) {
+                if (index.similarity(query_decks[q], deck) >= threshold) {
+                    expected++;
+                }
+            }
+        }
+        double scan_us = (System.nanoTime() - start) / 1e3 / scan_queries;
+        for (int q = 0; q < scan_queries; q++) {
+            recalled += index.query(query_tables.get(q), threshold, Integer.MAX_VALUE).size();
+        }
+
+        sink += found;
+        System.out.printf("%-10d %12.1f %14.1f %14.1f %10.4f %12.2f%n", size, build_ms, lsh_us, scan_us,
+                expected == 0 ? 1.0 : (double) recalled / expected, (double) found / queries);
+    }
+}
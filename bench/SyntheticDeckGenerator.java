@@ -0,0 +1,102 @@
+/**
+ * The {@code SyntheticDeckGenerator} class writes deck files with a chosen
+ * size, invalid-line ratio and number of distinct cards, so that benchmark
+ * results can be reproduced offline.
+ *
+ * <p>The same seed always produces the same file. Invalid lines are spread
+ * over the kinds {@link SlayTheSpire#readTxtFile(String, DeckTally)} rejects:
+ * a cost outside 0..6, a missing {@code :} and a blank line.</p>
+ *
+ * <p>Usage: {@code <output directory> <deck count> [lines] [invalid ratio]
+ * [distinct cards] [seed]}.</p>
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class SyntheticDeckGenerator {
+
+    private static final String[] CARD_NAMES = {
+        "Strike", "Defend", "Bash", "Neutralize", "Survivor", "Zap", "Dualcast", "Eruption", "Vigilance",
+        "Genetic Algorithm", "Biased Cognition", "All For One", "Echo Form", "Catalyst", "Corruption",
+        "Demon Form", "Wraith Form", "Noxious Fumes", "Footwork", "Glacier", "Hyperbeam", "Meteor Strike"
+    };
+
+    /**
+     * Returns the name of the {@code index}-th synthetic card. The first names
+     * are real cards, later ones get a numeric suffix.
+     *
+     * @param index the card number
+     * @return the card name
+     */
+    public static String cardName(int index) {
+        String base = CARD_NAMES[index % CARD_NAMES.length];
+        int round = index / CARD_NAMES.length;
+        return round == 0 ? base : base + " " + round;
+    }
+
+    /**
+     * Writes one deck file.
+     *
+     * @param file the file to write
+     * @param lines the number of lines
+     * @param invalid_ratio the share of lines that are invalid, 0.0 to 1.0
+     * @param distinct_cards how many different card names are used
+     * @param seed the random seed
+     * @throws IOException if the file cannot be written
+     */
+    public static void generate(Path file, int lines, double invalid_ratio, int distinct_cards, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                String name = cardName(random.nextInt(Math.max(1, distinct_cards)));
+                if (random.nextDouble() < invalid_ratio) {
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            writer.write(name + ":" + (7 + random.nextInt(90))); //out of range
+                            break;
+                        case 1:
+                            writer.write(name); //missing ':'
+                            break;
+                        default:
+                            writer.write("   "); //blank
+                            break;
+                    }
+                } else {
+                    writer.write(name + ":" + random.nextInt(7));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes a directory of synthetic decks.
+     *
+     * @param args {@code <output directory> <deck count> [lines] [invalid ratio] [distinct cards] [seed]}
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: <output directory> <deck count> [lines] [invalid ratio] [distinct cards] [seed]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        int decks = Integer.parseInt(args[1]);
+        int lines = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        double invalid_ratio = args.length > 3 ? Double.parseDouble(args[3]) : 0.02;
+        int distinct = args.length > 4 ? Integer.parseInt(args[4]) : 40;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42L;
+
+        Files.createDirectories(directory);
+        for (int i = 0; i < decks; i++) {
+            generate(directory.resolve(String.format("deck_%06d.txt", i)), lines, invalid_ratio, distinct, seed + i);
+        }
+        System.out.println("Wrote " + decks + " decks to " + directory);
+    }
+}
@@ -0,0 +1,127 @@
+package deckbench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The {@code DeckClasses} class gives the benchmarks access to the deck
+ * classes.
+ *
+ * <p>JMH does not accept benchmarks in the default package, and a class in a
+ * named package cannot refer to the default package, where every deck class
+ * lives. So the methods the benchmarks call are looked up once as
+ * {@link MethodHandle}s and held in {@code static final} fields, which the JIT
+ * inlines like a direct call. Deck types ({@code DeckTally},
+ * {@code CardTable}) appear as {@code Object}.</p>
+ */
+final class DeckClasses {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> DECK_TALLY = load("DeckTally");
+    private static final Class<?> CARD_TABLE = load("CardTable");
+
+    /** {@code new DeckTally()} */
+    static final MethodHandle NEW_TALLY = constructor(DECK_TALLY);
+    /** {@code DeckTally.getCardDeck()} */
+    static final MethodHandle CARD_DECK = virtual(DECK_TALLY, "getCardDeck", CARD_TABLE);
+    /** {@code DeckTally.getInvalidCards()} */
+    static final MethodHandle INVALID_CARDS = virtual(DECK_TALLY, "getInvalidCards", List.class);
+    /** {@code new CardTable()} */
+    static final MethodHandle NEW_TABLE = constructor(CARD_TABLE);
+    /** {@code CardTable.add(String, int)} */
+    static final MethodHandle TABLE_ADD = virtual(CARD_TABLE, "add", int.class, String.class, int.class);
+    /** {@code CardTable.size()} */
+    static final MethodHandle TABLE_SIZE = virtual(CARD_TABLE, "size", int.class);
+    /** {@code CardTable.totalCost()} */
+    static final MethodHandle TABLE_TOTAL_COST = virtual(CARD_TABLE, "totalCost", int.class);
+
+    /** {@code SlayTheSpire.readTxtFile(String, DeckTally)} */
+    static final MethodHandle READ_TXT_FILE = function("SlayTheSpire", "readTxtFile", boolean.class, String.class, DECK_TALLY);
+    /** {@code SlayTheSpire.calculateTotalDeckCost(HashMap)} */
+    static final MethodHandle MAP_COST = function("SlayTheSpire", "calculateTotalDeckCost", int.class, HashMap.class);
+    /** {@code SlayTheSpire.calculateTotalDeckCost(CardTable)} */
+    static final MethodHandle TABLE_COST = function("SlayTheSpire", "calculateTotalDeckCost", int.class, CARD_TABLE);
+
+    /** {@code DeckIDGenerator.setBlockSize(int)} */
+    static final MethodHandle SET_BLOCK_SIZE = function("DeckIDGenerator", "setBlockSize", void.class, int.class);
+    /** {@code DeckIDGenerator.warmUp()} */
+    static final MethodHandle WARM_UP = function("DeckIDGenerator", "warmUp", void.class);
+    /** {@code DeckIDGenerator.generateUniqueNumber()} */
+    static final MethodHandle GENERATE_ID = function("DeckIDGenerator", "generateUniqueNumber", String.class);
+
+    /** {@code GeneratePDFFile.generatePDF(String, String, int, CardTable, List)} */
+    static final MethodHandle GENERATE_PDF = function("GeneratePDFFile", "generatePDF", void.class,
+            String.class, String.class, int.class, CARD_TABLE, List.class);
+    /** {@code GeneratePDFFile.generateVoidPDF(String, String)} */
+    static final MethodHandle GENERATE_VOID_PDF = function("GeneratePDFFile", "generateVoidPDF", void.class,
+            String.class, String.class);
+
+    /** {@code SyntheticDeckGenerator.generate(Path, int, double, int, long)} */
+    static final MethodHandle GENERATE_DECK = function("SyntheticDeckGenerator", "generate", void.class,
+            Path.class, int.class, double.class, int.class, long.class);
+    /** {@code SyntheticDeckGenerator.cardName(int)} */
+    static final MethodHandle CARD_NAME = function("SyntheticDeckGenerator", "cardName", String.class, int.class);
+    /** {@code DeckBenchmark.writeHistory(Path, int)} */
+    static final MethodHandle WRITE_HISTORY = function("DeckBenchmark", "writeHistory", void.class, Path.class, int.class);
+
+    private DeckClasses() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("deck class " + name + " is not on the classpath", e);
+        }
+    }
+
+    /**
+     * Looks up a static method.
+     */
+    private static MethodHandle function(String owner, String name, Class<?> returns, Class<?>... params) {
+        try {
+            MethodHandle handle = LOOKUP.findStatic(load(owner), name, MethodType.methodType(returns, params));
+            return handle.asType(eraseDeckTypes(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner + "." + name + " not found", e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returns, Class<?>... params) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(owner, name, MethodType.methodType(returns, params));
+            return handle.asType(eraseDeckTypes(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner.getName() + "." + name + " not found", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner) {
+        try {
+            return LOOKUP.findConstructor(owner, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(owner.getName() + " has no public constructor", e);
+        }
+    }
+
+    /**
+     * Replaces the deck types of a method type by {@code Object}. JDK types
+     * are kept, so {@code (String) GENERATE_ID.invokeExact()} still matches.
+     */
+    private static MethodType eraseDeckTypes(MethodType type) {
+        MethodType erased = type.changeReturnType(eraseDeckType(type.returnType()));
+        for (int i = 0; i < type.parameterCount(); i++) {
+            erased = erased.changeParameterType(i, eraseDeckType(type.parameterType(i)));
+        }
+        return erased;
+    }
+
+    private static Class<?> eraseDeckType(Class<?> type) {
+        return type.isPrimitive() || type.getClassLoader() == null ? type : Object.class;
+    }
+}
@@ -0,0 +1,74 @@
+package deckbench;
+
+import static deckbench.DeckClasses.GENERATE_ID;
+import static deckbench.DeckClasses.SET_BLOCK_SIZE;
+import static deckbench.DeckClasses.WARM_UP;
+import static deckbench.DeckClasses.WRITE_HISTORY;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generates IDs with {@code DeckIDGenerator.generateUniqueNumber} against an
+ * ID history that already lists {@code history} IDs.
+ *
+ * <p>{@code DeckIDGenerator} opens its allocator once per JVM, from the
+ * {@code deck.id.file} property, so every parameter set needs its own fork;
+ * with {@code -f 0} only the first history size is measured.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBenchmark {
+
+    @Param({"0", "100000", "1000000"})
+    public int history;
+
+    @Param({"1", "16"})
+    public int blockSize;
+
+    private Path directory;
+
+    @Setup
+    public void openHistory() throws Throwable {
+        directory = Files.createTempDirectory("deck-jmh-ids");
+        Path history_file = directory.resolve("DeckIDs.txt");
+        WRITE_HISTORY.invokeExact(history_file, history);
+        System.setProperty("deck.id.file", history_file.toString());
+        SET_BLOCK_SIZE.invokeExact(blockSize);
+        WARM_UP.invokeExact(); //loads the history before the first measured call
+    }
+
+    @TearDown
+    public void deleteHistory() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public String generateUniqueNumber() throws Throwable {
+        return (String) GENERATE_ID.invokeExact();
+    }
+}
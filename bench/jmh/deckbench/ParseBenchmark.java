@@ -0,0 +1,73 @@
+package deckbench;
+
+import static deckbench.DeckClasses.CARD_DECK;
+import static deckbench.DeckClasses.GENERATE_DECK;
+import static deckbench.DeckClasses.NEW_TALLY;
+import static deckbench.DeckClasses.READ_TXT_FILE;
+import static deckbench.DeckClasses.TABLE_SIZE;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses one synthetic deck with {@code SlayTheSpire.readTxtFile}, for every
+ * deck size and share of invalid lines. The deck is written once per trial by
+ * {@code SyntheticDeckGenerator} with a fixed seed, so runs are comparable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"10", "100", "1000"}) //readTxtFile stops at the 1000 line limit
+    public int lines;
+
+    @Param({"0.0", "0.005", "0.05"})
+    public double invalidRatio;
+
+    @Param({"40"})
+    public int distinctCards;
+
+    private Path deck;
+    private String deck_path;
+
+    @Setup
+    public void writeDeck() throws Throwable {
+        deck = Files.createTempFile("deck-jmh-parse", ".txt");
+        GENERATE_DECK.invokeExact(deck, lines, invalidRatio, distinctCards, 7L);
+        deck_path = deck.toString();
+    }
+
+    @TearDown
+    public void deleteDeck() throws Exception {
+        Files.deleteIfExists(deck);
+    }
+
+    /**
+     * @return the number of distinct cards, plus one for a valid deck
+     */
+    @Benchmark
+    public int readTxtFile() throws Throwable {
+        Object tally = NEW_TALLY.invokeExact();
+        boolean valid = (boolean) READ_TXT_FILE.invokeExact(deck_path, tally);
+        Object card_deck = CARD_DECK.invokeExact(tally);
+        return (int) TABLE_SIZE.invokeExact(card_deck) + (valid ? 1 : 0);
+    }
+}
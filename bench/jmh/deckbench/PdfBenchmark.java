@@ -0,0 +1,102 @@
+package deckbench;
+
+import static deckbench.DeckClasses.CARD_DECK;
+import static deckbench.DeckClasses.GENERATE_DECK;
+import static deckbench.DeckClasses.GENERATE_PDF;
+import static deckbench.DeckClasses.GENERATE_VOID_PDF;
+import static deckbench.DeckClasses.INVALID_CARDS;
+import static deckbench.DeckClasses.NEW_TALLY;
+import static deckbench.DeckClasses.READ_TXT_FILE;
+import static deckbench.DeckClasses.TABLE_TOTAL_COST;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders a parsed deck with {@code GeneratePDFFile.generatePDF}, and a VOID
+ * report with {@code generateVoidPDF}, into a temporary file.
+ *
+ * <p>Both print the path of every PDF, so {@code System.out} is silenced for
+ * the trial.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfBenchmark {
+
+    @Param({"8", "200"})
+    public int distinctCards;
+
+    @Param({"0.005"})
+    public double invalidRatio;
+
+    private Path directory;
+    private String pdf_path;
+    private Object card_deck;
+    private int total_cost;
+    private List<String> invalid_cards;
+    private PrintStream out;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void parseDeck() throws Throwable {
+        directory = Files.createTempDirectory("deck-jmh-pdf");
+        Path deck = directory.resolve("deck.txt");
+        GENERATE_DECK.invokeExact(deck, 1000, invalidRatio, distinctCards, 11L);
+        Object tally = NEW_TALLY.invokeExact();
+        boolean valid = (boolean) READ_TXT_FILE.invokeExact(deck.toString(), tally);
+        card_deck = CARD_DECK.invokeExact(tally);
+        total_cost = (int) TABLE_TOTAL_COST.invokeExact(card_deck);
+        invalid_cards = (List<String>) INVALID_CARDS.invokeExact(tally);
+        pdf_path = directory.resolve("report.pdf").toString();
+
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void cleanUp() throws Exception {
+        System.setOut(out);
+        Files.deleteIfExists(Path.of(pdf_path));
+        Files.deleteIfExists(directory.resolve("deck.txt"));
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * @return the size of the report
+     */
+    @Benchmark
+    public long generatePDF() throws Throwable {
+        GENERATE_PDF.invokeExact(pdf_path, "000000001", total_cost, card_deck, invalid_cards);
+        return Files.size(Path.of(pdf_path));
+    }
+
+    /**
+     * @return the size of the report
+     */
+    @Benchmark
+    public long generateVoidPDF() throws Throwable {
+        GENERATE_VOID_PDF.invokeExact(pdf_path, "000000001");
+        return Files.size(Path.of(pdf_path));
+    }
+}
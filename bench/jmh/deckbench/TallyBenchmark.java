@@ -0,0 +1,64 @@
+package deckbench;
+
+import static deckbench.DeckClasses.CARD_NAME;
+import static deckbench.DeckClasses.MAP_COST;
+import static deckbench.DeckClasses.NEW_TABLE;
+import static deckbench.DeckClasses.TABLE_ADD;
+import static deckbench.DeckClasses.TABLE_COST;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sums the cost of a deck with {@code SlayTheSpire.calculateTotalDeckCost},
+ * from a {@code HashMap} and from a {@code CardTable} holding the same cards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TallyBenchmark {
+
+    @Param({"8", "100", "10000"})
+    public int distinctCards;
+
+    private final HashMap<String, Integer> map = new HashMap<>();
+    private Object table;
+
+    @Setup
+    public void fillDeck() throws Throwable {
+        table = NEW_TABLE.invokeExact();
+        Random random = new Random(distinctCards);
+        for (int i = 0; i < distinctCards; i++) {
+            String name = (String) CARD_NAME.invokeExact(i);
+            int cost = random.nextInt(7);
+            map.put(name, cost);
+            int id = (int) TABLE_ADD.invokeExact(table, name, cost); //invokeExact needs the result type
+        }
+    }
+
+    @Benchmark
+    public int hashMap() throws Throwable {
+        return (int) MAP_COST.invokeExact(map);
+    }
+
+    @Benchmark
+    public int cardTable() throws Throwable {
+        return (int) TABLE_COST.invokeExact(table);
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * The {@code BatchTally} class processes a whole directory (or glob) of deck
+ * files in one run instead of starting a new JVM for every deck.
+ *
+ * <p>Every deck file is read and reported on a fixed thread pool. Each deck
+ * gets its own {@link DeckTally}, so the decks never share parse state. When
+ * all decks are done a summary with the throughput and the failures is
+ * printed.</p>
+ *
+ * <p>Usage: {@code --batch <directory|glob> [--threads N]}. A directory
+ * selects every {@code *.txt} file inside it; a glob such as
+ * {@code exports/deck_*.txt} selects the matching files in its directory.
+ * The pool size defaults to the number of available processors.</p>
+ *
+ * <p>With {@code --combined <file.pdf>} the reports are not written one file
+ * per deck but streamed into a single PDF, one page per deck, with a table of
+ * contents at the front.</p>
+ *
+ * <p>With {@code --cache <index file> [--cache-size N]} decks that were
+ * already reported are looked up in a {@link ReportCache} and their existing
+ * deck ID and PDF are reused instead of being parsed and rendered again.</p>
+ *
+ * <p>With {@code --format <list>} each deck is written in the given
+ * {@link ReportWriter} formats, for example {@code --format csv,jsonl} to skip
+ * the PDF altogether.</p>
+ *
+ * <p>With {@code --pipeline [--parsers N] [--renderers N] [--queue N]
+ * [--id-batch N]} the decks go through a {@link DeckPipeline} instead, where
+ * parsing, ID allocation and rendering overlap, and the summary ends with the
+ * utilization of each stage. It cannot be combined with {@code --combined} or
+ * {@code --cache}.</p>
+ */
+
+import com.itextpdf.text.DocumentException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchTally {
+
+    private final int threads;
+    private PdfRenderEngine.CombinedReport combined;
+    private ReportCache cache;
+    private final AtomicInteger reports = new AtomicInteger();
+    private final AtomicInteger voids = new AtomicInteger();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates a batch run that uses the given number of worker threads.
+     *
+     * @param threads the size of the worker pool, at least 1
+     */
+    public BatchTally(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sends every report into one combined PDF instead of one file per deck.
+     *
+     * @param combined the open combined report; the caller closes it
+     */
+    public void setCombinedReport(PdfRenderEngine.CombinedReport combined) {
+        this.combined = combined;
+    }
+
+    /**
+     * Reuses the reports of decks that were already processed.
+     *
+     * @param cache the report cache; the caller closes it
+     */
+    public void setReportCache(ReportCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Finds the deck files selected by a directory path or a glob.
+     *
+     * <p>If {@code location} is a directory, all {@code *.txt} files in it are
+     * returned. Otherwise the last path element is treated as a glob pattern
+     * that is matched against the files of its parent directory.</p>
+     *
+     * @param location a directory or a glob such as {@code decks/*.txt}
+     * @return the matching deck files, sorted by path
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<Path> findDeckFiles(String location) throws IOException {
+        Path path = Paths.get(location);
+        Path directory;
+        String glob;
+
+        if (Files.isDirectory(path)) {
+            directory = path;
+            glob = "*.txt";
+        } else {
+            directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+            glob = path.getFileName().toString();
+        }
+
+        List<Path> deck_files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path deck_file : stream) {
+                if (Files.isRegularFile(deck_file)) {
+                    deck_files.add(deck_file);
+                }
+            }
+        }
+        Collections.sort(deck_files);
+        return deck_files;
+    }
+
+    /**
+     * Tallies every deck file on the worker pool and waits for all of them.
+     *
+     * @param deck_files the deck files to process
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void run(List<Path> deck_files) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (Path deck_file : deck_files) {
+            pool.execute(() -> processDeck(deck_file));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    /**
+     * Reads one deck with its own {@link DeckTally} and generates its PDF in
+     * the directory of the deck file.
+     *
+     * @param deck_file the deck file to process
+     */
+    private void processDeck(Path deck_file) {
+        try {
+            if (cache != null && combined == null) {
+                Path parent = deck_file.toAbsolutePath().getParent();
+                ReportCache.Entry report = SlayTheSpire.generateCachedFile(deck_file.toString(), parent.toString(), cache);
+                if (!new File(report.report_path).isFile()) {
+                    failures.add(deck_file + " (no report written)");
+                } else if (report.report_path.contains("(VOID).")) {
+                    voids.incrementAndGet();
+                } else {
+                    reports.incrementAndGet();
+                }
+                return;
+            }
+
+            DeckTally tally = new DeckTally();
+            boolean file_to_generate = SlayTheSpire.readTxtFile(deck_file.toString(), tally);
+
+            if (combined != null) {
+                addToCombined(file_to_generate, tally);
+                return;
+            }
+
+            Path parent = deck_file.toAbsolutePath().getParent();
+            String pdf_path = SlayTheSpire.generateFile(file_to_generate, parent.toString(), tally);
+
+            if (!new File(pdf_path).isFile()) { //PDF generation reports its own errors
+                failures.add(deck_file + " (no report written)");
+            } else if (file_to_generate) {
+                reports.incrementAndGet();
+            } else {
+                voids.incrementAndGet();
+            }
+        } catch (Exception e) { //RuntimeException, IOException or DocumentException, see main
+            failures.add(deck_file + " (" + e + ")");
+        }
+    }
+
+    /**
+     * Adds one deck as a page of the combined report.
+     */
+    private void addToCombined(boolean file_to_generate, DeckTally tally) throws DocumentException {
+        String deck_ID = DeckIDGenerator.generateUniqueNumber();
+        if (file_to_generate) {
+            combined.addReport(deck_ID, SlayTheSpire.calculateTotalDeckCost(tally.cardDeck), tally.cardDeck, tally.invalid_cards);
+            reports.incrementAndGet();
+        } else {
+            combined.addVoid(deck_ID);
+            voids.incrementAndGet();
+        }
+    }
+
+    /**
+     * Prints the number of processed decks, the throughput and the failures.
+     *
+     * @param deck_count the number of deck files in the run
+     * @param elapsed_nanos the wall-clock time of the run in nanoseconds
+     */
+    public void printSummary(int deck_count, long elapsed_nanos) {
+        double seconds = elapsed_nanos / 1_000_000_000.0;
+        System.out.println("======================================");
+        System.out.println("BATCH SUMMARY");
+        System.out.println("======================================");
+        System.out.println("Decks:    " + deck_count);
+        System.out.println("Reports:  " + reports.get());
+        System.out.println("VOID:     " + voids.get());
+        System.out.println("Failures: " + failures.size());
+        System.out.printf("Elapsed:  %.3f s (%d threads)%n", seconds, threads);
+        System.out.printf("Rate:     %.1f decks/s%n", seconds > 0 ? deck_count / seconds : 0.0);
+        if (cache != null) {
+            System.out.println("Cache:    " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        }
+        synchronized (failures) {
+            for (String failure : failures) {
+                System.out.println("  FAILED " + failure);
+            }
+        }
+    }
+
+    /**
+     * Entry point of the batch mode.
+     *
+     * @param args {@code [--batch] <directory|glob> [--threads N] [--combined file.pdf]
+     *             [--cache index] [--cache-size N] [--format pdf,csv,jsonl,bin]
+     *             [--pipeline [--parsers N] [--renderers N] [--queue N] [--id-batch N]]}
+     */
+    public static void main(String[] args) {
+        String location = null;
+        String combined_path = null;
+        String cache_path = null;
+        int cache_size = ReportCache.DEFAULT_MAX_ENTRIES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean pipeline = false;
+        int parsers = threads;
+        int renderers = threads;
+        int queue_capacity = DeckPipeline.DEFAULT_QUEUE_CAPACITY;
+        int id_batch = DeckPipeline.DEFAULT_ID_BATCH;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--batch")) {
+                continue;
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--combined") && i + 1 < args.length) {
+                combined_path = args[++i];
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cache_path = args[++i];
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cache_size = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                SlayTheSpire.setReportWriters(ReportWriter.forFormats(args[++i]));
+            } else if (args[i].equals("--pipeline")) {
+                pipeline = true;
+            } else if (args[i].equals("--parsers") && i + 1 < args.length) {
+                parsers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--renderers") && i + 1 < args.length) {
+                renderers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--queue") && i + 1 < args.length) {
+                queue_capacity = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--id-batch") && i + 1 < args.length) {
+                id_batch = Integer.parseInt(args[++i]);
+            } else {
+                location = args[i];
+            }
+        }
+
+        if (location == null) {
+            System.out.println("Usage: --batch <directory|glob> [--threads N] [--combined file.pdf] [--cache index] [--cache-size N] [--format pdf,csv,jsonl,bin]"
+                    + " [--pipeline [--parsers N] [--renderers N] [--queue N] [--id-batch N]]");
+            return;
+        }
+        if (pipeline && (combined_path != null || cache_path != null)) {
+            System.out.println("--pipeline cannot be used with --combined or --cache");
+            return;
+        }
+
+        try {
+            List<Path> deck_files = findDeckFiles(location);
+            DeckIDGenerator.setBlockSize(Math.max(1, Math.min(deck_files.size(), 4096))); //reserve the batch at once
+            if (pipeline) {
+                DeckPipeline stages = new DeckPipeline(parsers, renderers, queue_capacity, id_batch);
+                long start = System.nanoTime();
+                stages.run(deck_files);
+                stages.printSummary(deck_files.size(), System.nanoTime() - start);
+                return;
+            }
+            BatchTally batch = new BatchTally(threads);
+            ReportCache cache = null;
+            if (cache_path != null) {
+                cache = new ReportCache(Paths.get(cache_path), cache_size);
+                batch.setReportCache(cache);
+            }
+
+            long start = System.nanoTime();
+            if (combined_path != null) {
+                try (PdfRenderEngine.CombinedReport combined = GeneratePDFFile.openCombinedPDF(combined_path)) {
+                    batch.setCombinedReport(combined);
+                    batch.run(deck_files);
+                }
+                System.out.println("Combined PDF generated at: " + combined_path);
+            } else {
+                batch.run(deck_files);
+            }
+            batch.printSummary(deck_files.size(), System.nanoTime() - start);
+            if (cache != null) {
+                cache.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) { //IOException or DocumentException, caught generally so iText is only needed for PDFs
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * The {@code BinaryReportWriter} class is a {@link ReportWriter} for a
+ * compact binary summary of a deck, for consumers that read many reports and
+ * only need the numbers. {@link #read(InputStream)} reads it back.
+ *
+ * <p>All numbers are unsigned LEB128 varints and all strings are a varint
+ * byte length followed by UTF-8 bytes:</p>
+ * <pre>
+ *     magic      4 bytes "SDCT"
+ *     version    1 byte, currently 1
+ *     status     1 byte, 0 for a report, 1 for VOID
+ *     deck_id    string
+ *     -- reports only --
+ *     total_cost varint
+ *     cards      varint, then per card: name string, cost varint, count varint
+ *     invalid    varint, then per line: string
+ * </pre>
+ */
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryReportWriter implements ReportWriter {
+
+    private static final byte[] MAGIC = {'S', 'D', 'C', 'T'};
+    private static final int VERSION = 1;
+    private static final int STATUS_REPORT = 0;
+    private static final int STATUS_VOID = 1;
+
+    /**
+     * A report read back from the binary format.
+     */
+    public static final class Summary {
+        public final String deck_ID;
+        public final boolean valid;
+        public final long total_cost;
+        public final CardTable cardDeck;
+        public final List<String> invalid_cards;
+
+        Summary(String deck_ID, boolean valid, long total_cost, CardTable cardDeck, List<String> invalid_cards) {
+            this.deck_ID = deck_ID;
+            this.valid = valid;
+            this.total_cost = total_cost;
+            this.cardDeck = cardDeck;
+            this.invalid_cards = invalid_cards;
+        }
+    }
+
+    @Override
+    public String format() {
+        return "bin";
+    }
+
+    @Override
+    public String extension() {
+        return ".bin";
+    }
+
+    @Override
+    public void writeReport(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        writeHeader(out, STATUS_REPORT, deck_ID);
+        writeVarint(out, total_cost);
+        writeVarint(out, cardDeck.size());
+        for (int id = 0; id < cardDeck.size(); id++) {
+            writeString(out, cardDeck.name(id));
+            writeVarint(out, cardDeck.cost(id));
+            writeVarint(out, cardDeck.count(id));
+        }
+        writeVarint(out, invalid_cards.size());
+        for (String line : invalid_cards) {
+            writeString(out, line);
+        }
+        out.flush();
+    }
+
+    @Override
+    public void writeVoid(OutputStream out, String deck_ID) throws IOException {
+        writeHeader(out, STATUS_VOID, deck_ID);
+        out.flush();
+    }
+
+    /**
+     * Reads one report written by this class.
+     *
+     * @param in the stream positioned at the start of a report
+     * @return the report
+     * @throws IOException if the stream ends early or is not in this format
+     */
+    public static Summary read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("not a binary deck report");
+            }
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported binary deck report version " + version);
+        }
+        int status = data.readUnsignedByte();
+        String deck_ID = readString(data);
+        CardTable cardDeck = new CardTable(StandardCharsets.UTF_8);
+        List<String> invalid_cards = new ArrayList<>();
+        if (status == STATUS_VOID) {
+            return new Summary(deck_ID, false, 0, cardDeck, invalid_cards);
+        }
+
+        long total_cost = readVarint(data);
+        long cards = readVarint(data);
+        for (long i = 0; i < cards; i++) {
+            String name = readString(data);
+            long cost = readVarint(data);
+            long count = readVarint(data);
+            cardDeck.add(name, (int) cost, (int) count);
+        }
+        long invalid = readVarint(data);
+        for (long i = 0; i < invalid; i++) {
+            invalid_cards.add(readString(data));
+        }
+        return new Summary(deck_ID, true, total_cost, cardDeck, invalid_cards);
+    }
+
+    private static void writeHeader(OutputStream out, int status, String deck_ID) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(status);
+        writeString(out, deck_ID);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarint(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("string of " + length + " bytes is too long");
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint is too long");
+    }
+}
@@ -0,0 +1,378 @@
+/**
+ * The {@code CardCatalog} class is an immutable index of the known cards and
+ * their base and upgraded costs, used to flag deck lines whose name is not a
+ * real card or whose cost is not the card's cost.
+ *
+ * <p>The catalog file has one card per line as {@code name:base:upgraded},
+ * for example {@code Bash:2:2}; blank lines and lines starting with {@code #}
+ * are ignored. {@code src/CardCatalog.txt} holds the cards of the game. A
+ * catalog is only used when the {@code deck.catalog} system property names
+ * such a file (for example {@code -Ddeck.catalog=src/CardCatalog.txt}); it is
+ * then loaded once and shared by every {@link DeckTokenizer}.</p>
+ *
+ * <p>Names are matched without regard to case or whitespace, so
+ * {@code "genetic  ALGORITHM"} finds {@code Genetic Algorithm}. A name ending
+ * in {@code +} is the upgraded card and must have the upgraded cost; any other
+ * name may have either cost.</p>
+ *
+ * <p>The normalized names are kept back to back in one byte array, indexed by
+ * an open-addressing hash table that is at most a quarter full. A name from a
+ * deck is hashed and compared straight from the parse buffer, normalizing
+ * byte by byte, so a lookup does not allocate and usually costs one pass to
+ * hash and one to compare.</p>
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public final class CardCatalog {
+
+    public static final int NOT_FOUND = -1;
+
+    private final byte[] keys; //normalized names, sorted and back to back
+    private final int[] key_start; //key i is keys[key_start[i], key_start[i + 1])
+    private final int[] slots; //card index + 1 by hash, 0 for an empty slot
+    private final int mask;
+    private final byte[] base_cost;
+    private final byte[] upgraded_cost;
+    private final String[] names;
+
+    private static volatile CardCatalog configured;
+    private static volatile boolean configured_loaded = false;
+
+    /**
+     * One card while the catalog is being built.
+     */
+    private static final class Card {
+        final String name;
+        final byte[] key;
+        final int base;
+        final int upgraded;
+
+        Card(String name, int base, int upgraded) {
+            this.name = name;
+            this.key = normalize(name).getBytes(StandardCharsets.UTF_8);
+            this.base = base;
+            this.upgraded = upgraded;
+        }
+    }
+
+    private CardCatalog(List<Card> cards) {
+        int size = cards.size();
+        int total = 0;
+        for (Card card : cards) {
+            total += card.key.length;
+        }
+        keys = new byte[total];
+        key_start = new int[size + 1];
+        base_cost = new byte[size];
+        upgraded_cost = new byte[size];
+        names = new String[size];
+
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            Card card = cards.get(i);
+            key_start[i] = position;
+            System.arraycopy(card.key, 0, keys, position, card.key.length);
+            position += card.key.length;
+            base_cost[i] = (byte) card.base;
+            upgraded_cost[i] = (byte) card.upgraded;
+            names[i] = card.name;
+        }
+        key_start[size] = position;
+
+        int capacity = Integer.highestOneBit(Math.max(4, size * 4 - 1)) << 1;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(keys, key_start[i], key_start[i + 1]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Loads a catalog file.
+     *
+     * @param file the catalog, one {@code name:base:upgraded} per line
+     * @return the catalog
+     * @throws IOException if the file cannot be read, or a line is malformed
+     *                     or repeats a card
+     */
+    public static CardCatalog load(Path file) throws IOException {
+        List<Card> cards = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int line_number = 0;
+            while ((line = reader.readLine()) != null) {
+                line_number++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = trimmed.split(":");
+                if (parts.length != 3 || normalize(parts[0]).isEmpty()) {
+                    throw new IOException(file + ":" + line_number + ": expected name:base:upgraded");
+                }
+                try {
+                    int base = Integer.parseInt(parts[1].trim());
+                    int upgraded = Integer.parseInt(parts[2].trim());
+                    if (base < 0 || base > 6 || upgraded < 0 || upgraded > 6) {
+                        throw new IOException(file + ":" + line_number + ": costs must be between 0 and 6");
+                    }
+                    cards.add(new Card(parts[0].trim(), base, upgraded));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + line_number + ": costs must be integers");
+                }
+            }
+        }
+
+        cards.sort((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+        for (int i = 1; i < cards.size(); i++) {
+            if (Arrays.equals(cards.get(i - 1).key, cards.get(i).key)) {
+                throw new IOException(file + ": " + cards.get(i).name + " is listed twice");
+            }
+        }
+        return new CardCatalog(cards);
+    }
+
+    /**
+     * Returns the catalog named by the {@code deck.catalog} system property,
+     * loading it on the first call.
+     *
+     * <p>If the file cannot be loaded the error is printed once and decks are
+     * read without a catalog.</p>
+     *
+     * @return the catalog, or {@code null} if none is configured
+     */
+    public static CardCatalog fromProperty() {
+        if (!configured_loaded) {
+            synchronized (CardCatalog.class) {
+                if (!configured_loaded) {
+                    String file = System.getProperty("deck.catalog");
+                    if (file != null) {
+                        try {
+                            configured = load(Paths.get(file));
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    configured_loaded = true;
+                }
+            }
+        }
+        return configured;
+    }
+
+    /**
+     * Finds the card named by the bytes {@code [start, end)} of the buffer,
+     * ignoring case, whitespace and a trailing {@code +}. The name must be
+     * ASCII; other names go through {@link #find(String)}.
+     *
+     * @param buf the buffer holding the name
+     * @param start the index of the first byte of the name
+     * @param end the index after the last byte of the name
+     * @return the index of the card, or {@link #NOT_FOUND}
+     */
+    public int find(ByteBuffer buf, int start, int end) {
+        if (isUpgraded(buf, start, end)) {
+            end = lastNonWhitespace(buf, start, end); //drop the '+'
+        }
+        int slot = hash(buf, start, end) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            if (matches(buf, start, end, entry - 1)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Finds the card with the given name, ignoring case, whitespace and a
+     * trailing {@code +}.
+     *
+     * @param name the card name as written in the deck
+     * @return the index of the card, or {@link #NOT_FOUND}
+     */
+    public int find(String name) {
+        String key = normalize(name);
+        if (key.endsWith("+")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(bytes, 0, bytes.length) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            if (Arrays.equals(bytes, 0, bytes.length, keys, key_start[entry - 1], key_start[entry])) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns whether the name {@code [start, end)} ends in {@code +}, not
+     * counting whitespace.
+     *
+     * @param buf the buffer holding the name
+     * @param start the index of the first byte of the name
+     * @param end the index after the last byte of the name
+     * @return {@code true} for an upgraded card name
+     */
+    public static boolean isUpgraded(ByteBuffer buf, int start, int end) {
+        int last = lastNonWhitespace(buf, start, end);
+        return last >= start && buf.get(last) == '+';
+    }
+
+    /**
+     * Returns whether the name ends in {@code +}, not counting whitespace.
+     *
+     * @param name the card name as written in the deck
+     * @return {@code true} for an upgraded card name
+     */
+    public static boolean isUpgraded(String name) {
+        return normalize(name).endsWith("+");
+    }
+
+    /**
+     * Returns whether a cost is right for a card: the upgraded cost for an
+     * upgraded name, and either cost otherwise.
+     *
+     * @param index the index of the card
+     * @param cost the cost on the deck line
+     * @param upgraded whether the name ends in {@code +}
+     * @return {@code true} if the cost matches
+     */
+    public boolean costMatches(int index, int cost, boolean upgraded) {
+        return cost == upgraded_cost[index] || (!upgraded && cost == base_cost[index]);
+    }
+
+    /**
+     * Returns the number of cards in the catalog.
+     *
+     * @return the card count
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the name of a card as written in the catalog file.
+     *
+     * @param index the index of the card
+     * @return the card name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the base cost of a card.
+     *
+     * @param index the index of the card
+     * @return the cost before upgrading
+     */
+    public int getBaseCost(int index) {
+        return base_cost[index];
+    }
+
+    /**
+     * Returns the upgraded cost of a card.
+     *
+     * @param index the index of the card
+     * @return the cost after upgrading
+     */
+    public int getUpgradedCost(int index) {
+        return upgraded_cost[index];
+    }
+
+    /**
+     * Returns whether the normalized name {@code [start, end)} is key {@code index}.
+     */
+    private boolean matches(ByteBuffer buf, int start, int end, int index) {
+        int k = key_start[index];
+        int k_end = key_start[index + 1];
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (isWhitespace(b)) {
+                continue;
+            }
+            if (k == k_end || toLower(b) != keys[k++]) {
+                return false;
+            }
+        }
+        return k == k_end;
+    }
+
+    /**
+     * FNV-1a of the normalized name {@code [start, end)}; the same as
+     * {@link #hash(byte[], int, int)} of its key.
+     */
+    private static int hash(ByteBuffer buf, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (!isWhitespace(b)) {
+                h = (h ^ toLower(b)) * 0x01000193;
+            }
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * FNV-1a of a key, which is already normalized.
+     */
+    private static int hash(byte[] key, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ key[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static byte toLower(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static int lastNonWhitespace(ByteBuffer buf, int start, int end) {
+        int last = end - 1;
+        while (last >= start && isWhitespace(buf.get(last))) {
+            last--;
+        }
+        return last;
+    }
+
+    /**
+     * Returns the name in lower case with the whitespace of the regex class
+     * {@code \s} removed.
+     */
+    private static String normalize(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < 128 && isWhitespace((byte) c)) {
+                continue;
+            }
+            key.append(c);
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+}
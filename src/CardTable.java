@@ -0,0 +1,407 @@
+/**
+ * The {@code CardTable} class aggregates the cards of one deck without boxing.
+ *
+ * <p>Every distinct card name gets a dense {@code int} id in the order it was
+ * first seen. Names are kept as bytes in one shared array and found through an
+ * open addressing hash table, and the summed cost and the number of
+ * occurrences of each card live in plain {@code int[]} arrays. A running total
+ * is kept on every add, so the total deck cost is available in O(1).</p>
+ *
+ * <p>Cards are read back through ids:</p>
+ * <pre>
+ *     for (int id = 0; id &lt; table.size(); id++) {
+ *         String name = table.name(id);
+ *         int cost = table.cost(id);
+ *     }
+ * </pre>
+ *
+ * <p>The table is not thread-safe; every deck gets its own.</p>
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CardTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BYTES_PER_CARD = 56; //six array entries, a String slot and two hash slots, with growth slack
+
+    private final Charset charset;
+
+    private byte[] name_bytes = new byte[256];
+    private int name_bytes_used = 0;
+
+    private int[] name_start = new int[INITIAL_CAPACITY];
+    private int[] name_length = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] costs = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY]; //decoded lazily
+
+    private int[] slots = new int[INITIAL_CAPACITY * 2]; //id + 1, 0 marks an empty slot
+    private int size = 0;
+    private int total_cost = 0;
+    private int total_count = 0;
+
+    /**
+     * Creates an empty table whose names use the platform default charset,
+     * the same one {@link DeckTokenizer} decodes with.
+     */
+    public CardTable() {
+        this(Charset.defaultCharset());
+    }
+
+    /**
+     * Creates an empty table whose names are encoded with the given charset.
+     *
+     * @param charset the charset used to turn names into bytes and back
+     */
+    public CardTable(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Builds a table from a map of card names to costs.
+     *
+     * @param cardDeck card names mapped to their costs
+     * @return a new table holding the same cards
+     */
+    public static CardTable fromMap(Map<String, Integer> cardDeck) {
+        CardTable table = new CardTable();
+        for (Map.Entry<String, Integer> card : cardDeck.entrySet()) {
+            table.add(card.getKey(), card.getValue());
+        }
+        return table;
+    }
+
+    /**
+     * Adds a card whose name is the bytes {@code [start, end)} of the buffer.
+     * The bytes are only copied the first time a name is seen.
+     *
+     * @param buf the buffer holding the name
+     * @param start the index of the first byte of the name
+     * @param end the index after the last byte of the name
+     * @param cost the cost to add to the card
+     * @return the id of the card
+     */
+    public int add(ByteBuffer buf, int start, int end, int cost) {
+        int hash = 0x811C9DC5; //FNV-1a
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (buf.get(i) & 0xFF)) * 0x01000193;
+        }
+
+        int mask = slots.length - 1;
+        int length = end - start;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                id = insert(hash, length);
+                for (int i = 0; i < length; i++) {
+                    name_bytes[name_start[id] + i] = buf.get(start + i);
+                }
+                slots[slot] = id + 1;
+                addCost(id, cost);
+                if (size * 2 > slots.length) {
+                    rehash();
+                }
+                return id;
+            }
+            if (hashes[id] == hash && sameName(id, buf, start, length)) {
+                addCost(id, cost);
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Adds a card by name.
+     *
+     * @param name the card name
+     * @param cost the cost to add to the card
+     * @return the id of the card
+     */
+    public int add(String name, int cost) {
+        ByteBuffer encoded = ByteBuffer.wrap(name.getBytes(charset));
+        return add(encoded, 0, encoded.limit(), cost);
+    }
+
+    /**
+     * Adds a card by name as if it had been added {@code count} times with a
+     * summed cost of {@code cost}, for tables read back from a report.
+     *
+     * @param name the card name
+     * @param cost the summed cost to add to the card
+     * @param count the number of occurrences to add
+     * @return the id of the card
+     */
+    public int add(String name, int cost, int count) {
+        int id = add(name, cost);
+        counts[id] += count - 1; //add counted one occurrence already
+        total_count += count - 1;
+        return id;
+    }
+
+    /**
+     * Looks up the id of a card.
+     *
+     * @param name the card name
+     * @return the id of the card, or -1 if it is not in the table
+     */
+    public int find(String name) {
+        byte[] encoded = name.getBytes(charset);
+        ByteBuffer buf = ByteBuffer.wrap(encoded);
+        int hash = 0x811C9DC5;
+        for (byte b : encoded) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && sameName(id, buf, 0, encoded.length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct cards.
+     *
+     * @return the number of ids in use
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the name of a card.
+     *
+     * @param id the id of the card
+     * @return the card name
+     */
+    public String name(int id) {
+        checkId(id);
+        if (names[id] == null) {
+            names[id] = new String(name_bytes, name_start[id], name_length[id], charset);
+        }
+        return names[id];
+    }
+
+    /**
+     * Returns the summed cost of a card.
+     *
+     * @param id the id of the card
+     * @return the cost of every occurrence of the card added together
+     */
+    public int cost(int id) {
+        checkId(id);
+        return costs[id];
+    }
+
+    /**
+     * Returns how many times a card was added.
+     *
+     * @param id the id of the card
+     * @return the number of occurrences of the card
+     */
+    public int count(int id) {
+        checkId(id);
+        return counts[id];
+    }
+
+    /**
+     * Returns the total cost of all cards, kept up to date on every add.
+     *
+     * @return the total deck cost
+     */
+    public int totalCost() {
+        return total_cost;
+    }
+
+    /**
+     * Returns how many cards were added, counting repeated names every time.
+     *
+     * @return the number of adds
+     */
+    public int totalCount() {
+        return total_count;
+    }
+
+    /**
+     * Adds every card of another table, summing costs and counts of names
+     * that are already present. New names get ids in the order of the other
+     * table, so merging partial tables in file order gives the same ids as
+     * reading the whole file into one table.
+     *
+     * @param other a table that uses the same charset
+     */
+    public void addAll(CardTable other) {
+        ByteBuffer other_names = ByteBuffer.wrap(other.name_bytes);
+        for (int id = 0; id < other.size; id++) {
+            int start = other.name_start[id];
+            int own = add(other_names, start, start + other.name_length[id], other.costs[id]);
+            counts[own] += other.counts[id] - 1; //add counted one occurrence already
+            total_count += other.counts[id] - 1;
+        }
+    }
+
+    /**
+     * Returns an estimate of the heap bytes taken by the cards in use: their
+     * name bytes plus the per-card arrays and hash slots.
+     *
+     * @return the estimated size in bytes
+     */
+    public long usedBytes() {
+        return name_bytes_used + (long) size * BYTES_PER_CARD;
+    }
+
+    /**
+     * Compares the names of two cards byte by byte, as unsigned values.
+     *
+     * @param a the id of the first card
+     * @param b the id of the second card
+     * @return a negative number, zero or a positive number as the name of
+     *         {@code a} sorts before, equal to or after the name of {@code b}
+     */
+    public int compareNames(int a, int b) {
+        checkId(a);
+        checkId(b);
+        return Arrays.compareUnsigned(name_bytes, name_start[a], name_start[a] + name_length[a],
+                name_bytes, name_start[b], name_start[b] + name_length[b]);
+    }
+
+    /**
+     * Returns a copy of the name bytes of a card.
+     *
+     * @param id the id of the card
+     * @return the encoded name
+     */
+    public byte[] nameBytes(int id) {
+        checkId(id);
+        return Arrays.copyOfRange(name_bytes, name_start[id], name_start[id] + name_length[id]);
+    }
+
+    /**
+     * Copies the table into a {@link HashMap} of card names to costs.
+     *
+     * @return a new map holding the same cards
+     */
+    public HashMap<String, Integer> toMap() {
+        HashMap<String, Integer> cardDeck = new HashMap<>();
+        for (int id = 0; id < size; id++) {
+            cardDeck.put(name(id), costs[id]);
+        }
+        return cardDeck;
+    }
+
+    /**
+     * Removes all cards but keeps the allocated arrays for reuse.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+        name_bytes_used = 0;
+        total_cost = 0;
+        total_count = 0;
+    }
+
+    /**
+     * Shrinks the arrays to the number of cards in use, so a table that is
+     * kept around for a long time holds no spare capacity.
+     */
+    public void trim() {
+        int capacity = Math.max(size, 1);
+        name_bytes = Arrays.copyOf(name_bytes, Math.max(name_bytes_used, 1));
+        name_start = Arrays.copyOf(name_start, capacity);
+        name_length = Arrays.copyOf(name_length, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        names = Arrays.copyOf(names, capacity);
+        int slot_count = Integer.highestOneBit(capacity) * 4;
+        slots = new int[Math.max(slot_count, 4)];
+        relink();
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private void addCost(int id, int cost) {
+        costs[id] += cost; //updates existing values of repeated keys
+        counts[id] += 1;
+        total_cost += cost;
+        total_count += 1;
+    }
+
+    private int insert(int hash, int length) {
+        if (size == costs.length) {
+            int capacity = size * 2;
+            name_start = Arrays.copyOf(name_start, capacity);
+            name_length = Arrays.copyOf(name_length, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        if (name_bytes_used + length > name_bytes.length) {
+            name_bytes = Arrays.copyOf(name_bytes, Math.max(name_bytes.length * 2, name_bytes_used + length));
+        }
+
+        int id = size++;
+        name_start[id] = name_bytes_used;
+        name_length[id] = length;
+        hashes[id] = hash;
+        costs[id] = 0;
+        counts[id] = 0;
+        name_bytes_used += length;
+        return id;
+    }
+
+    private boolean sameName(int id, ByteBuffer buf, int start, int length) {
+        if (name_length[id] != length) {
+            return false;
+        }
+        int offset = name_start[id];
+        for (int i = 0; i < length; i++) {
+            if (name_bytes[offset + i] != buf.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        relink();
+    }
+
+    private void relink() {
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("card id " + id + " out of range 0.." + (size - 1));
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
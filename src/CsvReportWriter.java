@@ -0,0 +1,84 @@
+/**
+ * The {@code CsvReportWriter} class is a {@link ReportWriter} that writes a
+ * deck as comma-separated values, for spreadsheets and scripts that only need
+ * the numbers.
+ *
+ * <p>Every row starts with its kind and the deck ID:</p>
+ * <pre>
+ *     record,deck_id,name,cost,count
+ *     total,123456789,,17,9
+ *     card,123456789,Strike,5,5
+ *     invalid,123456789,Bash:9,,
+ *     invalid,123456789,"Bash,9",,
+ * </pre>
+ *
+ * <p>A VOID deck is the header and a single {@code void} row. Fields that
+ * contain a comma, a quote or a line break are quoted as in RFC 4180. The
+ * file is UTF-8.</p>
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class CsvReportWriter implements ReportWriter {
+
+    private static final String HEADER = "record,deck_id,name,cost,count\n";
+
+    @Override
+    public String format() {
+        return "csv";
+    }
+
+    @Override
+    public String extension() {
+        return ".csv";
+    }
+
+    @Override
+    public void writeReport(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.write("total," + deck_ID + ",," + total_cost + "," + cardDeck.totalCount() + "\n");
+        for (int id = 0; id < cardDeck.size(); id++) {
+            writer.write("card," + deck_ID + ",");
+            writeField(writer, cardDeck.name(id));
+            writer.write("," + cardDeck.cost(id) + "," + cardDeck.count(id) + "\n");
+        }
+        for (String line : invalid_cards) {
+            writer.write("invalid," + deck_ID + ",");
+            writeField(writer, line);
+            writer.write(",,\n");
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void writeVoid(OutputStream out, String deck_ID) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.write("void," + deck_ID + ",,,\n");
+        writer.flush();
+    }
+
+    /**
+     * Writes one field, quoted if it needs to be.
+     */
+    private static void writeField(Writer writer, String field) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,859 @@
+/**
+ * The {@code DeckAnalytics} class keeps corpus-wide statistics over every
+ * deck that was processed, in sketches of bounded size that can be saved,
+ * merged and reported without reading the decks again:
+ *
+ * <ul>
+ *     <li><strong>Total deck cost:</strong> a quantile sketch in the style of
+ *     DDSketch. Costs go into logarithmic buckets 2% wide, so every quantile
+ *     is within 1% of the true value, whatever the number of decks.</li>
+ *     <li><strong>Card usage:</strong> the copies of each card are counted by
+ *     a Count-Min sketch, which answers "how often was this card used" with a
+ *     small overestimate, and by a SpaceSaving summary of the
+ *     {@value #TOP_CAPACITY} most used cards, which gives the top of the
+ *     list.</li>
+ *     <li><strong>Invalid-line rate:</strong> the share of invalid lines among
+ *     the accepted and invalid lines of a deck, in a histogram with 1% wide
+ *     buckets and a separate bucket for decks without invalid lines.</li>
+ * </ul>
+ *
+ * <p>Costs and cards are taken from valid decks only; the invalid-line rate
+ * from every deck with at least one line. The memory used is fixed, about
+ * 150 KB, and does not grow with the number of decks.</p>
+ *
+ * <p>Sketches merge by adding their counters, so the sketches of separate
+ * runs or workers give the same report as one run over all of their decks
+ * (up to the error bounds of SpaceSaving). With the {@code deck.analytics}
+ * system property every reported deck is added to the sketch in that file,
+ * which is loaded at start and saved on exit; give each concurrent process
+ * its own file and merge them with
+ * {@code --analytics a.sketch b.sketch --out all.sketch}.</p>
+ *
+ * <p>Usage: {@code --analytics [sketch file]... [--add directory|glob|archive]...
+ * [--out sketch file] [--top N] [--card name]...}.</p>
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+public class DeckAnalytics {
+
+    public static final double COST_ACCURACY = 0.01;
+    public static final int TOP_CAPACITY = 256;
+    public static final int COUNT_MIN_DEPTH = 4;
+    public static final int COUNT_MIN_WIDTH = 4096;
+
+    private static final int MAGIC = 0x5344414E; //"SDAN"
+    private static final int VERSION = 1;
+    private static final Object MERGE_TIE_LOCK = new Object(); //orders merges of sketches with the same identity hash
+
+    private final CostSketch costs = new CostSketch(COST_ACCURACY);
+    private final RateHistogram invalid_rates = new RateHistogram();
+    private final CountMinSketch card_counts = new CountMinSketch(COUNT_MIN_DEPTH, COUNT_MIN_WIDTH);
+    private final SpaceSaving top_cards = new SpaceSaving(TOP_CAPACITY);
+    private long decks = 0;
+    private long void_decks = 0;
+
+    private static volatile DeckAnalytics configured;
+    private static volatile boolean configured_loaded = false;
+
+    /**
+     * A quantile sketch with relative accuracy, after DDSketch. A value
+     * {@code v > 0} is counted in bucket {@code ceil(log_gamma(v))}, which
+     * holds {@code (gamma^(i-1), gamma^i]}; zero has its own count. Values
+     * are deck costs, so they are never negative.
+     */
+    static final class CostSketch {
+        final double accuracy;
+        private final double gamma;
+        private final double log_gamma;
+        private long[] buckets = new long[64]; //grown up to the highest bucket used
+        private long zero_count = 0;
+        private long count = 0;
+        private long sum = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        CostSketch(double accuracy) {
+            this.accuracy = accuracy;
+            this.gamma = (1 + accuracy) / (1 - accuracy);
+            this.log_gamma = Math.log(gamma);
+        }
+
+        void add(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("deck costs are never negative: " + value);
+            }
+            if (value == 0) {
+                zero_count++;
+            } else {
+                int index = (int) Math.ceil(Math.log(value) / log_gamma);
+                if (index >= buckets.length) {
+                    buckets = Arrays.copyOf(buckets, Math.max(index + 1, buckets.length * 2));
+                }
+                buckets[index]++;
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Returns the value at quantile {@code q}, within {@link #accuracy} of
+         * the true value, or {@code NaN} if nothing was added.
+         */
+        double quantile(double q) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            long rank = (long) (q * (count - 1));
+            long seen = zero_count;
+            if (rank < seen) {
+                return 0;
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (rank < seen) {
+                    double estimate = 2 * Math.pow(gamma, i) / (gamma + 1); //the middle of the bucket, in relative terms
+                    return Math.max(min, Math.min(max, estimate));
+                }
+            }
+            return max;
+        }
+
+        void merge(CostSketch other) {
+            if (other.accuracy != accuracy) {
+                throw new IllegalArgumentException("cannot merge cost sketches of accuracy " + accuracy + " and " + other.accuracy);
+            }
+            if (other.buckets.length > buckets.length) {
+                buckets = Arrays.copyOf(buckets, other.buckets.length);
+            }
+            for (int i = 0; i < other.buckets.length; i++) {
+                buckets[i] += other.buckets[i];
+            }
+            zero_count += other.zero_count;
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            int used = buckets.length;
+            while (used > 0 && buckets[used - 1] == 0) {
+                used--;
+            }
+            out.writeDouble(accuracy);
+            out.writeLong(zero_count);
+            out.writeLong(count);
+            out.writeLong(sum);
+            out.writeLong(min);
+            out.writeLong(max);
+            out.writeInt(used);
+            for (int i = 0; i < used; i++) {
+                out.writeLong(buckets[i]);
+            }
+        }
+
+        static CostSketch read(DataInputStream in) throws IOException {
+            CostSketch sketch = new CostSketch(in.readDouble());
+            sketch.zero_count = in.readLong();
+            sketch.count = in.readLong();
+            sketch.sum = in.readLong();
+            sketch.min = in.readLong();
+            sketch.max = in.readLong();
+            int used = in.readInt();
+            if (used < 0 || used > 4096) { //ceil(log_gamma(Long.MAX_VALUE)) is about 2200 at 1%
+                throw new IOException("bad number of cost buckets " + used);
+            }
+            sketch.buckets = new long[Math.max(used, 64)];
+            for (int i = 0; i < used; i++) {
+                sketch.buckets[i] = in.readLong();
+            }
+            return sketch;
+        }
+    }
+
+    /**
+     * A histogram of rates in {@code [0, 1]}: bucket 0 is exactly zero and
+     * bucket {@code b} from 1 to 100 holds {@code [(b-1)%, b%)}, with 100%
+     * in the last one.
+     */
+    static final class RateHistogram {
+        static final int BUCKETS = 101;
+        private final long[] buckets = new long[BUCKETS];
+        private long count = 0;
+
+        void add(long part, long whole) {
+            int bucket = part == 0 ? 0 : 1 + (int) Math.min(99, part * 100 / whole);
+            buckets[bucket]++;
+            count++;
+        }
+
+        /**
+         * Returns the upper bound of the bucket at quantile {@code q}, as a
+         * rate, or {@code NaN} if nothing was added.
+         */
+        double quantile(double q) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            long rank = (long) (q * (count - 1));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets[b];
+                if (rank < seen) {
+                    return b / 100.0;
+                }
+            }
+            return 1.0;
+        }
+
+        /**
+         * Returns the number of rates in {@code [from, to)} percent; zero is
+         * only counted by a range that starts at 0.
+         */
+        long count(int from_percent, int to_percent) {
+            long total = from_percent == 0 ? buckets[0] : 0;
+            for (int b = from_percent + 1; b <= to_percent && b < BUCKETS; b++) {
+                total += buckets[b];
+            }
+            return total;
+        }
+
+        void merge(RateHistogram other) {
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets[b] += other.buckets[b];
+            }
+            count += other.count;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(BUCKETS);
+            for (long bucket : buckets) {
+                out.writeLong(bucket);
+            }
+        }
+
+        static RateHistogram read(DataInputStream in) throws IOException {
+            if (in.readInt() != BUCKETS) {
+                throw new IOException("unexpected number of rate buckets");
+            }
+            RateHistogram histogram = new RateHistogram();
+            for (int b = 0; b < BUCKETS; b++) {
+                histogram.buckets[b] = in.readLong();
+                histogram.count += histogram.buckets[b];
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * A Count-Min sketch of card copies. An estimate is never below the true
+     * count and, with probability {@code 1 - e^-depth}, at most
+     * {@code e / width} of all copies above it.
+     */
+    static final class CountMinSketch {
+        final int depth;
+        final int width;
+        private final long[] counts;
+        private long total = 0;
+
+        CountMinSketch(int depth, int width) {
+            if (Integer.bitCount(width) != 1) {
+                throw new IllegalArgumentException("width must be a power of two: " + width);
+            }
+            this.depth = depth;
+            this.width = width;
+            this.counts = new long[depth * width];
+        }
+
+        void add(String name, long copies) {
+            long hash = hash(name);
+            for (int row = 0; row < depth; row++) {
+                counts[row * width + slot(hash, row)] += copies;
+            }
+            total += copies;
+        }
+
+        long estimate(String name) {
+            long hash = hash(name);
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                estimate = Math.min(estimate, counts[row * width + slot(hash, row)]);
+            }
+            return estimate;
+        }
+
+        /**
+         * Returns the most an estimate is above the true count, with
+         * probability {@code 1 - e^-depth}.
+         */
+        long errorBound() {
+            return (long) Math.ceil(Math.E / width * total);
+        }
+
+        private int slot(long hash, int row) {
+            return (int) mix(hash + row * 0x9E3779B97F4A7C15L) & (width - 1);
+        }
+
+        void merge(CountMinSketch other) {
+            if (other.depth != depth || other.width != width) {
+                throw new IllegalArgumentException("cannot merge Count-Min sketches of different sizes");
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(depth);
+            out.writeInt(width);
+            out.writeLong(total);
+            for (long count : counts) {
+                out.writeLong(count);
+            }
+        }
+
+        static CountMinSketch read(DataInputStream in) throws IOException {
+            int depth = in.readInt();
+            int width = in.readInt();
+            if (depth < 1 || depth > 64 || width < 1 || width > (1 << 24)) {
+                throw new IOException("bad Count-Min sketch size " + depth + "x" + width);
+            }
+            CountMinSketch sketch = new CountMinSketch(depth, width);
+            sketch.total = in.readLong();
+            for (int i = 0; i < sketch.counts.length; i++) {
+                sketch.counts[i] = in.readLong();
+            }
+            return sketch;
+        }
+    }
+
+    /**
+     * The SpaceSaving summary of the most used cards. It keeps at most
+     * {@code capacity} cards; a new card replaces the one with the lowest
+     * count and inherits that count as its error, so a kept card's count is
+     * at most {@code error} above its true count. Any card used more than
+     * {@code total / capacity} times is kept.
+     */
+    static final class SpaceSaving {
+        final int capacity;
+        private final Map<String, Entry> entries = new HashMap<>();
+        //entries by count; counts only grow, so an outdated snapshot is pushed again when it is polled
+        private final PriorityQueue<Snapshot> by_count = new PriorityQueue<>((a, b) -> Long.compare(a.count, b.count));
+        private long total = 0;
+
+        static final class Entry {
+            final String name;
+            long count;
+            long error;
+
+            Entry(String name, long count, long error) {
+                this.name = name;
+                this.count = count;
+                this.error = error;
+            }
+        }
+
+        private static final class Snapshot {
+            final Entry entry;
+            final long count;
+
+            Snapshot(Entry entry) {
+                this.entry = entry;
+                this.count = entry.count;
+            }
+        }
+
+        SpaceSaving(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(String name, long copies) {
+            total += copies;
+            Entry entry = entries.get(name);
+            if (entry != null) {
+                entry.count += copies;
+                return;
+            }
+            if (entries.size() < capacity) {
+                put(new Entry(name, copies, 0));
+                return;
+            }
+            Entry smallest = pollSmallest();
+            entries.remove(smallest.name);
+            put(new Entry(name, smallest.count + copies, smallest.count));
+        }
+
+        private void put(Entry entry) {
+            entries.put(entry.name, entry);
+            by_count.add(new Snapshot(entry));
+        }
+
+        private Entry pollSmallest() {
+            while (true) {
+                Snapshot snapshot = by_count.poll();
+                if (snapshot.count == snapshot.entry.count) {
+                    return snapshot.entry;
+                }
+                by_count.add(new Snapshot(snapshot.entry)); //the entry grew since
+            }
+        }
+
+        /**
+         * Returns the lowest count kept, which every card that is not kept
+         * is used at most as often as; 0 while there is room.
+         */
+        long minimum() {
+            if (entries.size() < capacity) {
+                return 0;
+            }
+            long minimum = Long.MAX_VALUE;
+            for (Entry entry : entries.values()) {
+                minimum = Math.min(minimum, entry.count);
+            }
+            return minimum;
+        }
+
+        /**
+         * Returns the kept cards, most used first.
+         */
+        List<Entry> top(int limit) {
+            List<Entry> sorted = new ArrayList<>(entries.values());
+            sorted.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.name.compareTo(b.name));
+            return sorted.subList(0, Math.min(limit, sorted.size()));
+        }
+
+        /**
+         * Merges another summary in, after Agarwal et al.: a card missing on
+         * one side is counted with that side's minimum, both in its count and
+         * its error, and then the {@code capacity} highest counts are kept.
+         */
+        void merge(SpaceSaving other) {
+            long own_minimum = minimum();
+            long other_minimum = other.minimum();
+            Map<String, Entry> merged = new HashMap<>();
+            for (Entry entry : entries.values()) {
+                Entry theirs = other.entries.get(entry.name);
+                merged.put(entry.name, theirs != null
+                        ? new Entry(entry.name, entry.count + theirs.count, entry.error + theirs.error)
+                        : new Entry(entry.name, entry.count + other_minimum, entry.error + other_minimum));
+            }
+            for (Entry theirs : other.entries.values()) {
+                if (!merged.containsKey(theirs.name)) {
+                    merged.put(theirs.name, new Entry(theirs.name, theirs.count + own_minimum, theirs.error + own_minimum));
+                }
+            }
+
+            List<Entry> sorted = new ArrayList<>(merged.values());
+            sorted.sort((a, b) -> Long.compare(b.count, a.count));
+            entries.clear();
+            by_count.clear();
+            for (Entry entry : sorted.subList(0, Math.min(capacity, sorted.size()))) {
+                put(entry);
+            }
+            total += other.total;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(capacity);
+            out.writeLong(total);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.name);
+                out.writeLong(entry.count);
+                out.writeLong(entry.error);
+            }
+        }
+
+        static SpaceSaving read(DataInputStream in) throws IOException {
+            SpaceSaving summary = new SpaceSaving(in.readInt());
+            summary.total = in.readLong();
+            int size = in.readInt();
+            if (size < 0 || size > summary.capacity) {
+                throw new IOException("bad SpaceSaving summary size " + size);
+            }
+            for (int i = 0; i < size; i++) {
+                summary.put(new Entry(in.readUTF(), in.readLong(), in.readLong()));
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Adds one deck.
+     *
+     * @param file_to_generate {@code false} for a VOID deck, whose cost and
+     *                         cards are not counted
+     * @param tally the parsed deck
+     */
+    public synchronized void add(boolean file_to_generate, DeckTally tally) {
+        CardTable cardDeck = tally.getCardDeck();
+        decks++;
+        long lines = tally.getInvalidCount() + cardDeck.totalCount();
+        if (lines > 0) {
+            invalid_rates.add(tally.getInvalidCount(), lines);
+        }
+        if (!file_to_generate) {
+            void_decks++;
+            return;
+        }
+        costs.add(cardDeck.totalCost());
+        for (int id = 0; id < cardDeck.size(); id++) {
+            String name = cardDeck.name(id);
+            card_counts.add(name, cardDeck.count(id));
+            top_cards.add(name, cardDeck.count(id));
+        }
+    }
+
+    /**
+     * Adds the decks of another sketch, as if they had been added here.
+     *
+     * @param other the sketch to merge in; it is not changed
+     * @throws IllegalArgumentException if the sketches were made with other sizes
+     */
+    public void merge(DeckAnalytics other) {
+        if (other == this) {
+            throw new IllegalArgumentException("cannot merge a sketch into itself");
+        }
+        //lock both in a fixed order, so a.merge(b) and b.merge(a) cannot deadlock
+        int this_hash = System.identityHashCode(this);
+        int other_hash = System.identityHashCode(other);
+        if (this_hash == other_hash) {
+            synchronized (MERGE_TIE_LOCK) {
+                synchronized (this) {
+                    synchronized (other) {
+                        mergeLocked(other);
+                    }
+                }
+            }
+        } else {
+            DeckAnalytics first = this_hash < other_hash ? this : other;
+            DeckAnalytics second = first == this ? other : this;
+            synchronized (first) {
+                synchronized (second) {
+                    mergeLocked(other);
+                }
+            }
+        }
+    }
+
+    private void mergeLocked(DeckAnalytics other) {
+        costs.merge(other.costs);
+        invalid_rates.merge(other.invalid_rates);
+        card_counts.merge(other.card_counts);
+        top_cards.merge(other.top_cards);
+        decks += other.decks;
+        void_decks += other.void_decks;
+    }
+
+    /**
+     * Returns the number of decks added.
+     *
+     * @return the deck count, VOID decks included
+     */
+    public synchronized long getDeckCount() {
+        return decks;
+    }
+
+    /**
+     * Returns the total cost at a quantile of the valid decks, within
+     * {@link #COST_ACCURACY} of the true value.
+     *
+     * @param q the quantile, from 0 to 1
+     * @return the cost, or {@code NaN} if no valid deck was added
+     */
+    public synchronized double costQuantile(double q) {
+        return costs.quantile(q);
+    }
+
+    /**
+     * Returns the Count-Min estimate of the copies of a card over all valid
+     * decks; it is never below the true count.
+     *
+     * @param name the card name as written in the decks
+     * @return the estimated copies
+     */
+    public synchronized long estimateCopies(String name) {
+        return card_counts.estimate(name);
+    }
+
+    /**
+     * Returns how far {@link #estimateCopies(String)} can be above the true
+     * count, with probability {@code 1 - e^-}{@value #COUNT_MIN_DEPTH}.
+     *
+     * @return the error bound in copies
+     */
+    public synchronized long getCopiesErrorBound() {
+        return card_counts.errorBound();
+    }
+
+    /**
+     * Saves the sketch, replacing the file atomically.
+     *
+     * @param file the sketch file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(Path file) throws IOException {
+        Path tmp = Paths.get(file + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(decks);
+            out.writeLong(void_decks);
+            costs.write(out);
+            invalid_rates.write(out);
+            card_counts.write(out);
+            top_cards.write(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a sketch saved by {@link #save(Path)}.
+     *
+     * @param file the sketch file
+     * @return the sketch
+     * @throws IOException if the file cannot be read or is not a sketch
+     */
+    public static DeckAnalytics load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a deck analytics sketch");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            DeckAnalytics analytics = new DeckAnalytics();
+            analytics.decks = in.readLong();
+            analytics.void_decks = in.readLong();
+            CostSketch costs = CostSketch.read(in);
+            RateHistogram invalid_rates = RateHistogram.read(in);
+            CountMinSketch card_counts = CountMinSketch.read(in);
+            SpaceSaving top_cards = SpaceSaving.read(in);
+            analytics.costs.merge(costs); //merging into empty sketches also checks that the sizes match
+            analytics.invalid_rates.merge(invalid_rates);
+            analytics.card_counts.merge(card_counts);
+            if (top_cards.capacity != TOP_CAPACITY) {
+                throw new IOException(file + " keeps " + top_cards.capacity + " top cards, not " + TOP_CAPACITY);
+            }
+            analytics.top_cards.merge(top_cards);
+            return analytics;
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the sketch of the {@code deck.analytics} system property,
+     * loading the file on the first call if it exists, and saving it when the
+     * JVM exits.
+     *
+     * <p>If the file cannot be loaded the error is printed once and no
+     * analytics are kept, so an unreadable sketch is never overwritten.</p>
+     *
+     * @return the sketch, or {@code null} if none is configured
+     */
+    public static DeckAnalytics fromProperty() {
+        if (!configured_loaded) {
+            synchronized (DeckAnalytics.class) {
+                if (!configured_loaded) {
+                    String file = System.getProperty("deck.analytics");
+                    if (file != null) {
+                        try {
+                            Path path = Paths.get(file);
+                            DeckAnalytics analytics = Files.exists(path) ? load(path) : new DeckAnalytics();
+                            Runtime.getRuntime().addShutdownHook(new Thread(() -> saveQuietly(analytics, path)));
+                            configured = analytics;
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    configured_loaded = true;
+                }
+            }
+        }
+        return configured;
+    }
+
+    private static void saveQuietly(DeckAnalytics analytics, Path file) {
+        try {
+            analytics.save(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the summary report: deck counts, cost quantiles, the
+     * invalid-line rates and the most used cards.
+     *
+     * @param top the number of cards listed
+     * @return the report text
+     */
+    public synchronized String summary(int top) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Decks: %d (%d VOID)%n", decks, void_decks));
+
+        if (costs.count > 0) {
+            report.append(String.format("Total deck cost (within %.0f%%): min %d  p50 %.0f  p90 %.0f  p99 %.0f  max %d  mean %.1f%n",
+                    COST_ACCURACY * 100, costs.min, costs.quantile(0.5), costs.quantile(0.9), costs.quantile(0.99),
+                    costs.max, (double) costs.sum / costs.count));
+        }
+
+        if (invalid_rates.count > 0) {
+            report.append(String.format("Invalid-line rate: none in %.1f%% of decks; p50 %s  p90 %s  p99 %s%n",
+                    100.0 * invalid_rates.buckets[0] / invalid_rates.count, rateQuantile(0.5), rateQuantile(0.9),
+                    rateQuantile(0.99)));
+            for (int from = 0; from < 100; from += 10) {
+                long in_range = invalid_rates.count(from, from + 10);
+                if (in_range > 0) {
+                    report.append(String.format("  %3d%% - %3d%%  %10d  %5.1f%%%n", from, from + 10, in_range,
+                            100.0 * in_range / invalid_rates.count));
+                }
+            }
+        }
+
+        List<SpaceSaving.Entry> entries = top_cards.top(top);
+        if (!entries.isEmpty()) {
+            report.append(String.format("Most used cards (copies, at most and at least):%n"));
+            for (int i = 0; i < entries.size(); i++) {
+                SpaceSaving.Entry entry = entries.get(i);
+                //both sketches only overestimate, so the lower of the two is the tighter bound
+                long at_most = Math.min(entry.count, card_counts.estimate(entry.name));
+                report.append(String.format("  %3d. %-30s %12d %12d%n", i + 1, entry.name, at_most, entry.count - entry.error));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns the invalid-line rate at a quantile as text: {@code 0%}, or the
+     * upper bound of its bucket.
+     */
+    private String rateQuantile(double q) {
+        double rate = invalid_rates.quantile(q);
+        return rate == 0 ? "0%" : String.format("< %.0f%%", rate * 100);
+    }
+
+    /**
+     * Mixes the bits of a hash so nearby inputs land in unrelated slots, as
+     * the SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * FNV-1a of the UTF-16 code units of a name, mixed.
+     */
+    private static long hash(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Adds every deck of a directory, glob or archive, without reporting them.
+     */
+    private static int addDecks(DeckAnalytics analytics, String location) throws IOException {
+        if (DeckArchive.isArchive(location)) {
+            return DeckArchive.forEachDeck(Paths.get(location),
+                    (entry_name, file_to_generate, tally) -> analytics.add(file_to_generate, tally));
+        }
+        List<Path> deck_files = BatchTally.findDeckFiles(location);
+        for (Path deck_file : deck_files) {
+            DeckTally tally = new DeckTally();
+            boolean file_to_generate = SlayTheSpire.readTxtFile(deck_file.toString(), tally);
+            analytics.add(file_to_generate, tally);
+        }
+        return deck_files.size();
+    }
+
+    /**
+     * Entry point of the analytics mode: merges sketch files, optionally adds
+     * decks, optionally saves the result, and prints the summary report.
+     *
+     * @param args {@code --analytics [sketch file]... [--add directory|glob|archive]...
+     *             [--out sketch file] [--top N] [--card name]...}
+     */
+    public static void main(String[] args) {
+        List<String> sketches = new ArrayList<>();
+        List<String> locations = new ArrayList<>();
+        List<String> cards = new ArrayList<>();
+        String out = null;
+        int top = 20;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--analytics")) {
+                continue;
+            } else if (args[i].equals("--add") && i + 1 < args.length) {
+                locations.add(args[++i]);
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                out = args[++i];
+            } else if (args[i].equals("--top") && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--card") && i + 1 < args.length) {
+                cards.add(args[++i]);
+            } else if (!args[i].startsWith("--")) {
+                sketches.add(args[i]);
+            } else {
+                sketches.clear();
+                locations.clear();
+                break;
+            }
+        }
+
+        if (sketches.isEmpty() && locations.isEmpty()) {
+            System.out.println("Usage: --analytics [sketch file]... [--add directory|glob|archive]... [--out sketch file] [--top N] [--card name]...");
+            return;
+        }
+
+        try {
+            DeckAnalytics analytics = new DeckAnalytics();
+            for (String sketch : sketches) {
+                analytics.merge(load(Paths.get(sketch)));
+            }
+            long start = System.nanoTime();
+            int added = 0;
+            for (String location : locations) {
+                added += addDecks(analytics, location);
+            }
+            if (added > 0) {
+                System.out.printf("Added %d decks in %.1f ms%n", added, (System.nanoTime() - start) / 1e6);
+            }
+            if (out != null) {
+                analytics.save(Paths.get(out));
+            }
+
+            System.out.print(analytics.summary(top));
+            for (String card : cards) {
+                System.out.printf("%s: about %d copies (at most %d too many)%n", card, analytics.estimateCopies(card),
+                        analytics.getCopiesErrorBound());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
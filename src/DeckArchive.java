@@ -0,0 +1,322 @@
+/**
+ * The {@code DeckArchive} class reads decks straight out of {@code .zip}
+ * export bundles and {@code .gz} files, without extracting them to disk.
+ *
+ * <p>Every {@code *.txt} (or {@code *.txt.gz}) entry of a zip is inflated by
+ * {@link ZipInputStream} and fed block by block to
+ * {@link DeckTokenizer#parse(java.io.InputStream)}, with the same rules as
+ * {@link SlayTheSpire#readTxtFile(String, DeckTally)}; a {@code .gz} file is
+ * one deck. Each deck gets its own {@link DeckTally}, a deck ID and its
+ * reports. Other entries, directories and {@code __MACOSX/} metadata are
+ * skipped.</p>
+ *
+ * <p>The reports go next to the archive (or into {@code --out <directory>}),
+ * or with {@code --out-zip <file.zip>} into one zip, each report in its own
+ * entry named like the file it would otherwise be. A report that fails is
+ * left out of the zip and counted, and the next one is written, as in the
+ * directory.</p>
+ *
+ * <p>Usage: {@code --archive <bundle.zip|deck.txt.gz> [--out directory |
+ * --out-zip reports.zip] [--format pdf|csv|jsonl|bin]}.</p>
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class DeckArchive {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives each deck read from an archive.
+     */
+    public interface DeckConsumer {
+        /**
+         * @param entry_name the name of the deck inside the archive
+         * @param file_to_generate {@code false} for a VOID deck
+         * @param tally the parsed deck
+         * @throws IOException if the deck cannot be reported
+         */
+        void accept(String entry_name, boolean file_to_generate, DeckTally tally) throws IOException;
+    }
+
+    /**
+     * Returns whether a path names an archive this class reads.
+     *
+     * @param path the path of a deck or bundle
+     * @return {@code true} for a {@code .zip} or {@code .gz} file
+     */
+    public static boolean isArchive(String path) {
+        String lower = path.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".zip") || lower.endsWith(".gz");
+    }
+
+    /**
+     * Reads a gzip-compressed deck into a tally.
+     *
+     * @param file the {@code .gz} deck
+     * @param tally receives the cards and invalid lines
+     * @return {@code true} if the deck passed the line and invalid card limits
+     * @throws IOException if the file cannot be read or is not gzip
+     */
+    public static boolean readGzip(Path file, DeckTally tally) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            return parse(in, tally);
+        }
+    }
+
+    /**
+     * Reads every deck of an archive, in archive order.
+     *
+     * @param archive a {@code .zip} bundle or a {@code .gz} deck
+     * @param consumer receives each deck
+     * @return the number of decks read
+     * @throws IOException if the archive cannot be read, or the consumer fails
+     */
+    public static int forEachDeck(Path archive, DeckConsumer consumer) throws IOException {
+        String name = archive.getFileName().toString();
+        if (!name.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            DeckTally tally = new DeckTally();
+            boolean file_to_generate = readGzip(archive, tally);
+            consumer.accept(name.substring(0, name.length() - 3), file_to_generate, tally);
+            return 1;
+        }
+
+        int decks = 0;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String entry_name = entry.getName();
+                String lower = entry_name.toLowerCase(Locale.ROOT);
+                if (entry.isDirectory() || lower.startsWith("__macosx/")) {
+                    continue;
+                }
+                DeckTally tally = new DeckTally();
+                boolean file_to_generate;
+                if (lower.endsWith(".txt")) {
+                    file_to_generate = parse(zip, tally);
+                } else if (lower.endsWith(".txt.gz")) {
+                    //not closed, that would close the zip; the rest of the entry is skipped by getNextEntry
+                    file_to_generate = parse(new GZIPInputStream(zip, BUFFER_SIZE), tally);
+                    entry_name = entry_name.substring(0, entry_name.length() - 3);
+                } else {
+                    continue;
+                }
+                consumer.accept(entry_name, file_to_generate, tally);
+                decks++;
+            }
+        }
+        return decks;
+    }
+
+    /**
+     * Parses one deck from a stream and records it in the {@link DeckMetrics}.
+     */
+    private static boolean parse(InputStream in, DeckTally tally) throws IOException {
+        long start = System.nanoTime();
+        DeckTokenizer tokenizer = new DeckTokenizer(tally);
+        try {
+            boolean valid = tokenizer.parse(in);
+            DeckMetrics.recordParse(tokenizer, valid, System.nanoTime() - start);
+            return valid;
+        } catch (IOException e) {
+            DeckMetrics.PARSE_ERRORS.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes reports into one zip file, one entry per report and format.
+     * Entries are written one at a time, so {@link #write} is synchronized.
+     * Each report is rendered into memory first: an entry cannot be taken
+     * back once it is started, so a report that fails must not reach the zip.
+     */
+    public static final class ZipReportWriter implements Closeable {
+        private final ZipOutputStream zip;
+        private final List<ReportWriter> writers;
+        private final ByteArrayOutputStream report = new ByteArrayOutputStream(BUFFER_SIZE);
+        private int entries = 0;
+        private int failed = 0;
+
+        /**
+         * Creates the zip file, replacing an existing one.
+         *
+         * @param file the zip to write
+         * @param writers the formats of every deck, in order
+         * @throws IOException if the file cannot be created
+         */
+        public ZipReportWriter(Path file, List<ReportWriter> writers) throws IOException {
+            this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+            this.writers = writers;
+        }
+
+        /**
+         * Writes the reports of one deck into the zip and records the deck for
+         * {@code -Ddeck.ledger} and {@code -Ddeck.analytics}, like
+         * {@link SlayTheSpire#generateFile(boolean, String, DeckTally, String)}.
+         * A report that cannot be rendered is printed, counted in
+         * {@link DeckMetrics#RENDER_ERRORS} and left out.
+         *
+         * @param file_to_generate {@code false} for a VOID report
+         * @param tally the parsed deck
+         * @param deck_ID the ID of the deck
+         * @return the entry name of the first report written, or {@code null} if none was
+         * @throws IOException if the zip cannot be written
+         */
+        public synchronized String write(boolean file_to_generate, DeckTally tally, String deck_ID) throws IOException {
+            int total_cost = SlayTheSpire.calculateTotalDeckCost(tally.cardDeck);
+            String first_entry = null;
+            for (ReportWriter writer : writers) {
+                String entry_name = "SpireDeck_" + deck_ID + (file_to_generate ? "" : "(VOID)") + writer.extension();
+                long start = System.nanoTime();
+                report.reset();
+                try {
+                    if (!file_to_generate) {
+                        writer.writeVoid(report, deck_ID);
+                    } else {
+                        writer.writeReport(report, deck_ID, total_cost, tally.cardDeck, tally.invalid_cards);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    DeckMetrics.RENDER_ERRORS.increment();
+                    failed++;
+                    System.out.println("Report " + entry_name + " failed, left out of the zip");
+                    e.printStackTrace();
+                    continue;
+                }
+                zip.putNextEntry(new ZipEntry(entry_name));
+                report.writeTo(zip);
+                zip.closeEntry();
+                DeckMetrics.recordRender(report.size(), start);
+                entries++;
+                if (first_entry == null) {
+                    first_entry = entry_name;
+                }
+            }
+            SlayTheSpire.recordReportedDeck(deck_ID, file_to_generate, tally);
+            return first_entry;
+        }
+
+        /**
+         * Returns the number of entries written so far.
+         *
+         * @return the entry count
+         */
+        public synchronized int getEntryCount() {
+            return entries;
+        }
+
+        /**
+         * Returns the number of reports left out because they failed.
+         *
+         * @return the failed report count
+         */
+        public synchronized int getFailedCount() {
+            return failed;
+        }
+
+        /**
+         * Writes the zip's central directory and closes the file.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    /**
+     * Reports every deck of an archive, into a directory or a zip.
+     *
+     * @param archive a {@code .zip} bundle or a {@code .gz} deck
+     * @param directory where the reports are written when {@code out_zip} is {@code null}
+     * @param out_zip the zip that receives the reports, or {@code null}
+     * @param print_warnings whether catalog warnings are printed per deck
+     * @return the number of decks reported
+     * @throws IOException if the archive or the output zip cannot be accessed
+     */
+    public static int report(Path archive, Path directory, Path out_zip, boolean print_warnings) throws IOException {
+        List<ReportWriter> writers = SlayTheSpire.getReportWriters();
+        int[] voids = {0};
+        int decks;
+        if (out_zip != null) {
+            try (ZipReportWriter zip = new ZipReportWriter(out_zip, writers)) {
+                decks = forEachDeck(archive, (entry_name, file_to_generate, tally) -> {
+                    printWarnings(print_warnings, entry_name, tally);
+                    voids[0] += file_to_generate ? 0 : 1;
+                    zip.write(file_to_generate, tally, DeckIDGenerator.generateUniqueNumber());
+                });
+            }
+        } else {
+            String directory_path = directory.toString();
+            decks = forEachDeck(archive, (entry_name, file_to_generate, tally) -> {
+                printWarnings(print_warnings, entry_name, tally);
+                voids[0] += file_to_generate ? 0 : 1;
+                SlayTheSpire.generateFile(file_to_generate, directory_path, tally);
+            });
+        }
+        System.out.println("Archive " + archive.getFileName() + ": " + decks + " deck(s), " + voids[0] + " VOID, reports in "
+                + (out_zip != null ? out_zip : directory));
+        return decks;
+    }
+
+    private static void printWarnings(boolean print_warnings, String entry_name, DeckTally tally) {
+        if (!print_warnings) {
+            return;
+        }
+        for (String warning : tally.getCatalogWarnings()) { //only with -Ddeck.catalog
+            System.out.println(entry_name + ": catalog warning: " + warning);
+        }
+    }
+
+    /**
+     * Entry point of the archive mode.
+     *
+     * @param args {@code --archive <bundle.zip|deck.txt.gz> [--out directory |
+     *             --out-zip reports.zip] [--format pdf|csv|jsonl|bin]}
+     */
+    public static void main(String[] args) {
+        String archive = null;
+        String out = null;
+        String out_zip = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--archive") && i + 1 < args.length) {
+                archive = args[++i];
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                out = args[++i];
+            } else if (args[i].equals("--out-zip") && i + 1 < args.length) {
+                out_zip = args[++i];
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                SlayTheSpire.setReportWriters(ReportWriter.forFormats(args[++i]));
+            } else {
+                archive = null;
+                break;
+            }
+        }
+        if (archive == null || !isArchive(archive) || (out != null && out_zip != null)) {
+            System.out.println("Usage: --archive <bundle.zip|deck.txt.gz> [--out directory | --out-zip reports.zip] [--format pdf|csv|jsonl|bin]");
+            return;
+        }
+
+        Path archive_path = Paths.get(archive).toAbsolutePath();
+        Path directory = out != null ? Paths.get(out) : archive_path.getParent();
+        try {
+            Files.createDirectories(directory);
+            report(archive_path, directory, out_zip == null ? null : Paths.get(out_zip), false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,470 @@
+/**
+ * The {@code DeckIDAllocator} class hands out unique 9-digit deck IDs.
+ *
+ * <p>Every reserved ID is one bit in a memory-mapped bitmap file
+ * ({@code 1,000,000,000} bits, 125 MB, created sparse), so the history costs
+ * no heap and opening it does not read it. IDs are reserved in blocks: one
+ * reservation picks a random starting point, collects the next free IDs and
+ * marks them in the bitmap. Handing out an ID from the current block is one
+ * atomic increment; only the thread that finds the block empty takes the lock
+ * to reserve the next one.</p>
+ *
+ * <p>The text history file lists the IDs that were handed out, not the ones
+ * reserved. {@link #nextId()} does no file I/O: the IDs handed out from a
+ * block are appended with a single write when the block is used up, by
+ * {@link #nextIds(int)} and by {@link #flushHistory()}. IDs left in a block
+ * when the process exits stay marked in the bitmap, so they are never issued,
+ * but they are not in the history either; the same holds for handed-out IDs
+ * whose block was not flushed before a crash.</p>
+ *
+ * <p>The first time the bitmap is created it is filled from the existing
+ * text history ({@code DeckIDs.txt}), which is parsed byte by byte without
+ * building a {@code String} per ID.</p>
+ *
+ * <p>Several processes may share the same history. The mapped bitmap is the
+ * same file for all of them, and every reservation (and the creation of the
+ * bitmap) holds an exclusive {@link FileChannel#lock()} on
+ * {@code DeckIDs.lock}. A reserved block is therefore a lease on a range of
+ * IDs that belongs to one worker process; workers only touch the lock when
+ * their lease runs out, never per ID.</p>
+ *
+ * <p>Running the class with {@code --stress <history file> [processes]
+ * [ids per process] [block size]} starts that many worker JVMs on the same
+ * history and checks that no ID is issued twice.</p>
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DeckIDAllocator {
+
+    public static final int ID_SPACE = 1_000_000_000; //all 9-digit numbers
+    private static final int WORDS = ID_SPACE / 64;
+    private static final long BITMAP_BYTES = WORDS * 8L;
+
+    //FileChannel.lock is per process; threads of one JVM queue on this first
+    private static final ConcurrentHashMap<Path, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path history_file;
+    private final Path lock_file;
+    private final Object jvm_lock;
+    private final MappedByteBuffer bitmap;
+    private final int block_size;
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(new int[0]));
+
+    private volatile long skipped_ids = 0; //only written under the lock
+
+    /**
+     * A reserved run of IDs. Threads claim entries with one atomic increment.
+     * The entries before {@code next} were handed out, the ones before
+     * {@code written} are in the history.
+     */
+    private static final class Block {
+        final int[] ids;
+        final AtomicInteger next = new AtomicInteger();
+        int written = 0; //only accessed under jvm_lock
+
+        Block(int[] ids) {
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Opens the allocator for a text history file. The bitmap lives next to it
+     * with the extension {@code .bitmap} and is created from the history if it
+     * does not exist yet.
+     *
+     * @param history_file the text file that lists every issued ID, one per line
+     * @param block_size how many IDs each reservation takes, at least 1
+     * @throws IOException if the bitmap cannot be created or mapped
+     */
+    public DeckIDAllocator(Path history_file, int block_size) throws IOException {
+        if (block_size < 1) {
+            throw new IllegalArgumentException("block_size must be at least 1");
+        }
+        this.history_file = history_file;
+        this.block_size = block_size;
+        this.lock_file = siblingWithExtension(history_file, ".lock");
+        this.jvm_lock = JVM_LOCKS.computeIfAbsent(lock_file.toAbsolutePath().normalize(), key -> new Object());
+
+        Path bitmap_file = bitmapFileFor(history_file);
+        if (!Files.exists(bitmap_file)) {
+            synchronized (jvm_lock) {
+                try (FileChannel lock_channel = openLockFile()) {
+                    FileLock lock = lock_channel.lock();
+                    try {
+                        if (!Files.exists(bitmap_file)) { //another process may have created it meanwhile
+                            createBitmap(history_file, bitmap_file);
+                        }
+                    } finally {
+                        lock.release();
+                    }
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(bitmap_file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != BITMAP_BYTES) {
+                throw new IOException(bitmap_file + " is not a deck ID bitmap");
+            }
+            bitmap = channel.map(FileChannel.MapMode.READ_WRITE, 0, BITMAP_BYTES);
+            bitmap.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Returns the bitmap file that belongs to a history file,
+     * {@code DeckIDs.txt} becomes {@code DeckIDs.bitmap}.
+     *
+     * @param history_file the text history file
+     * @return the path of the bitmap file
+     */
+    static Path bitmapFileFor(Path history_file) {
+        return siblingWithExtension(history_file, ".bitmap");
+    }
+
+    private static Path siblingWithExtension(Path file, String extension) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return file.resolveSibling(base + extension);
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        return FileChannel.open(lock_file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Returns the next unique ID. Lock-free and without file I/O unless the
+     * current block is used up; the ID reaches the history with the rest of
+     * its block.
+     *
+     * @return an ID between 0 and 999,999,999
+     */
+    public int nextId() {
+        return take();
+    }
+
+    /**
+     * Returns {@code count} unique IDs at once and appends them, and any other
+     * IDs handed out from the current block, to the history with one write.
+     *
+     * @param count how many IDs to return
+     * @return the IDs
+     */
+    public int[] nextIds(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = take();
+        }
+        if (count > 0) {
+            flushHistory();
+        }
+        return ids;
+    }
+
+    /**
+     * Appends the IDs handed out from the current block since the last write
+     * to the history. Called before the process exits; the IDs of a used-up
+     * block are written when it is replaced.
+     */
+    public void flushHistory() {
+        synchronized (jvm_lock) {
+            writeHandedOut(current.get());
+        }
+    }
+
+    /**
+     * Takes the next ID of the current block, reserving a new block when it
+     * is used up.
+     */
+    private int take() {
+        while (true) {
+            Block block = current.get();
+            int index = block.next.getAndIncrement();
+            if (index < block.ids.length) {
+                return block.ids[index];
+            }
+            refill(block);
+        }
+    }
+
+    /**
+     * Formats an ID as a zero-padded 9-digit string.
+     *
+     * @param id an ID between 0 and 999,999,999
+     * @return the 9-digit string
+     */
+    public static String format(int id) {
+        char[] digits = new char[9];
+        for (int i = 8; i >= 0; i--) {
+            digits[i] = (char) ('0' + id % 10);
+            id /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Returns whether an ID has been issued, according to the bitmap.
+     *
+     * @param id the ID to check
+     * @return {@code true} if the ID is taken
+     */
+    public boolean isIssued(int id) {
+        long word = bitmap.getLong((id >>> 6) * 8);
+        return (word & (1L << (id & 63))) != 0;
+    }
+
+    /**
+     * Returns how many taken IDs reservations had to step over since the
+     * allocator was opened.
+     *
+     * @return the number of skipped IDs
+     */
+    public long getSkippedIds() {
+        return skipped_ids;
+    }
+
+    /**
+     * Replaces the used-up block with a new lease. Only one thread does the
+     * work; the others find a fresh block when they retry. The lease is taken
+     * under the file lock, so no other process reserves at the same time.
+     */
+    private void refill(Block exhausted) {
+        synchronized (jvm_lock) {
+            if (current.get() != exhausted) {
+                return;
+            }
+            writeHandedOut(exhausted); //every ID of it was handed out
+            try (FileChannel lock_channel = openLockFile()) {
+                FileLock lock = lock_channel.lock();
+                try {
+                    current.set(new Block(reserveBlock(block_size)));
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("could not lock " + lock_file, e);
+            }
+        }
+    }
+
+    /**
+     * Marks {@code count} free IDs as taken, starting at a random word of the
+     * bitmap. The caller holds the file lock.
+     */
+    private int[] reserveBlock(int count) {
+        int[] ids = new int[count];
+        int found = 0;
+        long skipped_before = skipped_ids;
+        int start_word = ThreadLocalRandom.current().nextInt(WORDS);
+
+        int scanned = 0;
+        for (; scanned < WORDS && found < count; scanned++) {
+            int w = (start_word + scanned) % WORDS;
+            long word = bitmap.getLong(w * 8);
+            long free = ~word; //ID_SPACE is a multiple of 64, every bit is a real ID
+            if (free == 0) {
+                skipped_ids += 64;
+                continue;
+            }
+            skipped_ids += Long.bitCount(~free);
+            while (free != 0 && found < count) {
+                int bit = Long.numberOfTrailingZeros(free);
+                free &= free - 1;
+                word |= 1L << bit;
+                ids[found++] = w * 64 + bit;
+            }
+            bitmap.putLong(w * 8, word);
+        }
+
+        if (found < count) {
+            throw new IllegalStateException("deck ID space is exhausted");
+        }
+
+        DeckMetrics.ID_RETRIES.add(skipped_ids - skipped_before);
+        DeckMetrics.ID_BLOCKS.increment();
+
+        //forced before any ID of the block is handed out, so a crash can only
+        //waste IDs, never reuse them. Only the words scanned here were changed
+        //since the last reservation forced its own, so only they are flushed
+        //instead of the whole 125 MB mapping
+        int first_part = Math.min(scanned, WORDS - start_word);
+        bitmap.force(start_word * 8, first_part * 8);
+        if (scanned > first_part) { //the scan wrapped around to word 0
+            bitmap.force(0, (scanned - first_part) * 8);
+        }
+        return ids;
+    }
+
+    /**
+     * Appends the IDs of a block that were handed out but are not in the
+     * history yet, in a single write. The caller holds {@code jvm_lock}.
+     */
+    private void writeHandedOut(Block block) {
+        int end = Math.min(block.next.get(), block.ids.length); //a claimed index is handed out even if not yet returned
+        if (end <= block.written) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder((end - block.written) * 10);
+        for (int i = block.written; i < end; i++) {
+            lines.append(format(block.ids[i])).append(System.lineSeparator());
+        }
+        block.written = end;
+        try {
+            Files.write(history_file, lines.toString().getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            e.printStackTrace(); //the bitmap already holds the IDs, they are not issued twice
+        }
+    }
+
+    /**
+     * Creates the bitmap from the text history. It is built in a temporary
+     * file and moved into place, so a crash never leaves half a bitmap.
+     */
+    private static void createBitmap(Path history_file, Path bitmap_file) throws IOException {
+        Path tmp = bitmap_file.resolveSibling(bitmap_file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(1), BITMAP_BYTES - 1); //sparse file of the full size
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, BITMAP_BYTES);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (Files.exists(history_file)) {
+                markHistory(history_file, map);
+            }
+            map.force();
+        }
+        Files.move(tmp, bitmap_file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Sets the bit of every ID listed in the history file.
+     */
+    private static void markHistory(Path history_file, ByteBuffer map) throws IOException {
+        try (FileChannel channel = FileChannel.open(history_file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            long value = 0;
+            int digits = 0;
+
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    byte b = buf.get();
+                    if (b >= '0' && b <= '9') {
+                        if (digits < 10) {
+                            value = value * 10 + (b - '0');
+                        }
+                        digits++;
+                    } else {
+                        markId(map, value, digits);
+                        value = 0;
+                        digits = 0;
+                    }
+                }
+                buf.clear();
+            }
+            markId(map, value, digits);
+        }
+    }
+
+    private static void markId(ByteBuffer map, long value, int digits) {
+        if (digits == 0 || digits > 9 || value >= ID_SPACE) {
+            return; //not a deck ID
+        }
+        int id = (int) value;
+        int index = (id >>> 6) * 8;
+        map.putLong(index, map.getLong(index) | (1L << (id & 63)));
+    }
+
+    /**
+     * Command-line entry for the multi-process stress check.
+     *
+     * <p>{@code --stress <history file> [processes] [ids per process] [block size]}
+     * starts the workers and checks the result; {@code --issue <history file>
+     * <count> <block size>} is what every worker runs, printing one ID per line.</p>
+     *
+     * @param args the mode and its arguments
+     * @throws Exception if a worker cannot be started or read
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 4 && args[0].equals("--issue")) {
+            DeckIDAllocator allocator = new DeckIDAllocator(Path.of(args[1]), Integer.parseInt(args[3]));
+            int count = Integer.parseInt(args[2]);
+            StringBuilder out = new StringBuilder(count * 10);
+            for (int id : allocator.nextIds(count)) {
+                out.append(id).append('\n');
+            }
+            System.out.print(out);
+            System.out.flush();
+            return;
+        }
+
+        if (args.length < 2 || !args[0].equals("--stress")) {
+            System.out.println("Usage: --stress <history file> [processes] [ids per process] [block size]");
+            return;
+        }
+
+        String history = args[1];
+        int processes = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int per_process = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        int block = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        List<Process> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < processes; i++) {
+            workers.add(new ProcessBuilder(java, "-cp", classpath, DeckIDAllocator.class.getName(), "--issue",
+                    history, String.valueOf(per_process), String.valueOf(block))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        int duplicates = 0;
+        for (Process worker : workers) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(worker.getInputStream(), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!seen.add(Integer.parseInt(line))) {
+                        duplicates++;
+                    }
+                }
+            }
+            if (worker.waitFor() != 0) {
+                System.out.println("worker exited with " + worker.exitValue());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        System.out.println("Processes:  " + processes);
+        System.out.println("IDs issued: " + seen.size() + " of " + (long) processes * per_process);
+        System.out.println("Duplicates: " + duplicates);
+        System.out.printf("Elapsed:    %.3f s%n", seconds);
+        if (duplicates > 0 || seen.size() != processes * per_process) {
+            System.out.println("STRESS CHECK FAILED");
+            System.exit(1);
+        }
+        System.out.println("STRESS CHECK PASSED (" + new File(history).getName() + ")");
+    }
+}
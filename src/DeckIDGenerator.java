@@ -2,98 +2,136 @@
  * The {@code DeckIDGenerator} class is responsible for generating unique
  * 9-digit deck IDs and managing their persistence in a text file.
  *
- * <p>This class provides methods to generate a random, unique number and
- * save it to a specified file. It also loads previously generated IDs at
- * initialization to ensure that new IDs are unique.</p>
- *
- * <p>Deck IDs are stored in a HashSet to facilitate quick checks for uniqueness.</p>
+ * <p>This class provides methods to generate a unique number and save it to a
+ * specified file. IDs are tracked by a {@link DeckIDAllocator}, which keeps
+ * them in a memory-mapped bitmap next to the text file and reserves them in
+ * blocks. The text file only lists IDs that were handed out. They are
+ * appended a block at a time, not once per ID: when a block is used up, after
+ * a batch from {@link #generateUniqueNumbers(int)}, and when the JVM exits.</p>
  *
  * <p>Note: The generated IDs are saved to the file specified by the
  * {@code DECK_ID_FILE} constant, which should be correctly set to ensure
- * proper file operations.</p>
+ * proper file operations. It can be overridden with the {@code deck.id.file}
+ * system property, and the block size with {@code deck.id.block}.</p>
  */
-import java.io.*;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DeckIDGenerator {
 
     private static final String DECK_ID_FILE = "/Users/sophiabrix/Desktop/Java Programs/SlayTheSpireDeckCostTally/src/DeckIDs.txt";
-    private static HashSet<String> generatedIDs = new HashSet<>();
+    private static final int DEFAULT_BLOCK_SIZE = 16;
 
-    static {
-        loadGeneratedNumbers();
-    }
+    private static volatile int block_size = Integer.getInteger("deck.id.block", DEFAULT_BLOCK_SIZE);
+    private static volatile DeckIDAllocator allocator;
+    private static final Set<String> fallbackIDs = ConcurrentHashMap.newKeySet();
+    private static volatile boolean fallback = false;
 
     /**
-     * Loads previously generated deck IDs from a specified file.
+     * Sets how many IDs each reservation takes. Batch runs set this to the
+     * number of decks so the whole batch is reserved in one step. It only has
+     * an effect before the first ID is generated.
      *
-     * <p>This method reads each line of the file designated by {@code DECK_ID_FILE}
-     * and adds the trimmed IDs to the {@link #generatedIDs} collection. Each line
-     * in the file is expected to contain a single deck ID.</p>
+     * @param size the block size, at least 1
+     */
+    public static void setBlockSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("block size must be at least 1");
+        }
+        block_size = size;
+    }
+
+    /**
+     * Opens the ID allocator now instead of on the first generated ID, so a
+     * long-running server pays for loading the ID history at start.
+     */
+    public static void warmUp() {
+        allocator();
+    }
+
+    /**
+     * Opens the allocator on first use.
      *
-     * <p>If the file does not exist (for example, on the first run of the application),
-     * the method handles the {@link IOException} gracefully without throwing an error.</p>
+     * <p>If the ID file cannot be opened (for example, its directory does not
+     * exist on this machine), the error is printed and IDs are generated
+     * randomly and only checked against this run, as before.</p>
      *
-     * @throws IOException if an error occurs while reading the file.
-     *         (This is handled internally, and the method will not propagate the exception.)
+     * @return the allocator, or {@code null} when falling back
      */
-    private static void loadGeneratedNumbers() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(DECK_ID_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                generatedIDs.add(line.trim());
+    private static DeckIDAllocator allocator() {
+        DeckIDAllocator result = allocator;
+        if (result == null && !fallback) {
+            synchronized (DeckIDGenerator.class) {
+                if (allocator == null && !fallback) {
+                    try {
+                        DeckIDAllocator opened = new DeckIDAllocator(Paths.get(System.getProperty("deck.id.file", DECK_ID_FILE)), block_size);
+                        Runtime.getRuntime().addShutdownHook(new Thread(opened::flushHistory)); //IDs of the unfinished block
+                        allocator = opened;
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        fallback = true;
+                    }
+                }
+                result = allocator;
             }
-        } catch (IOException e) {
-            //file might not exist on first run, handle gracefully
         }
+        return result;
     }
 
     /**
      * Generates a unique 9-digit string.
      *
-     * <p>This method creates a random 9-digit number and ensures its uniqueness
-     * by checking against a collection of previously generated IDs. If the generated
-     * number already exists in the {@link #generatedIDs} collection, the method
-     * will continue generating new numbers until a unique one is found.</p>
-     *
-     * <p>Once a unique number is generated, it is added to the collection of
-     * generated IDs and saved to a persistent storage file using the
-     * {@link #saveGeneratedNumber(String)} method.</p>
+     * <p>The ID is taken from the block reserved by the {@link DeckIDAllocator}.
+     * This does not lock unless the block is used up, so decks tallied
+     * concurrently never wait on each other or receive the same ID.</p>
      *
      * @return a unique 9-digit string as a {@code String}
      */
     public static String generateUniqueNumber() {
-        Random random = new Random();
+        long start = System.nanoTime();
+        DeckIDAllocator ids = allocator();
         String generated;
-
-        do {
-            generated = String.format("%09d", random.nextInt(1_000_000_000)); //generate 9-digit number
-        } while (generatedIDs.contains(generated)); //check for uniqueness
-
-        generatedIDs.add(generated);
-        saveGeneratedNumber(generated); //save to file
+        if (ids != null) {
+            generated = DeckIDAllocator.format(ids.nextId());
+        } else {
+            Random random = new Random();
+            generated = DeckIDAllocator.format(random.nextInt(DeckIDAllocator.ID_SPACE)); //generate 9-digit number
+            while (!fallbackIDs.add(generated)) { //check for uniqueness
+                DeckMetrics.ID_RETRIES.increment();
+                generated = DeckIDAllocator.format(random.nextInt(DeckIDAllocator.ID_SPACE));
+            }
+        }
+        DeckMetrics.IDS_ALLOCATED.increment();
+        DeckMetrics.ID_ALLOCATION.recordSince(start);
         return generated;
     }
 
     /**
-     * Saves the generated number to a persistent storage file.
-     *
-     * <p>This method appends the provided number to a file specified by the
-     * {@link #DECK_ID_FILE} constant. Each number is written on a new line
-     * to maintain a clear record of generated IDs.</p>
+     * Generates several unique 9-digit strings at once.
      *
-     * <p>If an {@link IOException} occurs during the file operation, the
-     * exception will be caught and its stack trace printed to the console.</p>
-     *
-     * @param number the generated number to be saved, as a {@code String}
+     * @param count how many IDs to generate
+     * @return the IDs as 9-digit strings
      */
-    private static void saveGeneratedNumber(String number) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(DECK_ID_FILE, true))) {
-            writer.write(number);
-            writer.newLine();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public static String[] generateUniqueNumbers(int count) {
+        DeckIDAllocator ids = allocator();
+        String[] generated = new String[count];
+        if (ids == null) {
+            for (int i = 0; i < count; i++) {
+                generated[i] = generateUniqueNumber();
+            }
+            return generated;
         }
+
+        long start = System.nanoTime();
+        int[] issued = ids.nextIds(count); //one history write for the whole batch
+        for (int i = 0; i < count; i++) {
+            generated[i] = DeckIDAllocator.format(issued[i]);
+        }
+        DeckMetrics.IDS_ALLOCATED.add(count);
+        DeckMetrics.ID_ALLOCATION.recordSince(start);
+        return generated;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,815 @@
+/**
+ * The {@code DeckLedger} class keeps the parsed data of every reported deck,
+ * so old decks can be searched after their reports are written.
+ *
+ * <p>A ledger is a directory with three kinds of files:</p>
+ * <ul>
+ *     <li><strong>{@code decks.log}:</strong> an append-only log with one
+ *     record per deck: its ID, whether it was VOID, its total cost, its
+ *     invalid line count and the name, summed cost and count of every card.
+ *     Writes are not forced to disk per deck, only by {@link #flush()}.</li>
+ *     <li><strong>{@code decks.idx}:</strong> one fixed 32-byte entry per record
+ *     (deck ID, position in the log, total cost, invalid count), so deck
+ *     {@code n} of the ledger is found without reading the log. It is
+ *     memory-mapped for queries.</li>
+ *     <li><strong>{@code seg-*.seg}:</strong> immutable, memory-mapped segments
+ *     of the inverted index from card name to the decks that contain it. Each
+ *     segment covers a range of decks and holds a sorted term table that is
+ *     binary searched, and the sorted deck numbers of each card.</li>
+ * </ul>
+ *
+ * <p>New decks are indexed in memory and written out as a segment every
+ * {@link #SEGMENT_DECKS} decks and on {@link #close()}. When more than
+ * {@link #MAX_SEGMENTS} segments exist they are merged into one. The log and
+ * the entries are the source of truth: decks that were logged but not yet in a
+ * segment when the program stopped are indexed again when the ledger is
+ * opened, and a half-written record at the end is cut off, as are entries at
+ * the end of {@code decks.idx} whose records did not reach the log before a
+ * crash.</p>
+ *
+ * <p>A query such as "decks with Biased Cognition and a total cost of at least
+ * 21" looks the card up in each segment and checks the total of each matching
+ * deck in the mapped entries, so it reads only the decks that hold the card.
+ * Card names are matched exactly. Watch mode logs a deck when it is first
+ * reported, not again on every edit.</p>
+ *
+ * <p>Decks are recorded by {@link SlayTheSpire#generateFile} when
+ * {@code -Ddeck.ledger=<directory>} is set. Usage of the query mode:
+ * {@code --ledger <directory> [--card name]... [--min-total N] [--include-void]
+ * [--limit N] | --show <deck ID> | --stats | --compact}.</p>
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DeckLedger implements AutoCloseable {
+
+    public static final int SEGMENT_DECKS = 65_536;
+    public static final int MAX_SEGMENTS = 8;
+
+    private static final int ENTRY_BYTES = 32; //deck ID, log position, total, invalid count, record length, flags
+    private static final int RECORD_HEADER_BYTES = 24; //deck ID, flags, total, invalid count, card count
+    private static final int FLAG_VALID = 1;
+    private static final int SEGMENT_MAGIC = 0x53444C53; //"SDLS"
+    private static final int FOOTER_BYTES = 12;
+    private static final int TERM_BYTES = 16;
+    private static final long MAX_SEGMENT_BYTES = 1L << 30; //segments are mapped with int offsets
+
+    private static volatile DeckLedger configured;
+    private static volatile boolean configured_loaded = false;
+
+    private final Path directory;
+    private final FileChannel log;
+    private final FileChannel index;
+    private long log_end;
+    private int deck_count;
+    private MappedByteBuffer entries; //read view of decks.idx, remapped when it grows
+    private int mapped_decks = 0;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private int indexed_decks = 0; //decks covered by segments
+    private final Map<String, Postings> pending = new HashMap<>(); //decks [indexed_decks, deck_count)
+
+    /**
+     * A growing sorted list of deck numbers.
+     */
+    private static final class Postings {
+        int[] decks = new int[4];
+        int size = 0;
+
+        void add(int deck) {
+            if (size == decks.length) {
+                decks = Arrays.copyOf(decks, size * 2);
+            }
+            decks[size++] = deck;
+        }
+    }
+
+    /**
+     * One memory-mapped segment of the inverted index, for decks
+     * {@code [start, end)}.
+     *
+     * <p>Layout: the deck numbers of all terms as ints, the term names back to
+     * back, the term table sorted by name (name offset, name length, postings
+     * offset, postings count), and a footer (term count, table offset, magic).</p>
+     */
+    private static final class Segment {
+        final Path file;
+        final int start;
+        final int end;
+        final MappedByteBuffer map;
+        final int term_count;
+        final int table_offset;
+
+        Segment(Path file, int start, int end) throws IOException {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < FOOTER_BYTES || size > MAX_SEGMENT_BYTES) {
+                    throw new IOException(file + " is not a ledger segment");
+                }
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            int footer = map.capacity() - FOOTER_BYTES;
+            term_count = map.getInt(footer);
+            table_offset = map.getInt(footer + 4);
+            if (map.getInt(footer + 8) != SEGMENT_MAGIC) {
+                throw new IOException(file + " is not a ledger segment");
+            }
+        }
+
+        /**
+         * Returns the number of the term, or {@code -1} if the segment does not
+         * hold it.
+         */
+        int find(byte[] name) {
+            int low = 0;
+            int high = term_count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareTerm(mid, name);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compareTerm(int term, byte[] name) {
+            int entry = table_offset + term * TERM_BYTES;
+            int offset = map.getInt(entry);
+            int length = map.getInt(entry + 4);
+            int common = Math.min(length, name.length);
+            for (int i = 0; i < common; i++) {
+                int cmp = (map.get(offset + i) & 0xFF) - (name[i] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return length - name.length;
+        }
+
+        byte[] termName(int term) {
+            int entry = table_offset + term * TERM_BYTES;
+            byte[] name = new byte[map.getInt(entry + 4)];
+            map.get(map.getInt(entry), name);
+            return name;
+        }
+
+        int postingsOffset(int term) {
+            return map.getInt(table_offset + term * TERM_BYTES + 8);
+        }
+
+        int postingsCount(int term) {
+            return map.getInt(table_offset + term * TERM_BYTES + 12);
+        }
+    }
+
+    /**
+     * One deck as read back from the log.
+     */
+    public static final class Record {
+        public final long deck_ID;
+        public final boolean valid;
+        public final int total_cost;
+        public final long invalid_count;
+        public final CardTable cards;
+
+        Record(long deck_ID, boolean valid, int total_cost, long invalid_count, CardTable cards) {
+            this.deck_ID = deck_ID;
+            this.valid = valid;
+            this.total_cost = total_cost;
+            this.invalid_count = invalid_count;
+            this.cards = cards;
+        }
+    }
+
+    /**
+     * Opens the ledger in a directory, creating it if needed. A half-written
+     * last record is removed and decks that are not in a segment yet are
+     * indexed again.
+     *
+     * @param directory the ledger directory
+     * @throws IOException if the files cannot be opened or read
+     */
+    public DeckLedger(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        log = FileChannel.open(directory.resolve("decks.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve("decks.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        deck_count = (int) Math.min(index.size() / ENTRY_BYTES, Integer.MAX_VALUE);
+        log_end = 0;
+        //neither file is forced per deck, so after a crash decks.idx can hold entries whose records never reached decks.log
+        long log_size = log.size();
+        while (deck_count > 0) {
+            long[] last = readEntryBounds(deck_count - 1);
+            long start = deck_count > 1 ? sum(readEntryBounds(deck_count - 2)) : 0;
+            if (last[0] == start && last[1] >= RECORD_HEADER_BYTES && sum(last) <= log_size) {
+                log_end = sum(last);
+                break;
+            }
+            deck_count--; //dropped, like a half-written record
+        }
+        index.truncate((long) deck_count * ENTRY_BYTES);
+        log.truncate(log_end);
+
+        openSegments();
+        for (int deck = indexed_decks; deck < deck_count; deck++) {
+            Record record = read(deck);
+            for (int id = 0; id < record.cards.size(); id++) {
+                addPosting(record.cards.name(id), deck);
+            }
+        }
+    }
+
+    /**
+     * Reads the log position and record length of an entry of {@code decks.idx}.
+     */
+    private long[] readEntryBounds(int deck) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+        index.read(entry, (long) deck * ENTRY_BYTES);
+        return new long[] {entry.getLong(8), entry.getInt(24)};
+    }
+
+    private static long sum(long[] bounds) {
+        return bounds[0] + bounds[1];
+    }
+
+    /**
+     * Returns the ledger named by the {@code deck.ledger} system property,
+     * opening it on the first call. It is closed when the JVM exits.
+     *
+     * @return the ledger, or {@code null} if none is configured or it cannot be opened
+     */
+    public static DeckLedger fromProperty() {
+        if (!configured_loaded) {
+            synchronized (DeckLedger.class) {
+                if (!configured_loaded) {
+                    String dir = System.getProperty("deck.ledger");
+                    if (dir != null) {
+                        try {
+                            DeckLedger ledger = new DeckLedger(Paths.get(dir));
+                            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(ledger)));
+                            configured = ledger;
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    configured_loaded = true;
+                }
+            }
+        }
+        return configured;
+    }
+
+    private static void closeQuietly(DeckLedger ledger) {
+        try {
+            ledger.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds the segment files and keeps the ones that cover decks
+     * {@code [0, n)} without gaps, preferring the widest; others are left-overs
+     * of an interrupted merge and are deleted.
+     */
+    private void openSegments() throws IOException {
+        List<int[]> ranges = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "seg-*")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".seg.tmp")) {
+                    Files.delete(file); //a segment that was never finished
+                    continue;
+                }
+                int[] range = segmentRange(name);
+                if (range != null) {
+                    ranges.add(range);
+                } //other files are not ours and are left alone
+            }
+        }
+        ranges.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(b[1], a[1]));
+        for (int[] range : ranges) {
+            Path file = segmentPath(range[0], range[1]);
+            if (range[0] == indexed_decks && range[1] <= deck_count) {
+                segments.add(new Segment(file, range[0], range[1]));
+                indexed_decks = range[1];
+            } else {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the deck range of a segment file name, or {@code null} if the
+     * name is not one {@link #segmentPath} makes.
+     */
+    private static int[] segmentRange(String name) {
+        if (!name.startsWith("seg-") || !name.endsWith(".seg")) {
+            return null;
+        }
+        String[] bounds = name.substring(4, name.length() - 4).split("-");
+        if (bounds.length != 2) {
+            return null;
+        }
+        try {
+            int start = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]);
+            if (start < 0 || end <= start || !name.equals(String.format("seg-%010d-%010d.seg", start, end))) {
+                return null;
+            }
+            return new int[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Path segmentPath(int start, int end) {
+        return directory.resolve(String.format("seg-%010d-%010d.seg", start, end));
+    }
+
+    /**
+     * Appends a deck to the ledger.
+     *
+     * @param deck_ID the ID of the deck
+     * @param valid {@code false} if the deck was VOID
+     * @param tally the parsed deck
+     * @throws IOException if the deck cannot be written
+     */
+    public synchronized void record(String deck_ID, boolean valid, DeckTally tally) throws IOException {
+        CardTable cards = tally.cardDeck;
+        long id_value = Long.parseLong(deck_ID);
+        int flags = valid ? FLAG_VALID : 0;
+        int invalid_count = (int) Math.min(tally.getInvalidCount(), Integer.MAX_VALUE);
+        int length = RECORD_HEADER_BYTES;
+        byte[][] names = new byte[cards.size()][];
+        for (int id = 0; id < cards.size(); id++) {
+            names[id] = cards.name(id).getBytes(StandardCharsets.UTF_8);
+            length += 4 + names[id].length + 8;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putLong(id_value).putInt(flags).putInt(cards.totalCost()).putInt(invalid_count).putInt(cards.size());
+        for (int id = 0; id < cards.size(); id++) {
+            record.putInt(names[id].length).put(names[id]).putInt(cards.cost(id)).putInt(cards.count(id));
+        }
+        record.flip();
+        while (record.hasRemaining()) {
+            log.write(record, log_end + record.position());
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+        entry.putLong(id_value).putLong(log_end).putInt(cards.totalCost()).putInt(invalid_count)
+                .putInt(length).putInt(flags).flip();
+        while (entry.hasRemaining()) {
+            index.write(entry, (long) deck_count * ENTRY_BYTES + entry.position()); //after the log, so an entry always has its record
+        }
+        log_end += length;
+
+        int deck = deck_count++;
+        for (int id = 0; id < cards.size(); id++) {
+            addPosting(cards.name(id), deck);
+        }
+        if (deck_count - indexed_decks >= SEGMENT_DECKS) {
+            flush();
+        }
+    }
+
+    private void addPosting(String name, int deck) {
+        pending.computeIfAbsent(name, key -> new Postings()).add(deck);
+    }
+
+    /**
+     * Writes the decks that are only indexed in memory into a new segment,
+     * merges the segments if there are too many, and forces everything to disk.
+     *
+     * @throws IOException if a file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (deck_count > indexed_decks) {
+            List<byte[]> terms = new ArrayList<>(pending.size());
+            for (String term : pending.keySet()) {
+                terms.add(term.getBytes(StandardCharsets.UTF_8));
+            }
+            terms.sort(Arrays::compareUnsigned);
+
+            Path file = segmentPath(indexed_decks, deck_count);
+            writeSegment(file, terms, (term, out) -> {
+                Postings postings = pending.get(new String(term, StandardCharsets.UTF_8));
+                for (int i = 0; i < postings.size; i++) {
+                    out.writeInt(postings.decks[i]);
+                }
+                return postings.size;
+            });
+            log.force(false);
+            index.force(false);
+            segments.add(new Segment(file, indexed_decks, deck_count));
+            indexed_decks = deck_count;
+            pending.clear();
+        }
+        if (segments.size() > MAX_SEGMENTS) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes the postings of one term and returns how many it wrote.
+     */
+    private interface PostingsWriter {
+        int write(byte[] term, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a segment with the given sorted terms to a temporary file and
+     * moves it into place.
+     */
+    private void writeSegment(Path file, List<byte[]> terms, PostingsWriter postings) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] offsets = new int[terms.size()];
+        int[] counts = new int[terms.size()];
+        try (OutputStream raw = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw, 64 * 1024))) {
+            for (int t = 0; t < terms.size(); t++) {
+                offsets[t] = out.size();
+                counts[t] = postings.write(terms.get(t), out);
+            }
+            int[] name_offsets = new int[terms.size()];
+            for (int t = 0; t < terms.size(); t++) {
+                name_offsets[t] = out.size();
+                out.write(terms.get(t));
+            }
+            int table_offset = out.size();
+            for (int t = 0; t < terms.size(); t++) {
+                out.writeInt(name_offsets[t]);
+                out.writeInt(terms.get(t).length);
+                out.writeInt(offsets[t]);
+                out.writeInt(counts[t]);
+            }
+            out.writeInt(terms.size());
+            out.writeInt(table_offset);
+            out.writeInt(SEGMENT_MAGIC);
+            out.flush();
+            if (out.size() < 0 || out.size() > MAX_SEGMENT_BYTES) { //size() sticks at Integer.MAX_VALUE
+                throw new IOException("segment " + file + " is too large");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Merges all segments into one. The old segments are deleted only after
+     * the merged one is in place; a merge that would not fit in one segment is
+     * skipped.
+     *
+     * @throws IOException if the merged segment cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        if (segments.size() < 2) {
+            return;
+        }
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.map.capacity();
+        }
+        if (bytes > MAX_SEGMENT_BYTES) {
+            return;
+        }
+
+        List<byte[]> terms = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (int t = 0; t < segment.term_count; t++) {
+                terms.add(segment.termName(t));
+            }
+        }
+        terms.sort(Arrays::compareUnsigned);
+        List<byte[]> unique = new ArrayList<>();
+        for (byte[] term : terms) {
+            if (unique.isEmpty() || !Arrays.equals(unique.get(unique.size() - 1), term)) {
+                unique.add(term);
+            }
+        }
+
+        List<Segment> old = new ArrayList<>(segments);
+        int end = old.get(old.size() - 1).end;
+        Path file = segmentPath(0, end);
+        writeSegment(file, unique, (term, out) -> {
+            int written = 0;
+            for (Segment segment : old) { //segments are in deck order, so the result stays sorted
+                int t = segment.find(term);
+                if (t < 0) {
+                    continue;
+                }
+                int offset = segment.postingsOffset(t);
+                int count = segment.postingsCount(t);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(segment.map.getInt(offset + i * 4));
+                }
+                written += count;
+            }
+            return written;
+        });
+        segments.clear();
+        segments.add(new Segment(file, 0, end));
+        for (Segment segment : old) {
+            Files.deleteIfExists(segment.file);
+        }
+    }
+
+    /**
+     * Returns the IDs of the decks that hold every given card and have at
+     * least the given total cost, in the order they were recorded.
+     *
+     * @param cards the card names, matched exactly; empty to match every deck
+     * @param min_total the smallest total cost to return
+     * @param include_void whether VOID decks are returned
+     * @param limit the most IDs to return
+     * @return the deck IDs as 9-digit strings
+     */
+    public synchronized List<String> query(List<String> cards, long min_total, boolean include_void, int limit) {
+        int[] matches = null;
+        for (String card : cards) {
+            int[] decks = postings(card);
+            matches = matches == null ? decks : intersect(matches, decks);
+            if (matches.length == 0) {
+                break;
+            }
+        }
+
+        mapEntries();
+        List<String> result = new ArrayList<>();
+        int candidates = matches == null ? deck_count : matches.length;
+        for (int i = 0; i < candidates && result.size() < limit; i++) {
+            int deck = matches == null ? i : matches[i];
+            int entry = deck * ENTRY_BYTES;
+            if (entries.getInt(entry + 16) >= min_total
+                    && (include_void || (entries.getInt(entry + 28) & FLAG_VALID) != 0)) {
+                result.add(DeckIDAllocator.format((int) entries.getLong(entry)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted numbers of the decks that hold a card.
+     */
+    private int[] postings(String card) {
+        byte[] name = card.getBytes(StandardCharsets.UTF_8);
+        int total = 0;
+        int[] terms = new int[segments.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            terms[s] = segments.get(s).find(name);
+            if (terms[s] >= 0) {
+                total += segments.get(s).postingsCount(terms[s]);
+            }
+        }
+        Postings in_memory = pending.get(card);
+        if (in_memory != null) {
+            total += in_memory.size;
+        }
+
+        int[] decks = new int[total];
+        int n = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            if (terms[s] < 0) {
+                continue;
+            }
+            Segment segment = segments.get(s);
+            int offset = segment.postingsOffset(terms[s]);
+            int count = segment.postingsCount(terms[s]);
+            for (int i = 0; i < count; i++) {
+                decks[n++] = segment.map.getInt(offset + i * 4);
+            }
+        }
+        if (in_memory != null) {
+            System.arraycopy(in_memory.decks, 0, decks, n, in_memory.size);
+        }
+        return decks;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, n);
+    }
+
+    /**
+     * Maps {@code decks.idx} again if decks were added since the last map.
+     */
+    private void mapEntries() {
+        if (entries == null || mapped_decks != deck_count) {
+            try {
+                entries = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) deck_count * ENTRY_BYTES);
+                mapped_decks = deck_count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads one deck back from the log.
+     *
+     * @param deck the number of the deck in the ledger, from 0
+     * @return the deck
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized Record read(int deck) throws IOException {
+        if (deck < 0 || deck >= deck_count) {
+            throw new IndexOutOfBoundsException("deck " + deck + " of " + deck_count);
+        }
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+        index.read(entry, (long) deck * ENTRY_BYTES);
+        ByteBuffer record = ByteBuffer.allocate(entry.getInt(24));
+        while (record.hasRemaining()) {
+            if (log.read(record, entry.getLong(8) + record.position()) < 0) {
+                throw new IOException("decks.log ends inside deck " + deck);
+            }
+        }
+        record.flip();
+
+        long deck_ID = record.getLong();
+        int flags = record.getInt();
+        int total_cost = record.getInt();
+        int invalid_count = record.getInt();
+        CardTable cards = new CardTable(StandardCharsets.UTF_8);
+        int card_count = record.getInt();
+        for (int c = 0; c < card_count; c++) {
+            byte[] name = new byte[record.getInt()];
+            record.get(name);
+            cards.add(new String(name, StandardCharsets.UTF_8), record.getInt(), record.getInt());
+        }
+        return new Record(deck_ID, (flags & FLAG_VALID) != 0, total_cost, invalid_count, cards);
+    }
+
+    /**
+     * Returns the number of the last recorded version of a deck.
+     *
+     * @param deck_ID the ID of the deck
+     * @return the deck number, or {@code -1} if the deck is not in the ledger
+     */
+    public synchronized int findDeck(String deck_ID) {
+        long id = Long.parseLong(deck_ID);
+        mapEntries();
+        for (int deck = deck_count - 1; deck >= 0; deck--) {
+            if (entries.getLong(deck * ENTRY_BYTES) == id) {
+                return deck;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of recorded decks.
+     *
+     * @return the deck count
+     */
+    public synchronized int size() {
+        return deck_count;
+    }
+
+    /**
+     * Returns the number of index segments on disk.
+     *
+     * @return the segment count
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Writes out the in-memory index and closes the files.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!log.isOpen()) {
+            return;
+        }
+        flush();
+        log.close();
+        index.close();
+    }
+
+    /**
+     * Entry point of the query mode.
+     *
+     * @param args {@code [--ledger] <directory> [--card name]... [--min-total N]
+     *             [--include-void] [--limit N] | --show <deck ID> | --stats | --compact}
+     */
+    public static void main(String[] args) {
+        String dir = null;
+        List<String> cards = new ArrayList<>();
+        long min_total = Long.MIN_VALUE;
+        boolean include_void = false;
+        int limit = Integer.MAX_VALUE;
+        String show = null;
+        boolean stats = false;
+        boolean compact = false;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--ledger")) {
+                continue;
+            } else if (args[i].equals("--card") && i + 1 < args.length) {
+                cards.add(args[++i]);
+            } else if (args[i].equals("--min-total") && i + 1 < args.length) {
+                min_total = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--include-void")) {
+                include_void = true;
+            } else if (args[i].equals("--limit") && i + 1 < args.length) {
+                limit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--show") && i + 1 < args.length) {
+                show = args[++i];
+            } else if (args[i].equals("--stats")) {
+                stats = true;
+            } else if (args[i].equals("--compact")) {
+                compact = true;
+            } else {
+                dir = args[i];
+            }
+        }
+
+        if (dir == null) {
+            System.out.println("Usage: --ledger <directory> [--card name]... [--min-total N] [--include-void] [--limit N]"
+                    + " | --show <deck ID> | --stats | --compact");
+            return;
+        }
+
+        try (DeckLedger ledger = new DeckLedger(Paths.get(dir))) {
+            long start = System.nanoTime();
+            if (compact) {
+                ledger.compact();
+                System.out.println("Compacted into " + ledger.getSegmentCount() + " segment(s)");
+            } else if (stats) {
+                System.out.println("Decks:    " + ledger.size());
+                System.out.println("Segments: " + ledger.getSegmentCount());
+            } else if (show != null) {
+                int deck = ledger.findDeck(show);
+                if (deck < 0) {
+                    System.out.println("Deck " + show + " is not in the ledger");
+                    return;
+                }
+                Record record = ledger.read(deck);
+                System.out.println("Deck " + DeckIDAllocator.format((int) record.deck_ID) + (record.valid ? "" : " (VOID)")
+                        + ": total cost " + record.total_cost + ", " + record.invalid_count + " invalid line(s)");
+                for (int id = 0; id < record.cards.size(); id++) {
+                    System.out.println("  " + record.cards.name(id) + ": cost " + record.cards.cost(id)
+                            + ", count " + record.cards.count(id));
+                }
+            } else {
+                List<String> ids = ledger.query(cards, min_total, include_void, limit);
+                for (String id : ids) {
+                    System.out.println(id);
+                }
+                System.out.printf("%d deck(s) in %.3f ms%n", ids.size(), (System.nanoTime() - start) / 1e6);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
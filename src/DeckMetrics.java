@@ -0,0 +1,352 @@
+/**
+ * The {@code DeckMetrics} class collects counters and latency histograms for
+ * every stage of the deck pipeline, from {@code readTxtFile} through
+ * {@code generateFile} to the {@link ReportWriter}s.
+ *
+ * <p>All counters are {@link LongAdder}s, which stripe their value over
+ * several cells, so threads that record at the same time do not contend on
+ * one memory location. The parser counts lines and invalid lines in plain
+ * fields and adds them here once per deck, not once per line.</p>
+ *
+ * <p>A snapshot can be written as Prometheus text format or as JSON (chosen
+ * by the file extension, {@code .json} for JSON) for a local scraper. Setting
+ * the {@code deck.metrics.file} system property makes {@link SlayTheSpire}
+ * write the snapshot every few seconds and once more on exit.</p>
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DeckMetrics {
+
+    /**
+     * A latency histogram with fixed buckets, in the Prometheus style.
+     */
+    public static final class Latency {
+        //upper bounds in seconds
+        private static final double[] BOUNDS = {
+            0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025,
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+        };
+        private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+        static {
+            for (int i = 0; i < BOUNDS.length; i++) {
+                BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1_000_000_000L);
+            }
+        }
+
+        final String name;
+        final String help;
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1]; //last one is +Inf
+        private final LongAdder sum_nanos = new LongAdder();
+
+        Latency(String name, String help) {
+            this.name = name;
+            this.help = help;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            int bucket = 0;
+            while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sum_nanos.add(nanos);
+        }
+
+        /**
+         * Records the time since {@code start_nanos}.
+         *
+         * @param start_nanos a value of {@link System#nanoTime()}
+         */
+        public void recordSince(long start_nanos) {
+            record(System.nanoTime() - start_nanos);
+        }
+
+        /**
+         * Returns how many durations were recorded.
+         *
+         * @return the count
+         */
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A monotonically increasing counter.
+     */
+    public static final class Counter {
+        final String name;
+        final String help;
+        final String label; //optional "key=\"value\"" label
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help, String label) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+        }
+
+        /**
+         * Adds one.
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Adds {@code amount}.
+         *
+         * @param amount the amount to add
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Returns the current value.
+         *
+         * @return the sum of all adds
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final Latency PARSE = new Latency("deck_parse_seconds", "Time to read and parse one deck file");
+    public static final Latency ID_ALLOCATION = new Latency("deck_id_allocation_seconds", "Time to allocate one deck ID");
+    public static final Latency RENDER = new Latency("deck_render_seconds", "Time to render one report file");
+    public static final Latency GENERATE = new Latency("deck_generate_file_seconds", "Time of generateFile, ID allocation plus render");
+
+    public static final Counter DECKS_PARSED = new Counter("deck_parsed_total", "Deck files parsed", null);
+    public static final Counter DECKS_VOID = new Counter("deck_void_total", "Deck files that produced a VOID report", null);
+    public static final Counter LINES_READ = new Counter("deck_lines_read_total", "Lines read from deck files", null);
+    public static final Counter INVALID_BLANK = new Counter("deck_invalid_lines_total", "Invalid lines by reason", "reason=\"blank\"");
+    public static final Counter INVALID_NO_SEPARATOR = new Counter("deck_invalid_lines_total", "Invalid lines by reason", "reason=\"no_separator\"");
+    public static final Counter INVALID_OUT_OF_RANGE = new Counter("deck_invalid_lines_total", "Invalid lines by reason", "reason=\"out_of_range\"");
+    public static final Counter SKIPPED_MALFORMED = new Counter("deck_skipped_lines_total", "Lines with ':' that were not a name and an integer", null);
+    public static final Counter PARSE_ERRORS = new Counter("deck_parse_errors_total", "Deck files that could not be read", null);
+    public static final Counter IDS_ALLOCATED = new Counter("deck_ids_allocated_total", "Deck IDs handed out", null);
+    public static final Counter ID_RETRIES = new Counter("deck_id_retries_total", "Taken IDs skipped while searching for free ones", null);
+    public static final Counter ID_BLOCKS = new Counter("deck_id_blocks_reserved_total", "ID blocks reserved from the bitmap", null);
+    public static final Counter REPORTS_RENDERED = new Counter("deck_reports_rendered_total", "Report files rendered", null);
+    public static final Counter RENDER_ERRORS = new Counter("deck_render_errors_total", "Report files that failed", null);
+    public static final Counter BYTES_WRITTEN = new Counter("deck_report_bytes_written_total", "Bytes of report files written", null);
+    public static final Counter CATALOG_UNKNOWN = new Counter("deck_catalog_warnings_total", "Accepted cards the card catalog disagrees with", "reason=\"unknown_card\"");
+    public static final Counter CATALOG_COST_MISMATCH = new Counter("deck_catalog_warnings_total", "Accepted cards the card catalog disagrees with", "reason=\"cost_mismatch\"");
+    public static final Counter SPILL_RUNS = new Counter("deck_spill_runs_total", "Sorted runs spilled to disk by large decks", null);
+
+    private static final Latency[] LATENCIES = {PARSE, ID_ALLOCATION, RENDER, GENERATE};
+    private static final Counter[] COUNTERS = {
+        DECKS_PARSED, DECKS_VOID, LINES_READ, INVALID_BLANK, INVALID_NO_SEPARATOR, INVALID_OUT_OF_RANGE,
+        SKIPPED_MALFORMED, CATALOG_UNKNOWN, CATALOG_COST_MISMATCH, PARSE_ERRORS, IDS_ALLOCATED, ID_RETRIES, ID_BLOCKS, REPORTS_RENDERED,
+        RENDER_ERRORS, BYTES_WRITTEN, SPILL_RUNS
+    };
+
+    private static ScheduledExecutorService exporter;
+
+    private DeckMetrics() {
+    }
+
+    /**
+     * Adds the per-deck counts of a finished parse.
+     *
+     * @param tokenizer the tokenizer that read the deck
+     * @param valid whether the deck produced a report rather than a VOID file
+     * @param nanos how long the parse took
+     */
+    public static void recordParse(DeckTokenizer tokenizer, boolean valid, long nanos) {
+        recordParse(valid, nanos, tokenizer.getLineCount(), tokenizer.getBlankCount(),
+                tokenizer.getNoSeparatorCount(), tokenizer.getOutOfRangeCount(), tokenizer.getSkippedCount(),
+                tokenizer.getUnknownCardCount(), tokenizer.getCostMismatchCount());
+    }
+
+    /**
+     * Adds the per-deck counts of a finished parallel parse.
+     *
+     * @param parser the parser that read the deck
+     * @param valid whether the deck produced a report rather than a VOID file
+     * @param nanos how long the parse took
+     */
+    public static void recordParse(ParallelDeckParser parser, boolean valid, long nanos) {
+        recordParse(valid, nanos, parser.getLineCount(), parser.getBlankCount(),
+                parser.getNoSeparatorCount(), parser.getOutOfRangeCount(), parser.getSkippedCount(),
+                parser.getUnknownCardCount(), parser.getCostMismatchCount());
+    }
+
+    private static void recordParse(boolean valid, long nanos, long lines, long blank, long no_separator,
+                                    long out_of_range, long skipped, long unknown_cards, long cost_mismatches) {
+        PARSE.record(nanos);
+        DECKS_PARSED.increment();
+        if (!valid) {
+            DECKS_VOID.increment();
+        }
+        LINES_READ.add(lines);
+        INVALID_BLANK.add(blank);
+        INVALID_NO_SEPARATOR.add(no_separator);
+        INVALID_OUT_OF_RANGE.add(out_of_range);
+        SKIPPED_MALFORMED.add(skipped);
+        CATALOG_UNKNOWN.add(unknown_cards);
+        CATALOG_COST_MISMATCH.add(cost_mismatches);
+    }
+
+    /**
+     * Adds a report file that was just written.
+     *
+     * @param file_path the report file
+     * @param start_nanos a value of {@link System#nanoTime()} from before the report was rendered
+     */
+    public static void recordRender(String file_path, long start_nanos) {
+        RENDER.recordSince(start_nanos);
+        REPORTS_RENDERED.increment();
+        BYTES_WRITTEN.add(new File(file_path).length());
+    }
+
+    /**
+     * Adds a report that was streamed somewhere other than a file.
+     *
+     * @param bytes_written the size of the report
+     * @param start_nanos a value of {@link System#nanoTime()} from before the report was rendered
+     */
+    public static void recordRender(long bytes_written, long start_nanos) {
+        RENDER.recordSince(start_nanos);
+        REPORTS_RENDERED.increment();
+        BYTES_WRITTEN.add(bytes_written);
+    }
+
+    /**
+     * Returns a snapshot in the Prometheus text exposition format.
+     *
+     * @return the metrics as text
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        String last_name = null;
+        for (Counter counter : COUNTERS) {
+            if (!counter.name.equals(last_name)) {
+                out.append("# HELP ").append(counter.name).append(' ').append(counter.help).append('\n');
+                out.append("# TYPE ").append(counter.name).append(" counter\n");
+                last_name = counter.name;
+            }
+            out.append(counter.name);
+            if (counter.label != null) {
+                out.append('{').append(counter.label).append('}');
+            }
+            out.append(' ').append(counter.get()).append('\n');
+        }
+
+        for (Latency latency : LATENCIES) {
+            out.append("# HELP ").append(latency.name).append(' ').append(latency.help).append('\n');
+            out.append("# TYPE ").append(latency.name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < latency.buckets.length; i++) {
+                cumulative += latency.buckets[i].sum();
+                String le = i < Latency.BOUNDS.length ? formatSeconds(Latency.BOUNDS[i]) : "+Inf";
+                out.append(latency.name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(latency.name).append("_sum ").append(formatSeconds(latency.sum_nanos.sum() / 1e9)).append('\n');
+            out.append(latency.name).append("_count ").append(cumulative).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns a snapshot as a JSON object.
+     *
+     * @return the metrics as JSON
+     */
+    public static String toJson() {
+        StringBuilder out = new StringBuilder("{\n  \"counters\": {");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            Counter counter = COUNTERS[i];
+            String key = counter.label == null ? counter.name
+                    : counter.name + "{" + counter.label.replace("\"", "\\\"") + "}";
+            out.append(i == 0 ? "\n" : ",\n").append("    \"").append(key).append("\": ").append(counter.get());
+        }
+        out.append("\n  },\n  \"latencies\": {");
+        for (int i = 0; i < LATENCIES.length; i++) {
+            Latency latency = LATENCIES[i];
+            out.append(i == 0 ? "\n" : ",\n").append("    \"").append(latency.name).append("\": {\"count\": ")
+                    .append(latency.count()).append(", \"sum\": ").append(formatSeconds(latency.sum_nanos.sum() / 1e9))
+                    .append(", \"buckets\": [");
+            for (int b = 0; b < latency.buckets.length; b++) {
+                String le = b < Latency.BOUNDS.length ? formatSeconds(Latency.BOUNDS[b]) : "\"+Inf\"";
+                out.append(b == 0 ? "" : ", ").append("[").append(le).append(", ").append(latency.buckets[b].sum()).append("]");
+            }
+            out.append("]}");
+        }
+        out.append("\n  }\n}\n");
+        return out.toString();
+    }
+
+    /**
+     * Writes a snapshot to a file, replacing it atomically so a scraper never
+     * reads half a file. A {@code .json} file gets JSON, anything else the
+     * Prometheus text format.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeSnapshot(Path file) throws IOException {
+        String snapshot = file.toString().endsWith(".json") ? toJson() : toPrometheus();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, snapshot.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a snapshot every {@code period_seconds} and once more when the
+     * JVM exits, if the {@code deck.metrics.file} system property is set.
+     *
+     * @param period_seconds the time between snapshots
+     */
+    public static synchronized void startExporterFromProperty(long period_seconds) {
+        String file = System.getProperty("deck.metrics.file");
+        if (file == null || exporter != null) {
+            return;
+        }
+        Path path = Paths.get(file);
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "deck-metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleAtFixedRate(() -> writeQuietly(path), period_seconds, period_seconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writeQuietly(path)));
+    }
+
+    private static void writeQuietly(Path path) {
+        try {
+            writeSnapshot(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String formatSeconds(double seconds) {
+        return Double.toString(seconds);
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * The {@code DeckPipeline} class tallies a batch of deck files in three
+ * stages that run at the same time:
+ *
+ * <ol>
+ *     <li><strong>parse:</strong> a pool of parser threads reads each deck into
+ *     its own {@link DeckTally};</li>
+ *     <li><strong>id:</strong> one thread hands out deck IDs, a batch of decks at
+ *     a time, so the ID file is appended once per batch instead of once per
+ *     deck;</li>
+ *     <li><strong>render:</strong> a pool of renderer threads writes the
+ *     reports through {@link SlayTheSpire#generateFile(boolean, String, DeckTally, String)}.</li>
+ * </ol>
+ *
+ * <p>The stages are connected by bounded queues. When the renderers fall
+ * behind, the queues fill up and the parsers block on {@code put}, so no more
+ * than about two queues of parsed decks are held in memory whatever the size of
+ * the batch. At the end of a run {@link #printUtilization(long)} shows, for
+ * every stage, how much of its time was spent working, waiting for input and
+ * blocked on a full queue.</p>
+ */
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DeckPipeline {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final int DEFAULT_ID_BATCH = 64;
+
+    /**
+     * A parsed deck on its way through the stages.
+     */
+    private static final class ParsedDeck {
+        static final ParsedDeck POISON = new ParsedDeck(null, null, false); //tells the next stage to stop
+
+        final Path deck_file;
+        final DeckTally tally;
+        final boolean valid;
+        String deck_ID;
+
+        ParsedDeck(Path deck_file, DeckTally tally, boolean valid) {
+            this.deck_file = deck_file;
+            this.tally = tally;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * The time counters of one stage, summed over its threads.
+     */
+    private static final class Stage {
+        final String name;
+        final int threads;
+        final LongAdder items = new LongAdder();
+        final LongAdder busy_nanos = new LongAdder();
+        final LongAdder take_wait_nanos = new LongAdder(); //idle, waiting for the previous stage
+        final LongAdder put_wait_nanos = new LongAdder(); //blocked, waiting for the next stage
+
+        Stage(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+        }
+
+        ParsedDeck take(BlockingQueue<ParsedDeck> queue) throws InterruptedException {
+            long start = System.nanoTime();
+            ParsedDeck deck = queue.take();
+            take_wait_nanos.add(System.nanoTime() - start);
+            return deck;
+        }
+
+        void put(BlockingQueue<ParsedDeck> queue, ParsedDeck deck) throws InterruptedException {
+            long start = System.nanoTime();
+            queue.put(deck);
+            put_wait_nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private final int parsers;
+    private final int renderers;
+    private final int queue_capacity;
+    private final int id_batch;
+
+    private final Stage parse_stage;
+    private final Stage id_stage;
+    private final Stage render_stage;
+
+    private final AtomicInteger reports = new AtomicInteger();
+    private final AtomicInteger voids = new AtomicInteger();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates a pipeline with the given parallelism per stage.
+     *
+     * @param parsers the number of parser threads, at least 1
+     * @param renderers the number of renderer threads, at least 1
+     * @param queue_capacity the size of each queue between two stages, at least 1
+     * @param id_batch the most decks numbered with one ID allocation, at least 1
+     */
+    public DeckPipeline(int parsers, int renderers, int queue_capacity, int id_batch) {
+        if (parsers < 1 || renderers < 1) {
+            throw new IllegalArgumentException("parsers and renderers must be at least 1");
+        }
+        if (queue_capacity < 1 || id_batch < 1) {
+            throw new IllegalArgumentException("queue_capacity and id_batch must be at least 1");
+        }
+        this.parsers = parsers;
+        this.renderers = renderers;
+        this.queue_capacity = queue_capacity;
+        this.id_batch = id_batch;
+        this.parse_stage = new Stage("parse", parsers);
+        this.id_stage = new Stage("id", 1);
+        this.render_stage = new Stage("render", renderers);
+    }
+
+    /**
+     * Runs every deck file through the three stages and waits for all of them.
+     *
+     * @param deck_files the deck files to process
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void run(List<Path> deck_files) throws InterruptedException {
+        BlockingQueue<ParsedDeck> parsed = new ArrayBlockingQueue<>(queue_capacity);
+        BlockingQueue<ParsedDeck> numbered = new ArrayBlockingQueue<>(queue_capacity);
+        AtomicInteger next_file = new AtomicInteger();
+        AtomicInteger parsers_left = new AtomicInteger(parsers);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < parsers; i++) {
+            threads.add(new Thread(() -> parseLoop(deck_files, next_file, parsers_left, parsed), "deck-parse-" + i));
+        }
+        threads.add(new Thread(() -> idLoop(parsed, numbered), "deck-id"));
+        for (int i = 0; i < renderers; i++) {
+            threads.add(new Thread(() -> renderLoop(numbered), "deck-render-" + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses deck files until none are left; the last parser to finish tells
+     * the ID stage to stop.
+     */
+    private void parseLoop(List<Path> deck_files, AtomicInteger next_file, AtomicInteger parsers_left,
+                           BlockingQueue<ParsedDeck> parsed) {
+        try {
+            int index;
+            while ((index = next_file.getAndIncrement()) < deck_files.size()) {
+                Path deck_file = deck_files.get(index);
+                long start = System.nanoTime();
+                ParsedDeck deck = null;
+                try {
+                    DeckTally tally = new DeckTally();
+                    boolean valid = SlayTheSpire.readTxtFile(deck_file.toString(), tally);
+                    deck = new ParsedDeck(deck_file, tally, valid);
+                } catch (RuntimeException e) {
+                    failures.add(deck_file + " (" + e + ")");
+                }
+                parse_stage.busy_nanos.add(System.nanoTime() - start);
+                if (deck != null) {
+                    parse_stage.items.increment();
+                    parse_stage.put(parsed, deck);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (parsers_left.decrementAndGet() == 0) {
+                putPoison(parsed, 1);
+            }
+        }
+    }
+
+    /**
+     * Numbers the parsed decks, taking whatever is queued (up to
+     * {@code id_batch}) and allocating all of its IDs in one call.
+     */
+    private void idLoop(BlockingQueue<ParsedDeck> parsed, BlockingQueue<ParsedDeck> numbered) {
+        List<ParsedDeck> batch = new ArrayList<>(id_batch);
+        try {
+            boolean done = false;
+            while (!done) {
+                batch.clear();
+                batch.add(id_stage.take(parsed));
+                parsed.drainTo(batch, id_batch - 1);
+                long start = System.nanoTime();
+                int last = batch.size() - 1;
+                if (batch.get(last) == ParsedDeck.POISON) { //only the last parser sends it, so nothing follows
+                    batch.remove(last);
+                    done = true;
+                }
+                String[] ids;
+                try {
+                    ids = DeckIDGenerator.generateUniqueNumbers(batch.size());
+                } catch (RuntimeException e) { //the history could not be locked or is full
+                    for (ParsedDeck deck : batch) {
+                        failures.add(deck.deck_file + " (" + e + ")");
+                    }
+                    id_stage.busy_nanos.add(System.nanoTime() - start);
+                    continue; //keep draining, or the parsers block on a full queue
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    batch.get(i).deck_ID = ids[i];
+                }
+                id_stage.busy_nanos.add(System.nanoTime() - start);
+                id_stage.items.add(batch.size());
+                for (ParsedDeck deck : batch) {
+                    id_stage.put(numbered, deck);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            putPoison(numbered, renderers);
+        }
+    }
+
+    /**
+     * Writes the reports of numbered decks until told to stop.
+     */
+    private void renderLoop(BlockingQueue<ParsedDeck> numbered) {
+        try {
+            ParsedDeck deck;
+            while ((deck = render_stage.take(numbered)) != ParsedDeck.POISON) {
+                long start = System.nanoTime();
+                try {
+                    Path parent = deck.deck_file.toAbsolutePath().getParent();
+                    String report_path = SlayTheSpire.generateFile(deck.valid, parent.toString(), deck.tally, deck.deck_ID);
+                    if (!new File(report_path).isFile()) { //report writers print their own errors
+                        failures.add(deck.deck_file + " (no report written)");
+                    } else if (deck.valid) {
+                        reports.incrementAndGet();
+                    } else {
+                        voids.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    failures.add(deck.deck_file + " (" + e + ")");
+                }
+                render_stage.busy_nanos.add(System.nanoTime() - start);
+                render_stage.items.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts stop markers into a queue, even if this thread was interrupted, so
+     * the next stage never waits forever.
+     */
+    private static void putPoison(BlockingQueue<ParsedDeck> queue, int count) {
+        boolean interrupted = Thread.interrupted();
+        for (int i = 0; i < count; i++) {
+            while (true) {
+                try {
+                    queue.put(ParsedDeck.POISON);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints the number of processed decks, the throughput and the failures.
+     *
+     * @param deck_count the number of deck files in the run
+     * @param elapsed_nanos the wall-clock time of the run in nanoseconds
+     */
+    public void printSummary(int deck_count, long elapsed_nanos) {
+        double seconds = elapsed_nanos / 1_000_000_000.0;
+        System.out.println("======================================");
+        System.out.println("PIPELINE SUMMARY");
+        System.out.println("======================================");
+        System.out.println("Decks:    " + deck_count);
+        System.out.println("Reports:  " + reports.get());
+        System.out.println("VOID:     " + voids.get());
+        System.out.println("Failures: " + failures.size());
+        System.out.printf("Elapsed:  %.3f s (%d parsers, %d renderers, queues of %d, ID batches of %d)%n",
+                seconds, parsers, renderers, queue_capacity, id_batch);
+        System.out.printf("Rate:     %.1f decks/s%n", seconds > 0 ? deck_count / seconds : 0.0);
+        synchronized (failures) {
+            for (String failure : failures) {
+                System.out.println("  FAILED " + failure);
+            }
+        }
+        printUtilization(elapsed_nanos);
+    }
+
+    /**
+     * Prints, per stage, the share of its thread time spent working, waiting
+     * for input from the previous stage and blocked on the queue to the next
+     * one. The stage with the highest busy share is the bottleneck.
+     *
+     * @param elapsed_nanos the wall-clock time of the run in nanoseconds
+     */
+    public void printUtilization(long elapsed_nanos) {
+        System.out.println("Stage    Threads    Items   Busy%   Idle%  Blocked%");
+        for (Stage stage : new Stage[] {parse_stage, id_stage, render_stage}) {
+            double thread_nanos = (double) elapsed_nanos * stage.threads;
+            System.out.printf("%-8s %7d %8d %6.1f%% %6.1f%% %8.1f%%%n", stage.name, stage.threads, stage.items.sum(),
+                    percent(stage.busy_nanos.sum(), thread_nanos),
+                    percent(stage.take_wait_nanos.sum(), thread_nanos),
+                    percent(stage.put_wait_nanos.sum(), thread_nanos));
+        }
+    }
+
+    private static double percent(long nanos, double thread_nanos) {
+        return thread_nanos > 0 ? 100.0 * nanos / thread_nanos : 0.0;
+    }
+
+    /**
+     * Returns the number of reports written for valid decks.
+     *
+     * @return the report count
+     */
+    public int getReportCount() {
+        return reports.get();
+    }
+
+    /**
+     * Returns the number of VOID reports written.
+     *
+     * @return the VOID count
+     */
+    public int getVoidCount() {
+        return voids.get();
+    }
+
+    /**
+     * Returns the decks that could not be processed, with the reason.
+     *
+     * @return the failures
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+}
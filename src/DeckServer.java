@@ -0,0 +1,310 @@
+/**
+ * The {@code DeckServer} class keeps the program running as a local HTTP
+ * service, so a report costs one request instead of one JVM start.
+ *
+ * <p>The deck ID history is opened once at start (see
+ * {@link DeckIDGenerator#warmUp()}), and each request then only parses and
+ * renders:</p>
+ * <ul>
+ *     <li><strong>{@code POST /deck}:</strong> the request body is the deck
+ *     text. It is checked in memory by the same {@link DeckTokenizer} rules as
+ *     {@link SlayTheSpire#readTxtFile(String, DeckTally)}, a deck ID is
+ *     allocated, and the report (or VOID report) is streamed straight into
+ *     the response, with no temporary file. The ID is sent in the
+ *     {@code X-Deck-Id} header and {@code X-Deck-Void} tells whether the deck
+ *     was VOID. {@code ?format=csv} asks for another {@link ReportWriter}
+ *     format than the one of the run.</li>
+ *     <li><strong>{@code GET /metrics}:</strong> the {@link DeckMetrics} in
+ *     the Prometheus text format.</li>
+ *     <li><strong>{@code GET /health}:</strong> {@code ok}.</li>
+ * </ul>
+ *
+ * <p>Requests are handled on virtual threads when the JVM has them (Java 21
+ * and later), found by reflection so the program still runs on older JVMs,
+ * where a fixed pool of {@code --threads} platform threads is used instead.</p>
+ *
+ * <p>Usage: {@code --serve [--port N] [--host address] [--threads N]
+ * [--max-body bytes] [--format pdf|csv|jsonl|bin]}. The server listens on
+ * {@code 127.0.0.1:8080} by default.</p>
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DeckServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_BODY = 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ReportWriter default_writer;
+    private final int max_body;
+
+    /**
+     * Counts the bytes of a streamed report for {@link DeckMetrics#BYTES_WRITTEN}.
+     * Closing it only flushes; the response body is closed with the exchange,
+     * so a writer that closes its stream cannot cut the response short.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Creates a server bound to the given address. It does not accept requests
+     * until {@link #start()} is called.
+     *
+     * @param address the host and port to listen on
+     * @param threads the pool size used when virtual threads are not available
+     * @param max_body the largest accepted deck, in bytes
+     * @param default_writer the format sent when a request does not ask for one
+     * @throws IOException if the address cannot be bound
+     */
+    public DeckServer(InetSocketAddress address, int threads, int max_body, ReportWriter default_writer) throws IOException {
+        if (threads < 1 || max_body < 1) {
+            throw new IllegalArgumentException("threads and max_body must be at least 1");
+        }
+        this.max_body = max_body;
+        this.default_writer = default_writer;
+        this.executor = newExecutor(threads);
+        //without TCP_NODELAY the last chunk of a report waits for a delayed ACK, about 40 ms per request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/deck", this::handleDeck);
+        server.createContext("/metrics", exchange -> sendText(exchange, 200, DeckMetrics.toPrometheus(),
+                "text/plain; version=0.0.4; charset=utf-8"));
+        server.createContext("/health", exchange -> sendText(exchange, 200, "ok\n", "text/plain; charset=utf-8"));
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor if the JVM has one, otherwise
+     * a fixed pool of platform threads.
+     */
+    static ExecutorService newExecutor(int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads); //before Java 21
+        }
+    }
+
+    /**
+     * Opens the ID history and starts accepting requests.
+     */
+    public void start() {
+        DeckIDGenerator.warmUp();
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to {@code delay_seconds} for the open
+     * ones, and shuts the handler threads down.
+     *
+     * @param delay_seconds the most seconds to wait for running requests
+     */
+    public void stop(int delay_seconds) {
+        server.stop(delay_seconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the address the server listens on, with the real port when it was
+     * started on port 0.
+     *
+     * @return the bound address
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Handles {@code POST /deck}: parses the body and streams the report back.
+     */
+    private void handleDeck(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "use POST with the deck text as the body\n", "text/plain; charset=utf-8");
+                return;
+            }
+
+            ReportWriter writer;
+            try {
+                String format = queryParameter(exchange.getRequestURI().getRawQuery(), "format");
+                writer = format == null ? default_writer : ReportWriter.forFormat(format);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage() + "\n", "text/plain; charset=utf-8");
+                return;
+            }
+
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readNBytes(max_body + 1);
+            }
+            if (body.length > max_body) {
+                sendText(exchange, 413, "deck is larger than " + max_body + " bytes\n", "text/plain; charset=utf-8");
+                return;
+            }
+
+            long start = System.nanoTime();
+            DeckTally tally = new DeckTally();
+            DeckTokenizer tokenizer = new DeckTokenizer(tally);
+            boolean file_to_generate = tokenizer.parse(ByteBuffer.wrap(body)); //same rules as readTxtFile
+            DeckMetrics.recordParse(tokenizer, file_to_generate, System.nanoTime() - start);
+
+            String deck_ID = DeckIDGenerator.generateUniqueNumber();
+            String file_name = "SpireDeck_" + deck_ID + (file_to_generate ? "" : "(VOID)") + writer.extension();
+            exchange.getResponseHeaders().set("Content-Type", contentType(writer));
+            exchange.getResponseHeaders().set("Content-Disposition", "inline; filename=\"" + file_name + "\"");
+            exchange.getResponseHeaders().set("X-Deck-Id", deck_ID);
+            exchange.getResponseHeaders().set("X-Deck-Void", Boolean.toString(!file_to_generate));
+            if (tally.getCatalogWarningCount() > 0) { //only with -Ddeck.catalog
+                exchange.getResponseHeaders().set("X-Deck-Catalog-Warnings", Long.toString(tally.getCatalogWarningCount()));
+            }
+            exchange.sendResponseHeaders(200, 0); //length unknown, the report is sent in chunks as it is rendered
+
+            long render_start = System.nanoTime();
+            CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(exchange.getResponseBody(), 16 * 1024));
+            try {
+                if (!file_to_generate) {
+                    writer.writeVoid(out, deck_ID);
+                } else {
+                    writer.writeReport(out, deck_ID, SlayTheSpire.calculateTotalDeckCost(tally.cardDeck),
+                            tally.cardDeck, tally.invalid_cards);
+                }
+                out.flush();
+                DeckMetrics.recordRender(out.count, render_start);
+                SlayTheSpire.recordReportedDeck(deck_ID, file_to_generate, tally);
+            } catch (IOException e) { //the status is already sent, so the client only sees a cut-off body
+                DeckMetrics.RENDER_ERRORS.increment();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns the MIME type of a report format.
+     */
+    private static String contentType(ReportWriter writer) {
+        switch (writer.format()) {
+            case "pdf":
+                return "application/pdf";
+            case "csv":
+                return "text/csv; charset=utf-8";
+            case "jsonl":
+                return "application/x-ndjson; charset=utf-8";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    /**
+     * Returns the value of a query parameter, or {@code null} if it is absent.
+     * Format names need no decoding, so none is done.
+     */
+    private static String queryParameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return pair.substring(equals + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text, String content_type) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", content_type);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Entry point of the server mode. Runs until the JVM is stopped.
+     *
+     * @param args {@code [--serve] [--port N] [--host address] [--threads N]
+     *             [--max-body bytes] [--format pdf|csv|jsonl|bin]}
+     */
+    public static void main(String[] args) {
+        String host = "127.0.0.1";
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors() * 4;
+        int max_body = DEFAULT_MAX_BODY;
+        ReportWriter writer = SlayTheSpire.getReportWriters().get(0);
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--serve")) {
+                continue;
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-body") && i + 1 < args.length) {
+                max_body = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                writer = ReportWriter.forFormat(args[++i]);
+            } else {
+                System.out.println("Usage: --serve [--port N] [--host address] [--threads N] [--max-body bytes] [--format pdf|csv|jsonl|bin]");
+                return;
+            }
+        }
+
+        try {
+            DeckIDGenerator.setBlockSize(256); //a server hands out many IDs, reserve them in larger blocks
+            DeckServer deck_server = new DeckServer(new InetSocketAddress(host, port), threads, max_body, writer);
+            deck_server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deck_server.stop(1)));
+            InetSocketAddress address = deck_server.getAddress();
+            System.out.println("Serving decks at http://" + address.getHostString() + ":" + address.getPort() + "/deck");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
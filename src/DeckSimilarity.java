@@ -0,0 +1,437 @@
+/**
+ * The {@code DeckSimilarity} class finds decks that are nearly the same,
+ * without comparing every pair of decks.
+ *
+ * <p>A deck is seen as the multiset of its cards: a deck with three copies of
+ * Strike holds the elements Strike#0, Strike#1 and Strike#2, so adding or
+ * removing one copy changes one element. Two decks are as similar as the
+ * Jaccard similarity of those sets.</p>
+ *
+ * <ul>
+ *     <li><strong>MinHash:</strong> every deck gets a signature of
+ *     {@code bands * rows} values, each the smallest hash of its elements under
+ *     one hash function. The share of equal values in two signatures estimates
+ *     the similarity of the two decks.</li>
+ *
+ *     <li><strong>LSH:</strong> the signature is cut into bands of
+ *     {@code rows} values and each band is hashed. Decks that share any band
+ *     hash are candidates, and only candidates are compared. With the default
+ *     12 bands of 5 rows, decks with a similarity of 0.85 become candidates
+ *     more than 99.9% of the time and decks at 0.3 about 3% of the time.</li>
+ * </ul>
+ *
+ * <p>Decks are added with {@link #add(String, CardTable)}, then
+ * {@link #build()} sorts the band hashes of each band into one {@code long}
+ * array (the band hash in the high 40 bits, the deck number in the low 24),
+ * so a lookup is a binary search and a scan of one run of equal hashes.</p>
+ *
+ * <p>Usage: {@code --similar <directory|glob> [--threshold 0.8] [--query deck.txt]
+ * [--limit N] [--bands N] [--rows N]}. Without {@code --query} the decks are
+ * grouped into clusters; with it, the decks most similar to that one are
+ * listed. VOID decks are left out.</p>
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+public class DeckSimilarity {
+
+    public static final int DEFAULT_BANDS = 12;
+    public static final int DEFAULT_ROWS = 5;
+    public static final int MAX_DECKS = 1 << 24; //deck numbers share a long with the band hash
+
+    private static final int DECK_BITS = 24;
+    private static final long DECK_MASK = (1L << DECK_BITS) - 1;
+    private static final long SEED = 0x5DEECE66DL; //the same deck always gets the same signature
+
+    private final int bands;
+    private final int rows;
+    private final int hashes;
+    private final long[] seeds;
+
+    private int[] signatures = new int[0]; //deck i is signatures[i * hashes, (i + 1) * hashes)
+    private final List<String> labels = new ArrayList<>();
+    private long[][] band_index; //per band, sorted (band hash << 24 | deck)
+
+    /**
+     * One deck that is similar to a query.
+     */
+    public static final class Match {
+        public final int deck;
+        public final String label;
+        public final double similarity;
+
+        Match(int deck, String label, double similarity) {
+            this.deck = deck;
+            this.label = label;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * Creates an index with the default 12 bands of 5 rows.
+     */
+    public DeckSimilarity() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    /**
+     * Creates an index with its own banding. More rows per band make a
+     * candidate need a higher similarity; more bands make it more likely that
+     * a similar deck is found.
+     *
+     * @param bands the number of bands, at least 1
+     * @param rows the signature values per band, at least 1
+     */
+    public DeckSimilarity(int bands, int rows) {
+        if (bands < 1 || rows < 1 || (long) bands * rows > 1024) {
+            throw new IllegalArgumentException("bands and rows must be at least 1, with at most 1024 values in all");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.hashes = bands * rows;
+        this.seeds = new long[hashes];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < hashes; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Returns the MinHash signature of a deck.
+     *
+     * @param cards the cards of the deck
+     * @return {@code bands * rows} values
+     */
+    public int[] signature(CardTable cards) {
+        int[] signature = new int[hashes];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int id = 0; id < cards.size(); id++) {
+            long name_hash = hashName(cards.name(id));
+            int copies = Math.max(1, cards.count(id));
+            for (int copy = 0; copy < copies; copy++) {
+                long element = mix(name_hash + copy * 0x9E3779B97F4A7C15L);
+                for (int i = 0; i < hashes; i++) {
+                    int h = (int) (mix(element ^ seeds[i]) >>> 33); //non-negative, so MAX_VALUE is the empty value
+                    if (h < signature[i]) {
+                        signature[i] = h;
+                    }
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Adds a deck. The index has to be built again before the next query.
+     *
+     * @param label how the deck is reported, for example its file name
+     * @param cards the cards of the deck
+     * @return the number of the deck in this index
+     */
+    public int add(String label, CardTable cards) {
+        int deck = labels.size();
+        if (deck >= MAX_DECKS) {
+            throw new IllegalStateException("at most " + MAX_DECKS + " decks can be indexed");
+        }
+        if ((long) (deck + 1) * hashes > signatures.length) {
+            signatures = Arrays.copyOf(signatures, Math.max(hashes * 16, signatures.length * 2));
+        }
+        System.arraycopy(signature(cards), 0, signatures, deck * hashes, hashes);
+        labels.add(label);
+        band_index = null;
+        return deck;
+    }
+
+    /**
+     * Sorts the band hashes of all decks so they can be searched.
+     */
+    public void build() {
+        int size = labels.size();
+        band_index = new long[bands][];
+        for (int band = 0; band < bands; band++) {
+            long[] keys = new long[size];
+            for (int deck = 0; deck < size; deck++) {
+                keys[deck] = (bandHash(signatures, deck * hashes, band) << DECK_BITS) | deck;
+            }
+            Arrays.sort(keys);
+            band_index[band] = keys;
+        }
+    }
+
+    /**
+     * Returns the decks whose estimated similarity to the given deck is at
+     * least {@code min_similarity}, most similar first.
+     *
+     * @param cards the cards of the deck to look for
+     * @param min_similarity the lowest similarity returned, from 0 to 1
+     * @param limit the most decks returned
+     * @return the matches
+     */
+    public List<Match> query(CardTable cards, double min_similarity, int limit) {
+        if (band_index == null) {
+            build();
+        }
+        int[] signature = signature(cards);
+        int[] candidates = new int[16];
+        int count = 0;
+        for (int band = 0; band < bands; band++) {
+            long[] keys = band_index[band];
+            long hash = bandHash(signature, 0, band);
+            for (int i = lowerBound(keys, hash << DECK_BITS); i < keys.length && (keys[i] >>> DECK_BITS) == hash; i++) {
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                }
+                candidates[count++] = (int) (keys[i] & DECK_MASK);
+            }
+        }
+
+        Arrays.sort(candidates, 0, count);
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int deck = candidates[i];
+            if (i > 0 && deck == candidates[i - 1]) {
+                continue; //found in more than one band
+            }
+            double similarity = similarity(signature, 0, signatures, deck * hashes);
+            if (similarity >= min_similarity) {
+                matches.add(new Match(deck, labels.get(deck), similarity));
+            }
+        }
+        matches.sort((a, b) -> Double.compare(b.similarity, a.similarity));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Groups the decks into clusters of near-duplicates.
+     *
+     * <p>Within each run of decks that share a band hash, every deck is
+     * compared with the first deck of the run and with the deck before it, and
+     * joined to its cluster (union-find) if they are similar enough. This keeps
+     * a large run of copies linear, at the cost of sometimes leaving a deck out
+     * of a cluster it is only similar to through decks of another run.</p>
+     *
+     * @param min_similarity the similarity at which two decks are joined
+     * @return the clusters with more than one deck, largest first, each as deck numbers
+     */
+    public List<int[]> cluster(double min_similarity) {
+        if (band_index == null) {
+            build();
+        }
+        int size = labels.size();
+        int[] parent = new int[size];
+        for (int deck = 0; deck < size; deck++) {
+            parent[deck] = deck;
+        }
+
+        for (long[] keys : band_index) {
+            int run_start = 0;
+            for (int i = 1; i <= keys.length; i++) {
+                if (i < keys.length && (keys[i] >>> DECK_BITS) == (keys[run_start] >>> DECK_BITS)) {
+                    int deck = (int) (keys[i] & DECK_MASK);
+                    join(parent, (int) (keys[run_start] & DECK_MASK), deck, min_similarity);
+                    if (i - 1 > run_start) {
+                        join(parent, (int) (keys[i - 1] & DECK_MASK), deck, min_similarity);
+                    }
+                } else {
+                    run_start = i;
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int deck = 0; deck < size; deck++) {
+            groups.computeIfAbsent(find(parent, deck), root -> new ArrayList<>()).add(deck);
+        }
+        List<int[]> clusters = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            if (group.size() > 1) {
+                clusters.add(group.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        clusters.sort((a, b) -> a.length != b.length ? Integer.compare(b.length, a.length) : Integer.compare(a[0], b[0]));
+        return clusters;
+    }
+
+    private void join(int[] parent, int a, int b, double min_similarity) {
+        int root_a = find(parent, a);
+        int root_b = find(parent, b);
+        if (root_a != root_b && similarity(a, b) >= min_similarity) {
+            parent[Math.max(root_a, root_b)] = Math.min(root_a, root_b);
+        }
+    }
+
+    private static int find(int[] parent, int deck) {
+        while (parent[deck] != deck) {
+            parent[deck] = parent[parent[deck]]; //path halving
+            deck = parent[deck];
+        }
+        return deck;
+    }
+
+    /**
+     * Returns the estimated similarity of two indexed decks.
+     *
+     * @param a the number of one deck
+     * @param b the number of the other deck
+     * @return the share of equal signature values, from 0 to 1
+     */
+    public double similarity(int a, int b) {
+        return similarity(signatures, a * hashes, signatures, b * hashes);
+    }
+
+    private double similarity(int[] a, int a_start, int[] b, int b_start) {
+        int equal = 0;
+        for (int i = 0; i < hashes; i++) {
+            if (a[a_start + i] == b[b_start + i]) {
+                equal++;
+            }
+        }
+        return (double) equal / hashes;
+    }
+
+    /**
+     * Returns the label a deck was added with.
+     *
+     * @param deck the number of the deck
+     * @return the label
+     */
+    public String getLabel(int deck) {
+        return labels.get(deck);
+    }
+
+    /**
+     * Returns the number of indexed decks.
+     *
+     * @return the deck count
+     */
+    public int size() {
+        return labels.size();
+    }
+
+    /**
+     * Hashes the values of one band into 40 bits.
+     */
+    private long bandHash(int[] signature, int start, int band) {
+        long h = band;
+        int from = start + band * rows;
+        for (int i = 0; i < rows; i++) {
+            h = mix(h * 31 + signature[from + i]);
+        }
+        return h >>> DECK_BITS;
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 name.
+     */
+    private static long hashName(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * The finalizer of SplitMix64, which spreads every input bit over the result.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Entry point of the similarity mode.
+     *
+     * @param args {@code [--similar] <directory|glob> [--threshold 0.8] [--query deck.txt]
+     *             [--limit N] [--bands N] [--rows N]}
+     */
+    public static void main(String[] args) {
+        String location = null;
+        String query = null;
+        double threshold = 0.8;
+        int limit = 20;
+        int bands = DEFAULT_BANDS;
+        int rows = DEFAULT_ROWS;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--similar")) {
+                continue;
+            } else if (args[i].equals("--threshold") && i + 1 < args.length) {
+                threshold = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--query") && i + 1 < args.length) {
+                query = args[++i];
+            } else if (args[i].equals("--limit") && i + 1 < args.length) {
+                limit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--bands") && i + 1 < args.length) {
+                bands = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--rows") && i + 1 < args.length) {
+                rows = Integer.parseInt(args[++i]);
+            } else {
+                location = args[i];
+            }
+        }
+
+        if (location == null) {
+            System.out.println("Usage: --similar <directory|glob> [--threshold 0.8] [--query deck.txt] [--limit N] [--bands N] [--rows N]");
+            return;
+        }
+
+        try {
+            DeckSimilarity index = new DeckSimilarity(bands, rows);
+            long start = System.nanoTime();
+            for (Path deck_file : BatchTally.findDeckFiles(location)) {
+                DeckTally tally = new DeckTally();
+                if (SlayTheSpire.readTxtFile(deck_file.toString(), tally)) {
+                    index.add(deck_file.getFileName().toString(), tally.cardDeck);
+                }
+            }
+            index.build();
+            System.out.printf("Indexed %d decks in %.1f ms%n", index.size(), (System.nanoTime() - start) / 1e6);
+
+            if (query != null) {
+                DeckTally tally = new DeckTally();
+                SlayTheSpire.readTxtFile(query, tally);
+                for (Match match : index.query(tally.cardDeck, threshold, limit)) {
+                    System.out.printf("%.3f  %s%n", match.similarity, match.label);
+                }
+                return;
+            }
+
+            List<int[]> clusters = index.cluster(threshold);
+            System.out.println(clusters.size() + " cluster(s) at similarity " + threshold);
+            for (int c = 0; c < clusters.size() && c < limit; c++) {
+                int[] cluster = clusters.get(c);
+                StringBuilder line = new StringBuilder(cluster.length + " decks:");
+                for (int deck : cluster) {
+                    line.append(' ').append(index.getLabel(deck));
+                }
+                System.out.println(line);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
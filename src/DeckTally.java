@@ -0,0 +1,200 @@
+/**
+ * The {@code DeckTally} class holds the parse state for a single deck file.
+ *
+ * <p>Each deck that is read gets its own tally, so several decks can be
+ * processed at the same time in one JVM without sharing the card map or the
+ * list of invalid cards.</p>
+ *
+ * <ul>
+ *     <li><strong>cardDeck:</strong> a {@link CardTable} of card names and their summed cost.</li>
+ *     <li><strong>invalid_cards:</strong> the raw lines that were rejected.</li>
+ * </ul>
+ *
+ * <p>By default every invalid line is kept. A tally created with a sample
+ * size keeps a uniform random sample of at most that many lines instead
+ * (reservoir sampling), while {@link #getInvalidCount()} still counts all of
+ * them, so a deck with millions of bad lines does not hold them all.</p>
+ *
+ * <p>When a {@link CardCatalog} is in use, lines with an unknown card name or
+ * a cost that is not the card's cost are also listed as catalog warnings. They
+ * stay in the deck; the first {@link #MAX_CATALOG_WARNINGS} are kept.</p>
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class DeckTally {
+
+    public static final int KEEP_ALL = Integer.MAX_VALUE;
+    public static final int MAX_CATALOG_WARNINGS = 100;
+
+    private static final long SAMPLE_SEED = 42L; //the same file always gives the same sample
+
+    final CardTable cardDeck = new CardTable();
+    final ArrayList<String> invalid_cards = new ArrayList<>();
+    final ArrayList<String> catalog_warnings = new ArrayList<>(0);
+
+    private final int invalid_sample_size;
+    private final Random sampler;
+    private long invalid_count = 0;
+    private long catalog_warning_count = 0;
+
+    /**
+     * Creates a tally that keeps every invalid line.
+     */
+    public DeckTally() {
+        this(KEEP_ALL);
+    }
+
+    /**
+     * Creates a tally that keeps a sample of at most {@code invalid_sample_size}
+     * invalid lines.
+     *
+     * @param invalid_sample_size the most invalid lines kept, or {@link #KEEP_ALL}
+     */
+    public DeckTally(int invalid_sample_size) {
+        if (invalid_sample_size < 0) {
+            throw new IllegalArgumentException("invalid_sample_size must not be negative");
+        }
+        this.invalid_sample_size = invalid_sample_size;
+        this.sampler = invalid_sample_size == KEEP_ALL ? null : new Random(SAMPLE_SEED);
+    }
+
+    /**
+     * Adds a card cost to the tally, summing the costs of repeated card names.
+     *
+     * @param key the card name
+     * @param value the cost of the card
+     * @return the id of the card in {@link #cardDeck}, or {@code -1} if ids are
+     *         not stable in this tally
+     */
+    int addCard(String key, int value) {
+        return cardDeck.add(key, value); //updates existing values of repeated keys
+    }
+
+    /**
+     * Adds a card whose name is the bytes {@code [start, end)} of the buffer,
+     * without decoding the name.
+     *
+     * @param buf the buffer holding the card name
+     * @param start the index of the first byte of the name
+     * @param end the index after the last byte of the name
+     * @param value the cost of the card
+     * @return the id of the card in {@link #cardDeck}, or {@code -1} if ids are
+     *         not stable in this tally
+     */
+    int addCard(ByteBuffer buf, int start, int end, int value) {
+        return cardDeck.add(buf, start, end, value);
+    }
+
+    /**
+     * Adds every card of a partial table, as read from one chunk of the deck.
+     *
+     * @param part the cards of the chunk
+     */
+    void addAll(CardTable part) {
+        cardDeck.addAll(part);
+    }
+
+    /**
+     * Records a line that did not pass validation.
+     *
+     * @param line the raw line as it was read from the file
+     */
+    void addInvalid(String line) {
+        invalid_count++;
+        if (invalid_cards.size() < invalid_sample_size) {
+            invalid_cards.add(line);
+        } else if (sampler != null) {
+            long slot = (long) (sampler.nextDouble() * invalid_count); //keeps each line with chance size/count
+            if (slot < invalid_sample_size) {
+                invalid_cards.set((int) slot, line);
+            }
+        }
+    }
+
+    /**
+     * Records a line that the {@link CardCatalog} does not agree with.
+     *
+     * @param warning the line and what is wrong with it
+     */
+    void addCatalogWarning(String warning) {
+        catalog_warning_count++;
+        if (catalog_warnings.size() < MAX_CATALOG_WARNINGS) {
+            catalog_warnings.add(warning);
+        }
+    }
+
+    /**
+     * Adds the catalog warnings of a tally that read one chunk of the deck.
+     *
+     * @param part the tally of the chunk
+     */
+    void addCatalogWarnings(DeckTally part) {
+        for (String warning : part.catalog_warnings) {
+            addCatalogWarning(warning);
+        }
+        catalog_warning_count += part.catalog_warning_count - part.catalog_warnings.size(); //the ones not kept
+    }
+
+    /**
+     * Returns how many lines got a catalog warning, including the ones that
+     * were not kept.
+     *
+     * @return the catalog warning count
+     */
+    public long getCatalogWarningCount() {
+        return catalog_warning_count;
+    }
+
+    /**
+     * Returns the first catalog warnings, in the order the lines were read.
+     *
+     * @return the catalog warnings
+     */
+    public List<String> getCatalogWarnings() {
+        return catalog_warnings;
+    }
+
+    /**
+     * Returns how many invalid lines were recorded, including the ones that
+     * were not kept in the sample.
+     *
+     * @return the invalid line count
+     */
+    public long getInvalidCount() {
+        return invalid_count;
+    }
+
+    /**
+     * Returns the card names and their summed costs.
+     *
+     * @return the card table of this deck
+     */
+    public CardTable getCardDeck() {
+        return cardDeck;
+    }
+
+    /**
+     * Returns the lines that were rejected while reading the deck.
+     *
+     * @return the invalid card lines, in the order they were read unless the
+     *         tally samples them
+     */
+    public List<String> getInvalidCards() {
+        return invalid_cards;
+    }
+
+    /**
+     * Clears the tally so it can be reused for another deck.
+     */
+    public void clear() {
+        cardDeck.clear();
+        invalid_cards.clear();
+        invalid_count = 0;
+        catalog_warnings.clear();
+        catalog_warning_count = 0;
+    }
+}
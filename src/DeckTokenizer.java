@@ -0,0 +1,724 @@
+/**
+ * The {@code DeckTokenizer} class reads deck files at the byte level.
+ *
+ * <p>It replaces the old {@code BufferedReader}/{@code replaceAll}/{@code split}
+ * path of {@link SlayTheSpire#readTxtFile(String, DeckTally)}. The file is read
+ * through a {@link FileChannel} (memory-mapped for larger files) and every line
+ * is scanned once: the {@code :} separator is found and the cost is parsed in
+ * the same pass. Valid lines never create exceptions, and no {@code String} is
+ * built except for lines that end up in the invalid list; card names go
+ * straight from the buffer into the {@link CardTable}.</p>
+ *
+ * <p>The results are the same as the old parser, including its quirks:</p>
+ * <ul>
+ *     <li>line terminators are {@code \n}, {@code \r} and {@code \r\n}, as with
+ *     {@link java.io.BufferedReader#readLine()};</li>
+ *     <li>a blank line is recorded as invalid twice (once for being empty and
+ *     once for having no {@code :});</li>
+ *     <li>a line without {@code :} is recorded as invalid;</li>
+ *     <li>a line with a valid integer cost outside 0..6 is recorded as invalid;</li>
+ *     <li>a line with {@code :} that does not split into exactly a name and an
+ *     integer (for example {@code "a:x"}, {@code "a:1:2"} or {@code "a:"}) is
+ *     skipped without being recorded, just like before;</li>
+ *     <li>reading stops with {@code false} once more than 1000 lines are read,
+ *     or when a line is reached while more than 10 invalid cards are recorded.</li>
+ * </ul>
+ *
+ * <p>Both limits can be changed, or turned off with {@link #NO_LIMIT}, for
+ * large inputs such as aggregated card usage dumps (see {@link LargeDeckTally}).</p>
+ *
+ * <p>With a {@link CardCatalog} (from {@code -Ddeck.catalog}, or
+ * {@link #setCatalog(CardCatalog)}) every accepted card is also looked up, and
+ * unknown names and wrong costs are recorded as catalog warnings in the tally.
+ * This does not change which lines are valid.</p>
+ *
+ * <p>Running the class with {@code --selftest [inputs] [seed]} writes random
+ * deck files (odd whitespace, separators, terminators, non-ASCII digits, lines
+ * longer than a mapped window, more lines than the limit) and checks that the
+ * tokenizer gives the same cards, invalid lines and result as the old
+ * {@code BufferedReader}/{@code split} parser, with the default limits and
+ * with {@link #NO_LIMIT}.</p>
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DeckTokenizer {
+
+    public static final int DEFAULT_MAX_LINES = 1000;
+    public static final int DEFAULT_MAX_INVALID = 10;
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private static final int HEAP_READ_LIMIT = 64 * 1024; //smaller files are read instead of mapped
+    private static final int MAP_WINDOW = 64 * 1024 * 1024;
+    private static final int STREAM_BLOCK = 64 * 1024;
+
+    private static final long NOT_AN_INTEGER = Long.MIN_VALUE;
+
+    private final DeckTally tally;
+    private final long max_lines;
+    private final long max_invalid;
+    private final Charset charset = Charset.defaultCharset(); //same charset FileReader used
+    private byte[] scratch = new byte[128];
+
+    private long line_counter = 0;
+    private long blank_count = 0;
+    private long no_separator_count = 0;
+    private long out_of_range_count = 0;
+    private long skipped_count = 0;
+    private long unknown_card_count = 0;
+    private long cost_mismatch_count = 0;
+    private CardCatalog catalog = CardCatalog.fromProperty();
+    private int[] catalog_by_id = new int[0]; //earlier lookups by card id, see lookupCatalog; 0 if not looked up
+    private long invalid_before_last_line = 0;
+    private boolean skip_lf = false; //last window ended with '\r', a leading '\n' belongs to it
+
+    /**
+     * Creates a tokenizer that stores its results in the given tally.
+     *
+     * @param tally the {@link DeckTally} that receives the cards and invalid lines
+     */
+    public DeckTokenizer(DeckTally tally) {
+        this(tally, DEFAULT_MAX_LINES, DEFAULT_MAX_INVALID);
+    }
+
+    /**
+     * Creates a tokenizer with its own limits.
+     *
+     * @param tally the {@link DeckTally} that receives the cards and invalid lines
+     * @param max_lines the most lines read before the deck is VOID, or {@link #NO_LIMIT}
+     * @param max_invalid the most invalid lines allowed before the deck is VOID, or {@link #NO_LIMIT}
+     */
+    public DeckTokenizer(DeckTally tally, long max_lines, long max_invalid) {
+        if (max_lines < 0 || max_invalid < 0) {
+            throw new IllegalArgumentException("limits must not be negative");
+        }
+        this.tally = tally;
+        this.max_lines = max_lines;
+        this.max_invalid = max_invalid;
+    }
+
+    /**
+     * Sets the catalog that accepted cards are checked against, replacing the
+     * one of the {@code deck.catalog} property.
+     *
+     * @param catalog the catalog, or {@code null} to check nothing
+     */
+    public void setCatalog(CardCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Reads a whole deck file into the given tally.
+     *
+     * @param filePath the path to the deck file
+     * @param tally the {@link DeckTally} that receives the cards and invalid lines
+     * @return {@code true} if the file passed the line and invalid card limits
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean parseFile(String filePath, DeckTally tally) throws IOException {
+        return new DeckTokenizer(tally).parseFile(filePath);
+    }
+
+    /**
+     * Reads every line of the channel. Small files are read into a heap
+     * buffer; larger files are mapped window by window, with each window cut
+     * right after a line terminator so no line is split.
+     *
+     * @param channel an open channel positioned anywhere; it is read from the start
+     * @return {@code true} if the content passed the line and invalid card limits
+     * @throws IOException if the channel cannot be read
+     */
+    public boolean parse(FileChannel channel) throws IOException {
+        long size = channel.size();
+
+        if (size <= HEAP_READ_LIMIT) {
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf, buf.position()) >= 0) {
+                //keep reading until the buffer is full
+            }
+            buf.flip();
+            return parse(buf);
+        }
+
+        long position = 0;
+        while (position < size) {
+            long window = Math.min(MAP_WINDOW, size - position);
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+            int cut = (int) window;
+
+            if (position + window < size) {
+                cut = lastTerminator(buf, (int) window);
+                while (cut < 0) { //one line is longer than the window, grow it
+                    long grown = Math.min(window * 2, Math.min(Integer.MAX_VALUE - 8, size - position));
+                    if (grown == window) {
+                        throw new IOException("line at byte " + position + " is too long to map");
+                    }
+                    window = grown;
+                    buf = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                    cut = position + window < size ? lastTerminator(buf, (int) window) : (int) window;
+                }
+            }
+
+            if (!parseLines(buf, 0, cut)) {
+                return false;
+            }
+            position += cut;
+        }
+        return true;
+    }
+
+    /**
+     * Reads every line of a stream, such as a deck inside a zip or gzip
+     * archive, without writing it anywhere first. The stream is read in blocks
+     * that are cut after the last complete line, like the windows of a mapped
+     * file. It is not closed, and reading stops as soon as a limit is hit.
+     *
+     * @param in the deck content
+     * @return {@code true} if the content passed the line and invalid card limits
+     * @throws IOException if the stream cannot be read or a line is too long
+     */
+    public boolean parse(InputStream in) throws IOException {
+        byte[] block = new byte[STREAM_BLOCK];
+        int filled = 0;
+        boolean end = false;
+
+        while (!end) {
+            int read = in.read(block, filled, block.length - filled);
+            if (read < 0) {
+                end = true;
+            } else {
+                filled += read;
+                if (filled < block.length) {
+                    continue; //fill the block before cutting it
+                }
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(block, 0, filled);
+            int cut = end ? filled : lastTerminator(buf, filled);
+            if (cut < 0) { //one line is longer than the block, grow it
+                if (block.length >= MAP_WINDOW) {
+                    throw new IOException("line at line " + (line_counter + 1) + " is too long to read");
+                }
+                block = Arrays.copyOf(block, block.length * 2);
+                continue;
+            }
+            if (!parseLines(buf, 0, cut)) {
+                return false;
+            }
+            System.arraycopy(block, cut, block, 0, filled - cut); //keep the unfinished line
+            filled -= cut;
+        }
+        return true;
+    }
+
+    /**
+     * Reads every line between the position and the limit of the buffer. The
+     * end of the buffer is treated as the end of the file.
+     *
+     * @param buf the deck content
+     * @return {@code true} if the content passed the line and invalid card limits
+     */
+    public boolean parse(ByteBuffer buf) {
+        return parseLines(buf, buf.position(), buf.limit());
+    }
+
+    /**
+     * Reads a whole deck file.
+     *
+     * @param filePath the path to the deck file
+     * @return {@code true} if the file passed the line and invalid card limits
+     * @throws IOException if the file cannot be read
+     */
+    public boolean parseFile(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            return parse(channel);
+        }
+    }
+
+    /**
+     * Returns the number of lines read so far.
+     *
+     * @return the line count
+     */
+    public long getLineCount() {
+        return line_counter;
+    }
+
+    /**
+     * Returns how many blank lines were recorded as invalid.
+     *
+     * @return the blank line count
+     */
+    public long getBlankCount() {
+        return blank_count;
+    }
+
+    /**
+     * Returns how many lines were recorded as invalid for having no {@code :},
+     * blank lines included.
+     *
+     * @return the count of lines without a separator
+     */
+    public long getNoSeparatorCount() {
+        return no_separator_count;
+    }
+
+    /**
+     * Returns how many lines were recorded as invalid for a cost outside 0..6.
+     *
+     * @return the out of range count
+     */
+    public long getOutOfRangeCount() {
+        return out_of_range_count;
+    }
+
+    /**
+     * Returns how many accepted cards were not found in the catalog.
+     *
+     * @return the unknown card count
+     */
+    public long getUnknownCardCount() {
+        return unknown_card_count;
+    }
+
+    /**
+     * Returns how many accepted cards had a cost the catalog does not give them.
+     *
+     * @return the cost mismatch count
+     */
+    public long getCostMismatchCount() {
+        return cost_mismatch_count;
+    }
+
+    /**
+     * Returns how many lines with a {@code :} were skipped without being
+     * recorded because they were not a name and an integer.
+     *
+     * @return the skipped line count
+     */
+    public long getSkippedCount() {
+        return skipped_count;
+    }
+
+    /**
+     * Returns how many invalid lines the tally held before the last line was
+     * read. {@link ParallelDeckParser} uses it to apply the invalid card limit
+     * across chunks, since that limit is checked before each line.
+     *
+     * @return the invalid line count before the last line
+     */
+    long getInvalidBeforeLastLine() {
+        return invalid_before_last_line;
+    }
+
+    /**
+     * Finds the end of the last complete line in a mapped window.
+     *
+     * @return the index just after the last terminator, or -1 if there is none
+     */
+    private static int lastTerminator(ByteBuffer buf, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            byte b = buf.get(i);
+            if (b == '\n' || (b == '\r' && i < length - 1)) { //a trailing '\r' might be half of "\r\n"
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits {@code [from, to)} into lines and processes each one.
+     */
+    boolean parseLines(ByteBuffer buf, int from, int to) {
+        int start = from;
+
+        if (skip_lf && start < to && buf.get(start) == '\n') {
+            start++;
+        }
+        skip_lf = false;
+
+        int i = start;
+        while (i < to) {
+            byte b = buf.get(i);
+            if (b == '\n' || b == '\r') {
+                if (!processLine(buf, start, i)) {
+                    return false;
+                }
+                if (b == '\r') {
+                    if (i + 1 < to) {
+                        if (buf.get(i + 1) == '\n') {
+                            i++;
+                        }
+                    } else {
+                        skip_lf = true;
+                    }
+                }
+                start = i + 1;
+            }
+            i++;
+        }
+
+        if (start < to) { //last line without a terminator
+            return processLine(buf, start, to);
+        }
+        return true;
+    }
+
+    /**
+     * Classifies one line, {@code [start, end)} without its terminator.
+     *
+     * @return {@code false} if a limit was hit and reading must stop
+     */
+    private boolean processLine(ByteBuffer buf, int start, int end) {
+        line_counter += 1; //counts the amount of lines in the txt file
+        if (line_counter > max_lines) {
+            return false;
+        }
+
+        invalid_before_last_line = tally.getInvalidCount();
+        if (invalid_before_last_line > max_invalid) {
+            return false;
+        }
+
+        int colon = -1;
+        boolean blank = true;
+        boolean ascii_key = true;
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b == ':') {
+                colon = i;
+                blank = false;
+                break;
+            }
+            if (b < 0) {
+                ascii_key = false;
+            }
+            if (blank && !isWhitespace(b)) {
+                blank = false;
+            }
+        }
+
+        if (blank) { //only whitespace, counted as empty and as missing ':'
+            blank_count++;
+            tally.addInvalid(decode(buf, start, end));
+        }
+
+        if (colon < 0) { //checks for invalid format
+            no_separator_count++;
+            tally.addInvalid(decode(buf, start, end));
+            return true;
+        }
+
+        //the cost runs up to the next ':'; anything after it must be only ':'
+        //for String.split to have produced exactly two parts
+        int value_end = colon + 1;
+        while (value_end < end && buf.get(value_end) != ':') {
+            value_end++;
+        }
+        if (value_end == colon + 1) {
+            skipped_count++;
+            return true; //empty cost, split gives fewer or more than two parts
+        }
+        for (int i = value_end; i < end; i++) {
+            if (buf.get(i) != ':') {
+                skipped_count++;
+                return true; //three or more parts
+            }
+        }
+
+        long value = parseCost(buf, colon + 1, value_end);
+        if (value == NOT_AN_INTEGER) {
+            skipped_count++;
+            return true; //not an integer, skipped like before
+        }
+
+        if (value < 0 || value > 6) {
+            out_of_range_count++;
+            tally.addInvalid(decode(buf, start, end)); //adds invalid card to invalid_card list
+        } else if (ascii_key) {
+            int id = tally.addCard(buf, start, colon, (int) value); //name bytes are only copied for new cards
+            if (catalog != null) {
+                checkCatalog(lookupCatalog(id, buf, start, colon), (int) value, buf, start, end);
+            }
+        } else {
+            String name = decode(buf, start, colon);
+            tally.addCard(name, (int) value); //same name for every malformed byte sequence
+            if (catalog != null) {
+                checkCatalog(packLookup(catalog.find(name), CardCatalog.isUpgraded(name)), (int) value, buf, start, end);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks a card name up in the catalog once per card of the deck; repeated
+     * names reuse the lookup of their card id.
+     *
+     * @return the lookup, packed by {@link #packLookup(int, boolean)}
+     */
+    private int lookupCatalog(int id, ByteBuffer buf, int start, int end) {
+        if (id < 0) { //the tally does not keep ids
+            return packLookup(catalog.find(buf, start, end), CardCatalog.isUpgraded(buf, start, end));
+        }
+        if (id >= catalog_by_id.length) {
+            catalog_by_id = Arrays.copyOf(catalog_by_id, Math.max(16, Math.max(id + 1, catalog_by_id.length * 2)));
+        }
+        int packed = catalog_by_id[id];
+        if (packed == 0) {
+            packed = packLookup(catalog.find(buf, start, end), CardCatalog.isUpgraded(buf, start, end));
+            catalog_by_id[id] = packed;
+        }
+        return packed;
+    }
+
+    /**
+     * Packs a catalog index (or {@link CardCatalog#NOT_FOUND}) and the upgraded
+     * flag into one int that is never 0.
+     */
+    private static int packLookup(int index, boolean upgraded) {
+        return ((index + 2) << 1) | (upgraded ? 1 : 0);
+    }
+
+    /**
+     * Records a catalog warning for an accepted card that is unknown or has the
+     * wrong cost. Strings are only built for lines that get a warning.
+     */
+    private void checkCatalog(int packed, int cost, ByteBuffer buf, int start, int end) {
+        int index = (packed >> 1) - 2;
+        boolean upgraded = (packed & 1) != 0;
+        if (index == CardCatalog.NOT_FOUND) {
+            unknown_card_count++;
+            tally.addCatalogWarning("unknown card: " + decode(buf, start, end));
+        } else if (!catalog.costMatches(index, cost, upgraded)) {
+            cost_mismatch_count++;
+            tally.addCatalogWarning("wrong cost: " + decode(buf, start, end) + " (" + catalog.getName(index)
+                    + " costs " + catalog.getBaseCost(index) + ", upgraded " + catalog.getUpgradedCost(index) + ")");
+        }
+    }
+
+    /**
+     * Parses {@code [start, end)} with the rules of {@link Integer#parseInt(String)}
+     * but without throwing.
+     *
+     * @return the parsed value, or {@link #NOT_AN_INTEGER}
+     */
+    private long parseCost(ByteBuffer buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        byte first = buf.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                return NOT_AN_INTEGER;
+            }
+        }
+
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            if (b < 0) { //non-ASCII, Integer.parseInt also accepts other Unicode digits
+                return parseCostSlow(decode(buf, start, end));
+            }
+            if (b < '0' || b > '9') {
+                return NOT_AN_INTEGER;
+            }
+            value = value * 10 + (b - '0');
+            if (value > limit) {
+                return NOT_AN_INTEGER;
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Character-level fallback of {@link #parseCost} for costs that contain
+     * non-ASCII characters.
+     */
+    private static long parseCostSlow(String str) {
+        int i = 0;
+        boolean negative = false;
+        char first = str.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == str.length()) {
+                return NOT_AN_INTEGER;
+            }
+        }
+
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < str.length(); i++) {
+            int digit = Character.digit(str.charAt(i), 10);
+            if (digit < 0) {
+                return NOT_AN_INTEGER;
+            }
+            value = value * 10 + digit;
+            if (value > limit) {
+                return NOT_AN_INTEGER;
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns whether the byte is matched by the regex class {@code \s}.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Decodes {@code [start, end)} into a {@code String}.
+     */
+    private String decode(ByteBuffer buf, int start, int end) {
+        int length = end - start;
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, length, charset);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buf.get(start + i);
+        }
+        return new String(scratch, 0, length, charset);
+    }
+
+    /**
+     * The parser this class replaced, kept as the reference of the self test:
+     * {@code readLine}, {@code replaceAll} and {@code split}, with the two
+     * limits as parameters instead of 1000 and 10.
+     */
+    static boolean referenceParse(byte[] content, DeckTally tally, long max_lines, long max_invalid) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content),
+                Charset.defaultCharset())); //what FileReader did
+        String line;
+        long lines = 0;
+        long invalid = 0;
+        while ((line = reader.readLine()) != null) {
+            lines += 1;
+            if (lines > max_lines) {
+                return false;
+            }
+            if (invalid > max_invalid) {
+                return false;
+            }
+            if (line.replaceAll("\\s+", "").isEmpty()) {
+                tally.addInvalid(line);
+                invalid++;
+            }
+            if (!line.contains(":")) {
+                tally.addInvalid(line);
+                invalid++;
+            }
+            String[] str_and_int = line.split(":");
+            if (str_and_int.length == 2 && SlayTheSpire.isInteger(str_and_int[1])) {
+                int value = Integer.parseInt(str_and_int[1]);
+                if (value > 6 || value < 0) {
+                    tally.addInvalid(line);
+                    invalid++;
+                } else {
+                    tally.addCard(str_and_int[0], value);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a random deck. Every tenth is long enough to hit the line
+     * limit, and every fiftieth has a line longer than one mapped window.
+     */
+    static byte[] randomDeck(Random random, int input) {
+        String[] atoms = {":", " ", "\t", "0", "1", "5", "6", "7", "93", "-", "+", "Strike", "\u00e9", "\u0663", "\r", "\n",
+                "\r\n", "\n", "\n", "x", "00000000000000003", "99999999999", "\f"};
+        StringBuilder deck = new StringBuilder();
+        int length = random.nextInt(input % 10 == 0 ? 3000 : 60);
+        for (int i = 0; i < length; i++) {
+            deck.append(atoms[random.nextInt(atoms.length)]);
+        }
+        if (input % 10 == 5) { //mostly valid lines, past the line limit
+            for (int i = 0; i < 1100; i++) {
+                deck.append("Card").append(random.nextInt(40)).append(':').append(random.nextInt(8)).append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+        }
+        if (input % 50 == 0) { //one line longer than the heap read limit
+            deck.append("a:");
+            for (int i = 0; i < HEAP_READ_LIMIT + random.nextInt(HEAP_READ_LIMIT); i++) {
+                deck.append(' ');
+            }
+            deck.append("\nb:3\r");
+        }
+        return deck.toString().getBytes(Charset.defaultCharset());
+    }
+
+    /**
+     * Runs the differential self test.
+     *
+     * @param args {@code --selftest [inputs] [seed]}
+     * @throws IOException if the temporary deck file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || !args[0].equals("--selftest")) {
+            System.out.println("Usage: --selftest [inputs] [seed]");
+            return;
+        }
+        int inputs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        long[][] limits = {{DEFAULT_MAX_LINES, DEFAULT_MAX_INVALID}, {NO_LIMIT, NO_LIMIT}};
+
+        Random random = new Random(seed);
+        Path deck_file = Files.createTempFile("deck-selftest", ".txt");
+        int failures = 0;
+        try {
+            for (int input = 0; input < inputs; input++) {
+                byte[] content = randomDeck(random, input);
+                Files.write(deck_file, content);
+                for (long[] limit : limits) {
+                    DeckTally expected = new DeckTally();
+                    DeckTally actual = new DeckTally();
+                    boolean expected_valid = referenceParse(content, expected, limit[0], limit[1]);
+                    DeckTokenizer tokenizer = new DeckTokenizer(actual, limit[0], limit[1]);
+                    tokenizer.setCatalog(null);
+                    boolean actual_valid = tokenizer.parseFile(deck_file.toString());
+                    if (expected_valid != actual_valid || !expected.getCardDeck().toMap().equals(actual.getCardDeck().toMap())
+                            || !expected.getInvalidCards().equals(actual.getInvalidCards())) {
+                        failures++;
+                        Path kept = Files.createTempFile("deck-selftest-failed", ".txt");
+                        Files.write(kept, content);
+                        System.out.println("MISMATCH input " + input + " (limits " + (limit[0] == NO_LIMIT ? "off" : "on")
+                                + "), kept in " + kept + ": expected " + expected_valid + " " + expected.getCardDeck().toMap()
+                                + " " + expected.getInvalidCards().size() + " invalid, got " + actual_valid + " "
+                                + actual.getCardDeck().toMap() + " " + actual.getInvalidCards().size() + " invalid");
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(deck_file);
+        }
+
+        System.out.println("Inputs:     " + inputs + " (seed " + seed + "), limits on and off");
+        System.out.println("Mismatches: " + failures);
+        if (failures > 0) {
+            System.out.println("SELF TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("SELF TEST PASSED");
+    }
+}
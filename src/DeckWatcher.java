@@ -0,0 +1,278 @@
+/**
+ * The {@code DeckWatcher} class keeps a deck directory tallied while it changes.
+ *
+ * <p>It is a long-running mode built on {@link WatchService}. When a deck file
+ * ({@code *.txt}) is created or modified, only that file is read again and only
+ * its PDF is regenerated through {@link SlayTheSpire#generateFile(boolean, String, DeckTally, String)}.
+ * A deck keeps the ID it was given the first time, so its PDF is overwritten
+ * rather than a new one being created on every save, and it is recorded in
+ * the ledger and analytics only the first time.</p>
+ *
+ * <ul>
+ *     <li><strong>Debouncing:</strong> editors often save a file in several
+ *     writes. Every event restarts a short timer for that file, and the file is
+ *     read once the events stop.</li>
+ *
+ *     <li><strong>Per-file state:</strong> only the ID of a deck, its report
+ *     path and the size and modification time of its file are kept in memory;
+ *     the tally is dropped once the report is written. An event for a file
+ *     whose size and time did not change costs nothing beyond that
+ *     comparison.</li>
+ * </ul>
+ *
+ * <p>Usage: {@code --watch <directory> [--debounce ms] [--format list]}.
+ * Existing decks are tallied once at start.</p>
+ */
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class DeckWatcher {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+
+    private final Path directory;
+    private final long debounce_millis;
+    private final PathMatcher deck_matcher = FileSystems.getDefault().getPathMatcher("glob:*.txt");
+    private final Map<Path, WatchedDeck> decks = new ConcurrentHashMap<>();
+    private final Map<Path, Burst> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The state kept for one deck file between changes.
+     */
+    static final class WatchedDeck {
+        final String deck_ID;
+        long size = -1;
+        long modified = -1;
+        String report_path;
+        boolean valid;
+
+        WatchedDeck(String deck_ID) {
+            this.deck_ID = deck_ID;
+        }
+    }
+
+    /**
+     * The debounced re-tally of one burst of events. It is the value in
+     * {@code pending} before it is scheduled, so when it runs it removes its
+     * own entry and never that of a newer burst.
+     */
+    private final class Burst implements Runnable {
+        final Path deck_file;
+        volatile ScheduledFuture<?> future;
+
+        Burst(Path deck_file) {
+            this.deck_file = deck_file;
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            pending.remove(deck_file, this);
+            retally(deck_file);
+        }
+    }
+
+    /**
+     * Creates a watcher for one directory.
+     *
+     * @param directory the directory that holds the deck files
+     * @param debounce_millis how long a file must be quiet before it is read
+     * @param threads how many decks may be re-tallied at the same time
+     */
+    public DeckWatcher(Path directory, long debounce_millis, int threads) {
+        this.directory = directory.toAbsolutePath();
+        this.debounce_millis = debounce_millis;
+        this.scheduler = Executors.newScheduledThreadPool(threads);
+    }
+
+    /**
+     * Tallies the decks already in the directory, then watches it until the
+     * thread is interrupted.
+     *
+     * @throws IOException if the directory cannot be watched
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            rescan();
+            System.out.println("Watching " + directory + " for deck changes...");
+
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan(); //events were lost, compare every file
+                        continue;
+                    }
+                    Path deck_file = directory.resolve((Path) event.context());
+                    if (!deck_matcher.matches(deck_file.getFileName())) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        forget(deck_file);
+                    } else {
+                        schedule(deck_file);
+                    }
+                }
+                if (!key.reset()) {
+                    System.out.println("Watched directory is no longer accessible: " + directory);
+                    return;
+                }
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the number of decks that are currently tracked.
+     *
+     * @return the deck count
+     */
+    public int getDeckCount() {
+        return decks.size();
+    }
+
+    /**
+     * Schedules every deck file in the directory; unchanged ones are skipped
+     * when their turn comes.
+     */
+    private void rescan() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.txt")) {
+            for (Path deck_file : stream) {
+                schedule(deck_file);
+            }
+        }
+    }
+
+    /**
+     * Restarts the debounce timer of a file.
+     */
+    private void schedule(Path deck_file) {
+        Burst next = new Burst(deck_file);
+        Burst previous = pending.put(deck_file, next);
+        if (previous != null) {
+            previous.cancel();
+        }
+        next.future = scheduler.schedule(next, debounce_millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops the state of a deleted deck. Its last PDF is kept.
+     */
+    private void forget(Path deck_file) {
+        Burst previous = pending.remove(deck_file);
+        if (previous != null) {
+            previous.cancel();
+        }
+        decks.remove(deck_file);
+    }
+
+    /**
+     * Reads a deck again if its size or modification time changed and
+     * regenerates its PDF under the same deck ID.
+     */
+    private void retally(Path deck_file) {
+        if (!Files.isRegularFile(deck_file)) { //before the deck gets an ID: it was deleted or renamed meanwhile
+            return;
+        }
+        WatchedDeck deck = decks.computeIfAbsent(deck_file, key -> new WatchedDeck(DeckIDGenerator.generateUniqueNumber()));
+
+        synchronized (deck) { //a new burst may start while the last one is still being tallied
+            try {
+                if (!Files.isRegularFile(deck_file)) { //deleted while the last burst was tallied
+                    return;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(deck_file, BasicFileAttributes.class);
+                long size = attributes.size();
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (size == deck.size && modified == deck.modified) {
+                    return; //unchanged
+                }
+
+                DeckTally tally = new DeckTally();
+                boolean file_to_generate = SlayTheSpire.readTxtFile(deck_file.toString(), tally);
+
+                String report_path = deck.report_path == null
+                        ? SlayTheSpire.generateFile(file_to_generate, directory.toString(), tally, deck.deck_ID)
+                        : SlayTheSpire.regenerateFile(file_to_generate, directory.toString(), tally, deck.deck_ID); //counted once
+                if (deck.report_path != null && !deck.report_path.equals(report_path)) {
+                    for (ReportWriter writer : SlayTheSpire.getReportWriters()) { //deck switched between report and VOID
+                        Files.deleteIfExists(Paths.get(SlayTheSpire.reportPath(deck.valid, directory.toString(), deck.deck_ID, writer)));
+                    }
+                }
+
+                deck.size = size;
+                deck.modified = modified;
+                deck.report_path = report_path;
+                deck.valid = file_to_generate;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Entry point of the watch mode.
+     *
+     * @param args {@code [--watch] <directory> [--debounce ms] [--threads N] [--format pdf,csv,jsonl,bin]}
+     */
+    public static void main(String[] args) {
+        String location = null;
+        long debounce = DEFAULT_DEBOUNCE_MILLIS;
+        int threads = 2;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--watch")) {
+                continue;
+            } else if (args[i].equals("--debounce") && i + 1 < args.length) {
+                debounce = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                SlayTheSpire.setReportWriters(ReportWriter.forFormats(args[++i]));
+            } else {
+                location = args[i];
+            }
+        }
+
+        if (location == null || !Files.isDirectory(Paths.get(location))) {
+            System.out.println("Usage: --watch <directory> [--debounce ms] [--threads N] [--format pdf,csv,jsonl,bin]");
+            return;
+        }
+
+        try {
+            new DeckWatcher(Paths.get(location), debounce, threads).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,26 +4,23 @@
  * include details such as deck ID, total card cost, a list of invalid cards,
  * and a histogram representing card values.
  *
- * <p>There are two primary methods: {@link #generatePDF(String, String, int, HashMap, List)}
+ * <p>There are two primary methods: {@link #generatePDF(String, String, int, CardTable, List)}
  * for generating a detailed report with a histogram, and {@link #generateVoidPDF(String, String)}
  * for creating a simple report indicating that the deck is void.</p>
  *
+ * <p>The documents are rendered by the shared {@link PdfRenderEngine}, which
+ * keeps its fonts between reports. {@link #openCombinedPDF(String)} collects
+ * many decks in a single PDF with a table of contents.</p>
+ *
  * <p>PDF generation handles exceptions gracefully, ensuring a user-friendly experience
  * even when issues arise during file operations.</p>
  */
 
 
-import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
-import com.itextpdf.text.Paragraph;
-import com.itextpdf.text.pdf.PdfWriter;
-import com.itextpdf.text.pdf.PdfContentByte;
-import com.itextpdf.text.BaseColor;
-import com.itextpdf.text.pdf.BaseFont;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
-import java.util.Random;
 
 import java.util.List;
 
@@ -45,82 +42,41 @@ public class GeneratePDFFile {
      * @param file_path the path where the generated PDF will be saved
      * @param deck_ID the unique identifier for the deck
      * @param total_cost the total energy cost of the cards in the deck
-     * @param cardDeck a {@link HashMap} containing card names as keys and
-     *                 their corresponding costs as values
+     * @param cardDeck a {@link CardTable} containing card names and their
+     *                 corresponding costs
      * @param invalid_cards a {@link List} of invalid card names that were
      *                      encountered during processing
      * @throws DocumentException if an error occurs while creating the PDF
      * @throws IOException if an error occurs while writing to the file
      */
-    public static void generatePDF(String file_path, String deck_ID, int total_cost, HashMap<String, Integer> cardDeck, List<String> invalid_cards){
+    public static void generatePDF(String file_path, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards){
 
         try{
-            Document document = new Document();
-
-            PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(file_path));
-            document.open();
-
-            System.out.println(file_path);
-
-            //include deck ID, total cost of cards, and histogram in PDF report
-            document.add(new Paragraph("======================================"));
-            document.add(new Paragraph("SLAY THE SPIRE DECK COST TALLY REPORT"));
-            document.add(new Paragraph("======================================"));
-            document.add(new Paragraph("Deck ID: " + deck_ID));
-            document.add(new Paragraph("Total Cost: " + total_cost +" energy"));
-            //list any invalid cards
-            document.add(new Paragraph("---------------"));
-            document.add(new Paragraph("Invalid Cards:"));
-            document.add(new Paragraph("---------------"));
-
-            for(int i = 0; i < invalid_cards.size(); i++){
-                document.add(new Paragraph(invalid_cards.get(i)));
-            }
-            document.add(new Paragraph("--------------------"));
-            document.add(new Paragraph("Histogram of Cards:"));
-            document.add(new Paragraph("--------------------"));
-
-            //creating the Histogram from the HashMap
-            PdfContentByte canvas = writer.getDirectContent();
-            float bar_width = 50f;
-            float space_between_bars = 20f;
-            float startX = 50f; //staring position for bars
-            float startY = 200f;
-
-            Random rand = new Random();
-            BaseFont bf = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.CP1252, BaseFont.NOT_EMBEDDED);
-            canvas.setFontAndSize(bf, 10); // Set font and size
-
-            for(String key : cardDeck.keySet()) { //retrieve data from hashmap
-
-                int value = cardDeck.get(key);
-                float bar_height = value * 5;
-
-                //generates a random color for each bar
-                BaseColor color = new BaseColor(rand.nextInt(256), rand.nextInt(256), rand.nextInt(256));
-                canvas.setColorFill(color);
-                canvas.rectangle(startX, startY, bar_width, bar_height);
-                canvas.fill();
-
-                Paragraph barLabel = new Paragraph(key + " (" + value + " energy )"); //labeling bars
-                barLabel.getFont().setColor(color); // Set the color of the label
-                barLabel.setSpacingAfter(10);
-
-                document.add(barLabel);
-
-                // Move the starting x position for the next bar
-                startX += bar_width + space_between_bars;
-            }
-
-            document.close();
-            System.out.println("PDF histogram generated at: " + file_path);
+            writePDFFile(file_path, deck_ID, total_cost, cardDeck, invalid_cards);
         }
-        catch (DocumentException | IOException e) {
+        catch (IOException e) {
+            DeckMetrics.RENDER_ERRORS.increment();
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * Generates a PDF report from a {@link HashMap} of card names to costs.
+     *
+     * @param file_path the path where the generated PDF will be saved
+     * @param deck_ID the unique identifier for the deck
+     * @param total_cost the total energy cost of the cards in the deck
+     * @param cardDeck a {@link HashMap} containing card names as keys and
+     *                 their corresponding costs as values
+     * @param invalid_cards a {@link List} of invalid card names that were
+     *                      encountered during processing
+     * @see #generatePDF(String, String, int, CardTable, List)
+     */
+    public static void generatePDF(String file_path, String deck_ID, int total_cost, HashMap<String, Integer> cardDeck, List<String> invalid_cards){
+        generatePDF(file_path, deck_ID, total_cost, CardTable.fromMap(cardDeck), invalid_cards);
+    }
+
     /**
      * Generates a simple PDF report indicating that the deck is void.
      *
@@ -137,21 +93,105 @@ public class GeneratePDFFile {
     public static void generateVoidPDF(String file_path, String deck_ID){
 
         try{
-            Document document = new Document();
-
-            PdfWriter.getInstance(document, new FileOutputStream(file_path)); //write to file
-            document.open();
-            document.add(new Paragraph("======================================"));
-            document.add(new Paragraph("SLAY THE SPIRE DECK COST TALLY REPORT"));
-            document.add(new Paragraph("======================================"));
-            document.add(new Paragraph("Deck ID: " + deck_ID));
-            document.add(new Paragraph("VOID"));
-            document.close();
-
-            System.out.println("PDF generated!");
+            writeVoidPDFFile(file_path, deck_ID);
         }
         catch (Exception e){
+            DeckMetrics.RENDER_ERRORS.increment();
             e.printStackTrace();
         }
     }
+
+    /**
+     * Writes a report PDF to a file like {@link #generatePDF(String, String, int, CardTable, List)},
+     * but lets errors through, for {@link PdfReportWriter}.
+     *
+     * @param file_path the path where the generated PDF will be saved
+     * @param deck_ID the unique identifier for the deck
+     * @param total_cost the total energy cost of the cards in the deck
+     * @param cardDeck the card names and their costs
+     * @param invalid_cards the invalid card lines
+     * @throws IOException if the PDF cannot be created or written
+     */
+    static void writePDFFile(String file_path, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        long start = System.nanoTime();
+        System.out.println(file_path);
+
+        try (OutputStream out = openFile(file_path)) {
+            writePDF(out, deck_ID, total_cost, cardDeck, invalid_cards);
+        }
+        DeckMetrics.recordRender(file_path, start);
+
+        System.out.println("PDF histogram generated at: " + file_path);
+    }
+
+    /**
+     * Writes a VOID PDF to a file like {@link #generateVoidPDF(String, String)},
+     * but lets errors through, for {@link PdfReportWriter}.
+     *
+     * @param file_path the path where the generated PDF will be saved
+     * @param deck_ID the unique identifier for the deck
+     * @throws IOException if the PDF cannot be created or written
+     */
+    static void writeVoidPDFFile(String file_path, String deck_ID) throws IOException {
+        long start = System.nanoTime();
+        try (OutputStream out = openFile(file_path)) {
+            writeVoidPDF(out, deck_ID); //write to file
+        }
+        DeckMetrics.recordRender(file_path, start);
+
+        System.out.println("PDF generated!");
+    }
+
+    /**
+     * Writes a report PDF to a stream that stays open, for {@link PdfReportWriter}.
+     *
+     * @param out where the PDF is written
+     * @param deck_ID the unique identifier for the deck
+     * @param total_cost the total energy cost of the cards in the deck
+     * @param cardDeck the card names and their costs
+     * @param invalid_cards the invalid card lines
+     * @throws IOException if the PDF cannot be created or written
+     */
+    static void writePDF(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        try {
+            PdfRenderEngine.shared().renderReport(out, deck_ID, total_cost, cardDeck, invalid_cards);
+        } catch (DocumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes a VOID PDF to a stream that stays open, for {@link PdfReportWriter}.
+     *
+     * @param out where the PDF is written
+     * @param deck_ID the unique identifier for the deck
+     * @throws IOException if the PDF cannot be created or written
+     */
+    static void writeVoidPDF(OutputStream out, String deck_ID) throws IOException {
+        try {
+            PdfRenderEngine.shared().renderVoid(out, deck_ID);
+        } catch (DocumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Opens a combined report that collects many decks in one PDF file, one
+     * page per deck, with a table of contents at the front.
+     *
+     * @param file_path the path where the combined PDF will be saved
+     * @return the open combined report; close it to finish the file
+     * @throws DocumentException if an error occurs while creating the PDF
+     * @throws IOException if the file cannot be created
+     */
+    public static PdfRenderEngine.CombinedReport openCombinedPDF(String file_path) throws DocumentException, IOException {
+        return PdfRenderEngine.shared().openCombined(openFile(file_path));
+    }
+
+    /**
+     * Opens a buffered stream to the file.
+     */
+    private static OutputStream openFile(String file_path) throws IOException {
+        return ReportWriter.openFile(file_path);
+    }
 }
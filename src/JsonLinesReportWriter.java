@@ -0,0 +1,99 @@
+/**
+ * The {@code JsonLinesReportWriter} class is a {@link ReportWriter} that
+ * writes a deck as one JSON object on one line, so the reports of many decks
+ * can be concatenated into a JSON Lines stream.
+ *
+ * <pre>
+ *     {"deck_id":"123456789","status":"report","total_cost":17,"cards":[{"name":"Strike","cost":5,"count":5}],"invalid":["Bash:9"]}
+ *     {"deck_id":"987654321","status":"void"}
+ * </pre>
+ *
+ * <p>The file is UTF-8 and ends with a line break.</p>
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class JsonLinesReportWriter implements ReportWriter {
+
+    @Override
+    public String format() {
+        return "jsonl";
+    }
+
+    @Override
+    public String extension() {
+        return ".jsonl";
+    }
+
+    @Override
+    public void writeReport(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("{\"deck_id\":");
+        writeString(writer, deck_ID);
+        writer.write(",\"status\":\"report\",\"total_cost\":" + total_cost + ",\"cards\":[");
+        for (int id = 0; id < cardDeck.size(); id++) {
+            writer.write(id == 0 ? "{\"name\":" : ",{\"name\":");
+            writeString(writer, cardDeck.name(id));
+            writer.write(",\"cost\":" + cardDeck.cost(id) + ",\"count\":" + cardDeck.count(id) + "}");
+        }
+        writer.write("],\"invalid\":[");
+        for (int i = 0; i < invalid_cards.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeString(writer, invalid_cards.get(i));
+        }
+        writer.write("]}\n");
+        writer.flush();
+    }
+
+    @Override
+    public void writeVoid(OutputStream out, String deck_ID) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("{\"deck_id\":");
+        writeString(writer, deck_ID);
+        writer.write(",\"status\":\"void\"}\n");
+        writer.flush();
+    }
+
+    /**
+     * Writes a JSON string literal, escaping quotes, backslashes and control
+     * characters.
+     */
+    static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ * The {@code LargeDeckTally} class tallies decks that are too large for the
+ * normal limits, such as aggregated card usage dumps with millions of lines
+ * and many distinct card names, in a fixed memory budget.
+ *
+ * <p>Cards are summed in the {@link CardTable} of the tally as usual. When the
+ * table grows past the memory budget, its cards are sorted by name and
+ * written to a run file in a spill directory, and the table is cleared.
+ * {@link #finish(Path)} merges the runs, k-way with a priority queue over the
+ * head of each run, into one stream of card totals sorted by name, which can
+ * be written to a TSV file. Memory stays at the budget plus one read buffer
+ * per run.</p>
+ *
+ * <p>After {@code finish} the card table holds the summary used for the
+ * report: the most expensive cards and one "Other" entry for the rest, so the
+ * total cost of the table is the total of the whole deck. Invalid lines are
+ * sampled (see {@link DeckTally}) instead of all being kept.</p>
+ *
+ * <p>Usage: {@code --large <deck file> [--max-lines N|none] [--max-invalid N|none]
+ * [--memory-mb N] [--sample N] [--totals file.tsv] [--spill-dir directory]
+ * [--threads N] [--format list]}. Both limits are off unless they are given. With more than
+ * one thread the file is read by a {@link ParallelDeckParser}.</p>
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+
+public class LargeDeckTally extends DeckTally {
+
+    public static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_INVALID_SAMPLE = 100;
+
+    static final int SUMMARY_CARDS = PdfRenderEngine.MAX_PER_CARD_BARS - 1; //plus "Other" still draws one bar per card
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_ADDS_PER_RUN = Integer.MAX_VALUE / 6; //keeps the int costs of a run from overflowing
+
+    private final Path spill_dir;
+    private final boolean own_spill_dir;
+    private final long memory_budget;
+    private final List<Path> runs = new ArrayList<>();
+    private long adds_since_spill = 0;
+
+    private long total_cost = 0;
+    private long distinct_cards = 0;
+
+    /**
+     * A sorted source of card totals: a spilled run file or the cards still
+     * in the table.
+     */
+    private abstract static class Run {
+        byte[] name;
+        long cost;
+        long count;
+
+        /**
+         * Moves to the next card.
+         *
+         * @return {@code false} if the run is used up
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    private static final class FileRun extends Run {
+        private final DataInputStream in;
+
+        FileRun(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            name = new byte[length];
+            in.readFully(name);
+            cost = in.readLong();
+            count = in.readLong();
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class TableRun extends Run {
+        private final CardTable table;
+        private final int[] order;
+        private int next = 0;
+
+        TableRun(CardTable table, int[] order) {
+            this.table = table;
+            this.order = order;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == order.length) {
+                return false;
+            }
+            int id = order[next++];
+            name = table.nameBytes(id);
+            cost = table.cost(id);
+            count = table.count(id);
+            return true;
+        }
+    }
+
+    /**
+     * Creates a tally that spills to its own temporary directory, which is
+     * removed again by {@link #finish(Path)} or {@link #close()}.
+     *
+     * @param memory_budget the most bytes the card table may use before it is spilled
+     * @param invalid_sample_size the most invalid lines kept
+     * @throws IOException if the temporary directory cannot be created
+     */
+    public LargeDeckTally(long memory_budget, int invalid_sample_size) throws IOException {
+        this(Files.createTempDirectory("deck-spill"), true, memory_budget, invalid_sample_size);
+    }
+
+    /**
+     * Creates a tally that spills to the given directory.
+     *
+     * @param spill_dir an existing directory for the run files
+     * @param memory_budget the most bytes the card table may use before it is spilled
+     * @param invalid_sample_size the most invalid lines kept
+     */
+    public LargeDeckTally(Path spill_dir, long memory_budget, int invalid_sample_size) {
+        this(spill_dir, false, memory_budget, invalid_sample_size);
+    }
+
+    private LargeDeckTally(Path spill_dir, boolean own_spill_dir, long memory_budget, int invalid_sample_size) {
+        super(invalid_sample_size);
+        if (memory_budget < 1) {
+            throw new IllegalArgumentException("memory_budget must be at least 1 byte");
+        }
+        this.spill_dir = spill_dir;
+        this.own_spill_dir = own_spill_dir;
+        this.memory_budget = memory_budget;
+    }
+
+    @Override
+    int addCard(String key, int value) {
+        cardDeck.add(key, value);
+        afterAdd();
+        return -1; //ids start over after a spill
+    }
+
+    @Override
+    int addCard(ByteBuffer buf, int start, int end, int value) {
+        cardDeck.add(buf, start, end, value);
+        afterAdd();
+        return -1;
+    }
+
+    @Override
+    void addAll(CardTable part) {
+        if ((long) cardDeck.totalCost() + part.totalCost() > Integer.MAX_VALUE
+                || adds_since_spill + part.totalCount() >= MAX_ADDS_PER_RUN) {
+            spillUnchecked(); //the merged costs or counts could overflow
+        }
+        cardDeck.addAll(part);
+        adds_since_spill += part.totalCount();
+        if (cardDeck.usedBytes() > memory_budget) {
+            spillUnchecked();
+        }
+    }
+
+    private void afterAdd() {
+        if (++adds_since_spill >= MAX_ADDS_PER_RUN || cardDeck.usedBytes() > memory_budget) {
+            spillUnchecked();
+        }
+    }
+
+    private void spillUnchecked() {
+        try {
+            spill();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //addCard is called from the tokenizer, which cannot throw here
+        }
+    }
+
+    /**
+     * Writes the cards in the table to a new run file, sorted by name, and
+     * clears the table.
+     */
+    private void spill() throws IOException {
+        int[] order = sortedIds();
+        Path run = spill_dir.resolve("run_" + runs.size() + ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+            for (int id : order) {
+                byte[] name = cardDeck.nameBytes(id);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeLong(cardDeck.cost(id));
+                out.writeLong(cardDeck.count(id));
+            }
+        }
+        runs.add(run);
+        cardDeck.clear();
+        adds_since_spill = 0;
+        DeckMetrics.SPILL_RUNS.increment();
+    }
+
+    /**
+     * Merges the spilled runs and the cards still in the table, then replaces
+     * the table with the report summary. Run files are removed afterwards.
+     *
+     * @param totals_file a file for every card total, as {@code name\tcost\tcount}
+     *                    lines sorted by name, or {@code null}
+     * @throws IOException if a run or the totals file cannot be read or written
+     */
+    public void finish(Path totals_file) throws IOException {
+        List<Run> sources = new ArrayList<>();
+        PriorityQueue<Run> heads = new PriorityQueue<>((a, b) -> Arrays.compareUnsigned(a.name, b.name));
+        byte[][] top_names = new byte[SUMMARY_CARDS][];
+        long[] top_costs = new long[SUMMARY_CARDS];
+        int top_used = 0;
+
+        try (OutputStream totals = totals_file == null ? null
+                : new BufferedOutputStream(Files.newOutputStream(totals_file), BUFFER_SIZE)) {
+            sources.add(new TableRun(cardDeck, sortedIds()));
+            for (Path run : runs) {
+                sources.add(new FileRun(run));
+            }
+            for (Run source : sources) {
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+
+            total_cost = 0;
+            distinct_cards = 0;
+            while (!heads.isEmpty()) {
+                Run first = heads.poll();
+                byte[] name = first.name;
+                long cost = first.cost;
+                long count = first.count;
+                if (first.advance()) {
+                    heads.add(first);
+                }
+                while (!heads.isEmpty() && Arrays.equals(heads.peek().name, name)) { //same card in other runs
+                    Run same = heads.poll();
+                    cost += same.cost;
+                    count += same.count;
+                    if (same.advance()) {
+                        heads.add(same);
+                    }
+                }
+
+                total_cost += cost;
+                distinct_cards++;
+                if (totals != null) {
+                    totals.write(name);
+                    totals.write(('\t' + Long.toString(cost) + '\t' + count + '\n').getBytes(StandardCharsets.US_ASCII));
+                }
+
+                //keep the most expensive cards, highest first
+                if (top_used < SUMMARY_CARDS || cost > top_costs[top_used - 1]) {
+                    int pos = top_used < SUMMARY_CARDS ? top_used++ : top_used - 1;
+                    while (pos > 0 && top_costs[pos - 1] < cost) {
+                        top_names[pos] = top_names[pos - 1];
+                        top_costs[pos] = top_costs[pos - 1];
+                        pos--;
+                    }
+                    top_names[pos] = name;
+                    top_costs[pos] = cost;
+                }
+            }
+        } finally {
+            for (Run source : sources) {
+                source.close();
+            }
+            close();
+        }
+
+        cardDeck.clear();
+        long top_total = 0;
+        for (int i = 0; i < top_used; i++) {
+            cardDeck.add(ByteBuffer.wrap(top_names[i]), 0, top_names[i].length, clamp(top_costs[i]));
+            top_total += top_costs[i];
+        }
+        if (distinct_cards > top_used) {
+            cardDeck.add("Other (" + (distinct_cards - top_used) + " cards)", clamp(total_cost - top_total));
+        }
+    }
+
+    /**
+     * Removes the run files, and the spill directory if the tally created it.
+     *
+     * @throws IOException if a file cannot be removed
+     */
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        if (own_spill_dir) {
+            Files.deleteIfExists(spill_dir);
+        }
+    }
+
+    /**
+     * Returns the total cost of all cards, available after {@link #finish(Path)}.
+     *
+     * @return the exact total, which may not fit the {@code int} total of the table
+     */
+    public long getTotalCost() {
+        return total_cost;
+    }
+
+    /**
+     * Returns the number of distinct card names, available after {@link #finish(Path)}.
+     *
+     * @return the distinct card count
+     */
+    public long getDistinctCards() {
+        return distinct_cards;
+    }
+
+    /**
+     * Returns how many run files were written so far.
+     *
+     * @return the spill count
+     */
+    public int getSpillCount() {
+        return runs.size();
+    }
+
+    /**
+     * Returns the ids of the table sorted by name bytes. Sorting ints with a
+     * merge sort avoids boxing millions of ids.
+     */
+    private int[] sortedIds() {
+        int[] ids = new int[cardDeck.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        int[] buffer = new int[ids.length];
+        for (int width = 1; width < ids.length; width *= 2) {
+            for (int from = 0; from < ids.length - width; from += 2 * width) {
+                int mid = from + width;
+                int to = Math.min(from + 2 * width, ids.length);
+                int a = from;
+                int b = mid;
+                int out = from;
+                while (a < mid && b < to) {
+                    buffer[out++] = cardDeck.compareNames(ids[a], ids[b]) <= 0 ? ids[a++] : ids[b++];
+                }
+                while (a < mid) {
+                    buffer[out++] = ids[a++];
+                }
+                while (b < to) {
+                    buffer[out++] = ids[b++];
+                }
+                System.arraycopy(buffer, from, ids, from, to - from);
+            }
+        }
+        return ids;
+    }
+
+    private static int clamp(long cost) {
+        return (int) Math.min(cost, Integer.MAX_VALUE);
+    }
+
+    private static long parseLimit(String value) {
+        return value.equals("none") ? DeckTokenizer.NO_LIMIT : Long.parseLong(value);
+    }
+
+    /**
+     * Entry point of the large-input mode.
+     *
+     * @param args {@code [--large] <deck file> [--max-lines N|none] [--max-invalid N|none]
+     *             [--memory-mb N] [--sample N] [--totals file.tsv] [--spill-dir directory]
+     *             [--threads N] [--format pdf,csv,jsonl,bin]}
+     */
+    public static void main(String[] args) {
+        String filePath = null;
+        String totals_path = null;
+        String spill_path = null;
+        long max_lines = DeckTokenizer.NO_LIMIT;
+        long max_invalid = DeckTokenizer.NO_LIMIT;
+        long memory_budget = DEFAULT_MEMORY_BYTES;
+        int sample = DEFAULT_INVALID_SAMPLE;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--large")) {
+                continue;
+            } else if (args[i].equals("--max-lines") && i + 1 < args.length) {
+                max_lines = parseLimit(args[++i]);
+            } else if (args[i].equals("--max-invalid") && i + 1 < args.length) {
+                max_invalid = parseLimit(args[++i]);
+            } else if (args[i].equals("--memory-mb") && i + 1 < args.length) {
+                memory_budget = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if (args[i].equals("--sample") && i + 1 < args.length) {
+                sample = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--totals") && i + 1 < args.length) {
+                totals_path = args[++i];
+            } else if (args[i].equals("--spill-dir") && i + 1 < args.length) {
+                spill_path = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                SlayTheSpire.setReportWriters(ReportWriter.forFormats(args[++i]));
+            } else {
+                filePath = args[i];
+            }
+        }
+
+        if (filePath == null) {
+            System.out.println("Usage: --large <deck file> [--max-lines N|none] [--max-invalid N|none] "
+                    + "[--memory-mb N] [--sample N] [--totals file.tsv] [--spill-dir directory] [--threads N] [--format list]");
+            return;
+        }
+
+        try {
+            LargeDeckTally tally = spill_path == null ? new LargeDeckTally(memory_budget, sample)
+                    : new LargeDeckTally(Files.createDirectories(Paths.get(spill_path)), memory_budget, sample);
+            DeckTokenizer tokenizer = new DeckTokenizer(tally, max_lines, max_invalid);
+            ParallelDeckParser parser = null;
+            ForkJoinPool pool = null;
+            if (threads > 1) {
+                pool = new ForkJoinPool(threads);
+                parser = new ParallelDeckParser(pool, max_lines, max_invalid, ParallelDeckParser.DEFAULT_CHUNK_SIZE);
+            }
+
+            long start = System.nanoTime();
+            boolean file_to_generate;
+            try {
+                file_to_generate = parser != null ? parser.parseFile(filePath, tally) : tokenizer.parseFile(filePath);
+            } catch (UncheckedIOException e) {
+                tally.close();
+                throw e.getCause(); //a spill failed
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+            }
+            long lines;
+            if (parser != null) {
+                DeckMetrics.recordParse(parser, file_to_generate, System.nanoTime() - start);
+                lines = parser.getLineCount();
+            } else {
+                DeckMetrics.recordParse(tokenizer, file_to_generate, System.nanoTime() - start);
+                lines = tokenizer.getLineCount();
+            }
+
+            int spills = tally.getSpillCount();
+            if (file_to_generate) {
+                tally.finish(totals_path == null ? null : Paths.get(totals_path));
+            } else {
+                tally.close();
+            }
+
+            Path directory = Paths.get(filePath).toAbsolutePath().getParent();
+            String report_path = SlayTheSpire.generateFile(file_to_generate, directory.toString(), tally);
+
+            System.out.println("Lines:          " + lines);
+            System.out.println("Invalid lines:  " + tally.getInvalidCount() + " (" + tally.getInvalidCards().size() + " kept)");
+            if (file_to_generate) {
+                System.out.println("Distinct cards: " + tally.getDistinctCards());
+                System.out.println("Total cost:     " + tally.getTotalCost());
+                System.out.println("Spilled runs:   " + spills);
+                if (totals_path != null) {
+                    System.out.println("Totals written: " + totals_path);
+                }
+            }
+            System.out.printf("Elapsed:        %.3f s%n", (System.nanoTime() - start) / 1e9);
+            System.out.println("Report:         " + report_path);
+        } catch (IOException e) {
+            DeckMetrics.PARSE_ERRORS.increment();
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ * The {@code ParallelDeckParser} class reads one large deck file on several
+ * threads.
+ *
+ * <p>The file is cut into byte ranges that each end right after a {@code \n},
+ * so no line (and no {@code \r\n} pair) is split. The chunks are parsed on a
+ * {@link ForkJoinPool}, each by its own {@link DeckTokenizer} into its own
+ * {@link DeckTally}, and the partial tallies are then merged into the target
+ * tally in file order: cards through {@link CardTable#addAll(CardTable)}, so
+ * they get the same ids as a sequential read, and invalid lines one by one in
+ * the order they were read, so a sampling tally keeps the same sample.</p>
+ *
+ * <p>The result is the same as {@link DeckTokenizer} reading the file alone,
+ * including the line and invalid card limits. Those limits are checked before
+ * every line, so a chunk is only merged whole if no limit is hit inside it;
+ * the chunk that hits one is read again, sequentially, into the target tally,
+ * which then stops at exactly the same line. Chunks are parsed in waves of one
+ * chunk per thread, so only a wave of partial tables is held at a time and a
+ * deck that is VOID early is not read to the end.</p>
+ *
+ * <p>Running the class with {@code --selftest [inputs] [seed]} parses random
+ * decks (see {@link DeckTokenizer}) both ways, with random chunk sizes, the
+ * default limits and no limits, and a sampling tally for every other deck; it
+ * exits with status 1 if the result, the cards in id order, the invalid lines
+ * or any of the counts differ.</p>
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelDeckParser {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024; //keeps the int costs of one chunk from overflowing
+    private static final int SCAN_BUFFER = 64 * 1024;
+
+    private final ForkJoinPool pool;
+    private final long max_lines;
+    private final long max_invalid;
+    private final int chunk_size;
+
+    private long line_counter = 0;
+    private long blank_count = 0;
+    private long no_separator_count = 0;
+    private long out_of_range_count = 0;
+    private long skipped_count = 0;
+    private long unknown_card_count = 0;
+    private long cost_mismatch_count = 0;
+    private int chunk_count = 0;
+
+    /**
+     * One byte range of the file and, once parsed, its partial tally.
+     */
+    private static final class Chunk {
+        final long position;
+        final int length;
+        ByteBuffer buf;
+        DeckTally tally;
+        DeckTokenizer tokenizer;
+
+        Chunk(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Parses a range of chunks, splitting it in halves until one chunk is left.
+     */
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+
+        ParseTask(List<Chunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                Chunk chunk = chunks.get(from);
+                chunk.tally = new DeckTally();
+                chunk.tokenizer = new DeckTokenizer(chunk.tally, DeckTokenizer.NO_LIMIT, DeckTokenizer.NO_LIMIT);
+                chunk.tokenizer.parseLines(chunk.buf, 0, chunk.length);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParseTask(chunks, from, mid), new ParseTask(chunks, mid, to));
+        }
+    }
+
+    /**
+     * Creates a parser with the limits of {@code readTxtFile}.
+     *
+     * @param pool the pool the chunks are parsed on
+     */
+    public ParallelDeckParser(ForkJoinPool pool) {
+        this(pool, DeckTokenizer.DEFAULT_MAX_LINES, DeckTokenizer.DEFAULT_MAX_INVALID, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a parser with its own limits and chunk size.
+     *
+     * @param pool the pool the chunks are parsed on
+     * @param max_lines the most lines read before the deck is VOID, or {@link DeckTokenizer#NO_LIMIT}
+     * @param max_invalid the most invalid lines allowed before the deck is VOID, or {@link DeckTokenizer#NO_LIMIT}
+     * @param chunk_size the number of bytes each chunk aims for
+     */
+    public ParallelDeckParser(ForkJoinPool pool, long max_lines, long max_invalid, int chunk_size) {
+        if (max_lines < 0 || max_invalid < 0) {
+            throw new IllegalArgumentException("limits must not be negative");
+        }
+        if (chunk_size < 1 || chunk_size > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunk_size must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.pool = pool;
+        this.max_lines = max_lines;
+        this.max_invalid = max_invalid;
+        this.chunk_size = chunk_size;
+    }
+
+    /**
+     * Reads a whole deck file into the given tally.
+     *
+     * @param filePath the path to the deck file
+     * @param tally the {@link DeckTally} that receives the cards and invalid lines
+     * @return {@code true} if the file passed the line and invalid card limits
+     * @throws IOException if the file cannot be read
+     */
+    public boolean parseFile(String filePath, DeckTally tally) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            return parse(channel, tally);
+        }
+    }
+
+    /**
+     * Reads every line of the channel into the given tally.
+     *
+     * @param channel an open channel; it is read from the start
+     * @param tally the {@link DeckTally} that receives the cards and invalid lines
+     * @return {@code true} if the content passed the line and invalid card limits
+     * @throws IOException if the channel cannot be read
+     */
+    public boolean parse(FileChannel channel, DeckTally tally) throws IOException {
+        List<Chunk> chunks = split(channel);
+        chunk_count = chunks.size();
+        line_counter = 0;
+        blank_count = 0;
+        no_separator_count = 0;
+        out_of_range_count = 0;
+        skipped_count = 0;
+        unknown_card_count = 0;
+        cost_mismatch_count = 0;
+        int wave_size = Math.max(1, pool.getParallelism());
+
+        for (int wave_start = 0; wave_start < chunks.size(); wave_start += wave_size) {
+            List<Chunk> wave = chunks.subList(wave_start, Math.min(wave_start + wave_size, chunks.size()));
+            for (Chunk chunk : wave) {
+                chunk.buf = channel.map(FileChannel.MapMode.READ_ONLY, chunk.position, chunk.length);
+            }
+            pool.invoke(new ParseTask(wave, 0, wave.size()));
+
+            for (Chunk chunk : wave) {
+                if (!merge(chunk, tally)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges one parsed chunk into the tally, or reads it again sequentially
+     * if a limit is hit inside it.
+     *
+     * @return {@code false} if a limit was hit and reading must stop
+     */
+    private boolean merge(Chunk chunk, DeckTally tally) {
+        DeckTokenizer part = chunk.tokenizer;
+        long lines = part.getLineCount();
+        boolean line_limit = line_counter + lines > max_lines;
+        //the invalid limit is checked before each line, so the last line of the chunk only matters for the next one
+        boolean invalid_limit = lines > 0 && tally.getInvalidCount() + part.getInvalidBeforeLastLine() > max_invalid;
+
+        if (line_limit || invalid_limit) {
+            DeckTokenizer rest = new DeckTokenizer(tally, max_lines - line_counter, max_invalid);
+            boolean valid = rest.parseLines(chunk.buf, 0, chunk.length);
+            addCounts(rest);
+            chunk.buf = null;
+            return valid;
+        }
+
+        tally.addAll(chunk.tally.cardDeck);
+        for (String line : chunk.tally.invalid_cards) {
+            tally.addInvalid(line);
+        }
+        tally.addCatalogWarnings(chunk.tally);
+        addCounts(part);
+        chunk.buf = null;
+        chunk.tally = null;
+        chunk.tokenizer = null;
+        return true;
+    }
+
+    private void addCounts(DeckTokenizer part) {
+        line_counter += part.getLineCount();
+        blank_count += part.getBlankCount();
+        no_separator_count += part.getNoSeparatorCount();
+        out_of_range_count += part.getOutOfRangeCount();
+        skipped_count += part.getSkippedCount();
+        unknown_card_count += part.getUnknownCardCount();
+        cost_mismatch_count += part.getCostMismatchCount();
+    }
+
+    /**
+     * Cuts the file into chunks of about {@code chunk_size} bytes that each end
+     * right after a {@code \n}, or at the end of the file.
+     */
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER);
+        long position = 0;
+
+        while (position < size) {
+            long end = Math.min(position + chunk_size, size);
+            while (end < size) { //move the cut forward to just after the next '\n'
+                scan.clear();
+                int read = channel.read(scan, end - 1);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (scan.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end = end + newline;
+                    break;
+                }
+                end = Math.min(end + read, size);
+            }
+            if (end - position > MAX_CHUNK_SIZE) {
+                throw new IOException("line at byte " + position + " is too long for one chunk");
+            }
+            chunks.add(new Chunk(position, (int) (end - position)));
+            position = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the number of lines read by the last parse.
+     *
+     * @return the line count
+     */
+    public long getLineCount() {
+        return line_counter;
+    }
+
+    /**
+     * Returns how many blank lines were recorded as invalid.
+     *
+     * @return the blank line count
+     */
+    public long getBlankCount() {
+        return blank_count;
+    }
+
+    /**
+     * Returns how many lines were recorded as invalid for having no {@code :},
+     * blank lines included.
+     *
+     * @return the count of lines without a separator
+     */
+    public long getNoSeparatorCount() {
+        return no_separator_count;
+    }
+
+    /**
+     * Returns how many lines were recorded as invalid for a cost outside 0..6.
+     *
+     * @return the out of range count
+     */
+    public long getOutOfRangeCount() {
+        return out_of_range_count;
+    }
+
+    /**
+     * Returns how many lines with a {@code :} were skipped without being
+     * recorded.
+     *
+     * @return the skipped line count
+     */
+    public long getSkippedCount() {
+        return skipped_count;
+    }
+
+    /**
+     * Returns how many accepted cards were not found in the catalog.
+     *
+     * @return the unknown card count
+     */
+    public long getUnknownCardCount() {
+        return unknown_card_count;
+    }
+
+    /**
+     * Returns how many accepted cards had a cost the catalog does not give them.
+     *
+     * @return the cost mismatch count
+     */
+    public long getCostMismatchCount() {
+        return cost_mismatch_count;
+    }
+
+    /**
+     * Returns the number of chunks the last file was cut into.
+     *
+     * @return the chunk count
+     */
+    public int getChunkCount() {
+        return chunk_count;
+    }
+
+    /**
+     * Describes everything a parse produced: the result, the cards in id
+     * order, the invalid lines and the counts.
+     */
+    private static String describe(boolean valid, DeckTally tally, long lines, long blank, long no_separator,
+                                   long out_of_range, long skipped) {
+        CardTable deck = tally.getCardDeck();
+        StringBuilder cards = new StringBuilder();
+        for (int id = 0; id < deck.size(); id++) {
+            cards.append(deck.name(id)).append('=').append(deck.cost(id)).append('x').append(deck.count(id)).append(' ');
+        }
+        return valid + " cards [" + cards + "] invalid " + tally.getInvalidCount() + " " + tally.getInvalidCards()
+                + " lines " + lines + " blank " + blank + " no separator " + no_separator + " out of range " + out_of_range
+                + " skipped " + skipped;
+    }
+
+    /**
+     * Runs the sequential equivalence self test.
+     *
+     * @param args {@code --selftest [inputs] [seed]}
+     * @throws IOException if the temporary deck file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || !args[0].equals("--selftest")) {
+            System.out.println("Usage: --selftest [inputs] [seed]");
+            return;
+        }
+        int inputs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        long[][] limits = {{DeckTokenizer.DEFAULT_MAX_LINES, DeckTokenizer.DEFAULT_MAX_INVALID},
+                {DeckTokenizer.NO_LIMIT, DeckTokenizer.NO_LIMIT}};
+
+        Random random = new Random(seed);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Path deck_file = Files.createTempFile("deck-selftest", ".txt");
+        int failures = 0;
+        long chunks = 0;
+        try {
+            for (int input = 0; input < inputs; input++) {
+                byte[] content = DeckTokenizer.randomDeck(random, input);
+                Files.write(deck_file, content);
+                for (long[] limit : limits) {
+                    //from one line per chunk to the whole file in one
+                    int chunk_size = 1 + random.nextInt(Math.min(content.length + 1, MAX_CHUNK_SIZE));
+                    int sample_size = input % 2 == 0 ? DeckTally.KEEP_ALL : 1 + random.nextInt(8);
+
+                    DeckTally expected_tally = new DeckTally(sample_size);
+                    DeckTokenizer tokenizer = new DeckTokenizer(expected_tally, limit[0], limit[1]);
+                    boolean expected_valid = tokenizer.parseFile(deck_file.toString());
+                    String expected = describe(expected_valid, expected_tally, tokenizer.getLineCount(),
+                            tokenizer.getBlankCount(), tokenizer.getNoSeparatorCount(), tokenizer.getOutOfRangeCount(),
+                            tokenizer.getSkippedCount());
+
+                    DeckTally actual_tally = new DeckTally(sample_size);
+                    ParallelDeckParser parser = new ParallelDeckParser(pool, limit[0], limit[1], chunk_size);
+                    boolean actual_valid = parser.parseFile(deck_file.toString(), actual_tally);
+                    String actual = describe(actual_valid, actual_tally, parser.getLineCount(), parser.getBlankCount(),
+                            parser.getNoSeparatorCount(), parser.getOutOfRangeCount(), parser.getSkippedCount());
+                    chunks += parser.getChunkCount();
+
+                    if (!expected.equals(actual)) {
+                        failures++;
+                        Path kept = Files.createTempFile("deck-selftest-failed", ".txt");
+                        Files.write(kept, content);
+                        System.out.println("MISMATCH input " + input + " (limits " + (limit[0] == DeckTokenizer.NO_LIMIT ? "off" : "on")
+                                + ", chunk size " + chunk_size + ", sample " + sample_size + "), kept in " + kept
+                                + ": expected " + expected + ", got " + actual);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(deck_file);
+            pool.shutdown();
+        }
+
+        System.out.println("Inputs:     " + inputs + " (seed " + seed + "), limits on and off, " + chunks + " chunks");
+        System.out.println("Mismatches: " + failures);
+        if (failures > 0) {
+            System.out.println("SELF TEST FAILED");
+            System.exit(1);
+        }
+        System.out.println("SELF TEST PASSED");
+    }
+}
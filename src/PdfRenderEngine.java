@@ -0,0 +1,573 @@
+/**
+ * The {@code PdfRenderEngine} class is the shared rendering pipeline behind
+ * {@link GeneratePDFFile}.
+ *
+ * <p>The fonts are created once per engine and reused for every report,
+ * instead of calling {@link BaseFont#createFont} for each deck. Reports are
+ * written to any {@link OutputStream}, so a caller can render into a file, a
+ * network response or an archive entry.</p>
+ *
+ * <p>A {@link CombinedReport} streams many deck reports into one PDF, each
+ * deck starting on a new page, and finishes with a table of contents that is
+ * moved to the front of the document. Pages are flushed as they are
+ * completed, so the memory used does not grow with the number of decks. The
+ * footer of the combined report is drawn once into a {@link PdfTemplate} and
+ * placed on every page by reference from a page event, so pages that a long
+ * deck continues on get it too.</p>
+ *
+ * <p>The histogram has several {@link HistogramMode}s. Drawing one bar per
+ * card only fits about eight cards on a page, so large decks are binned by
+ * cost or reduced to the top cards plus "other". The number of drawing
+ * operations then depends on the number of bins, not the number of cards.
+ * Bars are drawn in rows below the report text, each row in a band reserved
+ * above its labels, and a row that does not fit on the page starts a new
+ * one. The mode is set with
+ * {@link #setHistogramMode(HistogramMode)} or the {@code deck.histogram}
+ * system property ({@code auto}, {@code per_card}, {@code by_cost},
+ * {@code top_n}; an unknown name falls back to {@code auto}).</p>
+ *
+ * <p>An engine may be used from several threads; each report has its own
+ * {@link Document} and {@link PdfWriter}.</p>
+ */
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Chunk;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfPageEventHelper;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PdfWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class PdfRenderEngine {
+
+    private static final String RULE = "======================================";
+    private static final String TITLE = "SLAY THE SPIRE DECK COST TALLY REPORT";
+
+    private static final float BAR_WIDTH = 50f;
+    private static final float SPACE_BETWEEN_BARS = 20f;
+    private static final float START_X = 50f; //staring position for bars
+    private static final float MAX_BAR_HEIGHT = 150f;
+    private static final float BAR_AREA_HEIGHT = MAX_BAR_HEIGHT + 20f; //band reserved for a row of bars
+
+    static final int MAX_PER_CARD_BARS = 8; //AUTO switches to TOP_N above this
+    static final int TOP_N = 9; //bars for the top cards, plus one for "other"
+    static final int MAX_COST_BINS = 12;
+
+    /**
+     * How the histogram groups the cards of a deck.
+     */
+    public enum HistogramMode {
+        /** One bar per card up to {@link #MAX_PER_CARD_BARS} cards, {@link #TOP_N} above. */
+        AUTO,
+        /** One bar per card, height is the summed cost. */
+        PER_CARD,
+        /** One bar per cost range, height is the number of cards in the range. */
+        BY_COST,
+        /** One bar for each of the most expensive cards and one for the rest. */
+        TOP_N;
+
+        /**
+         * Returns the mode named by the {@code deck.histogram} system property.
+         *
+         * <p>An unknown name is reported and {@link #AUTO} is used, so a typo
+         * does not make every PDF fail.</p>
+         *
+         * @return the configured mode, {@link #AUTO} if none or an unknown one is set
+         */
+        public static HistogramMode fromProperty() {
+            String name = System.getProperty("deck.histogram", "auto");
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown deck.histogram \"" + name + "\" (expected auto, per_card, by_cost or top_n), using auto");
+                return AUTO;
+            }
+        }
+    }
+
+    private static volatile PdfRenderEngine shared;
+
+    private final BaseFont base_font;
+    private final Font link_font;
+    private volatile HistogramMode histogram_mode = HistogramMode.fromProperty();
+
+    /**
+     * Creates an engine and loads its fonts.
+     *
+     * @throws DocumentException if the font cannot be created
+     * @throws IOException if the font cannot be read
+     */
+    public PdfRenderEngine() throws DocumentException, IOException {
+        base_font = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.CP1252, BaseFont.NOT_EMBEDDED);
+        link_font = new Font(base_font, 12);
+    }
+
+    /**
+     * Returns the engine shared by {@link GeneratePDFFile}, creating it on
+     * first use.
+     *
+     * @return the shared engine
+     * @throws DocumentException if the font cannot be created
+     * @throws IOException if the font cannot be read
+     */
+    public static PdfRenderEngine shared() throws DocumentException, IOException {
+        PdfRenderEngine engine = shared;
+        if (engine == null) {
+            synchronized (PdfRenderEngine.class) {
+                if (shared == null) {
+                    shared = new PdfRenderEngine();
+                }
+                engine = shared;
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Sets how the histogram groups cards in the reports of this engine.
+     *
+     * @param mode the histogram mode
+     */
+    public void setHistogramMode(HistogramMode mode) {
+        this.histogram_mode = mode;
+    }
+
+    /**
+     * Returns how the histogram groups cards.
+     *
+     * @return the histogram mode
+     */
+    public HistogramMode getHistogramMode() {
+        return histogram_mode;
+    }
+
+    /**
+     * Writes a deck report as a PDF document to the stream. The stream is
+     * flushed but not closed, like the other {@link ReportWriter} formats.
+     *
+     * @param out the stream that receives the PDF
+     * @param deck_ID the unique identifier for the deck
+     * @param total_cost the total energy cost of the cards in the deck
+     * @param cardDeck the cards of the deck and their costs
+     * @param invalid_cards the invalid lines found while reading the deck
+     * @throws DocumentException if an error occurs while creating the PDF
+     */
+    public void renderReport(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck,
+                             List<String> invalid_cards) throws DocumentException {
+        Document document = new Document();
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        writer.setCloseStream(false); //the caller owns the stream, it may be a response or a zip entry
+        document.open();
+        writeReport(document, writer, deck_ID, total_cost, cardDeck, invalid_cards, null);
+        document.close();
+    }
+
+    /**
+     * Writes a VOID report as a PDF document to the stream. The stream is
+     * flushed but not closed.
+     *
+     * @param out the stream that receives the PDF
+     * @param deck_ID the unique identifier for the deck
+     * @throws DocumentException if an error occurs while creating the PDF
+     */
+    public void renderVoid(OutputStream out, String deck_ID) throws DocumentException {
+        Document document = new Document();
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        writer.setCloseStream(false);
+        document.open();
+        writeVoid(document, deck_ID, null);
+        document.close();
+    }
+
+    /**
+     * Starts a combined report that holds many decks in one PDF.
+     *
+     * @param out the stream that receives the PDF; it is closed by
+     *            {@link CombinedReport#close()}
+     * @return the open combined report
+     * @throws DocumentException if the document cannot be started
+     */
+    public CombinedReport openCombined(OutputStream out) throws DocumentException {
+        return new CombinedReport(out);
+    }
+
+    /**
+     * Adds the header of every report.
+     */
+    private void writeHeader(Document document, String deck_ID, String destination) throws DocumentException {
+        document.add(new Paragraph(RULE));
+        if (destination == null) {
+            document.add(new Paragraph(TITLE));
+        } else {
+            document.add(new Paragraph(new Chunk(TITLE).setLocalDestination(destination))); //target of the TOC link
+        }
+        document.add(new Paragraph(RULE));
+        document.add(new Paragraph("Deck ID: " + deck_ID));
+    }
+
+    /**
+     * Adds the content of a deck report to the current page.
+     */
+    private void writeReport(Document document, PdfWriter writer, String deck_ID, int total_cost, CardTable cardDeck,
+                             List<String> invalid_cards, String destination) throws DocumentException {
+        //include deck ID, total cost of cards, and histogram in PDF report
+        writeHeader(document, deck_ID, destination);
+        document.add(new Paragraph("Total Cost: " + total_cost +" energy"));
+        //list any invalid cards
+        document.add(new Paragraph("---------------"));
+        document.add(new Paragraph("Invalid Cards:"));
+        document.add(new Paragraph("---------------"));
+
+        for(int i = 0; i < invalid_cards.size(); i++){
+            document.add(new Paragraph(invalid_cards.get(i)));
+        }
+        document.add(new Paragraph("--------------------"));
+        document.add(new Paragraph("Histogram of Cards:"));
+        document.add(new Paragraph("--------------------"));
+
+        drawHistogram(document, writer, cardDeck);
+    }
+
+    /**
+     * Adds the content of a VOID report to the current page.
+     */
+    private void writeVoid(Document document, String deck_ID, String destination) throws DocumentException {
+        writeHeader(document, deck_ID, destination);
+        document.add(new Paragraph("VOID"));
+    }
+
+    /**
+     * Groups the cards into bins for the current {@link HistogramMode} and
+     * draws one bar per bin.
+     */
+    private void drawHistogram(Document document, PdfWriter writer, CardTable cardDeck) throws DocumentException {
+        HistogramMode mode = histogram_mode;
+        if (mode == HistogramMode.AUTO) {
+            mode = cardDeck.size() <= MAX_PER_CARD_BARS ? HistogramMode.PER_CARD : HistogramMode.TOP_N;
+        }
+
+        Histogram bins;
+        if (mode == HistogramMode.BY_COST) {
+            bins = Histogram.byCost(cardDeck, MAX_COST_BINS);
+        } else if (mode == HistogramMode.TOP_N) {
+            bins = Histogram.topN(cardDeck, TOP_N);
+        } else {
+            bins = Histogram.perCard(cardDeck);
+        }
+        drawBars(document, writer, bins);
+    }
+
+    /**
+     * Draws the bars of a histogram in rows under the report text, each row
+     * followed by a colored label for each of its bars. Every row is drawn in
+     * a band reserved at the current position, so it never overlaps the
+     * text; a row that does not fit starts a new page.
+     */
+    private void drawBars(Document document, PdfWriter writer, Histogram bins) throws DocumentException {
+        //creating the Histogram from the bins
+        float startX = START_X;
+        float startY = 0;
+        int bars_per_row = Math.max(1, (int) ((document.right() - START_X + SPACE_BETWEEN_BARS) / (BAR_WIDTH + SPACE_BETWEEN_BARS)));
+
+        int max_value = 0;
+        for (int i = 0; i < bins.size(); i++) {
+            max_value = Math.max(max_value, bins.values[i]);
+        }
+        //keep the original 5pt per unit while it fits, scale down above that
+        float scale = max_value * 5f > MAX_BAR_HEIGHT ? MAX_BAR_HEIGHT / max_value : 5f;
+
+        Random rand = new Random();
+        PdfContentByte canvas = writer.getDirectContent();
+        canvas.setFontAndSize(base_font, 10); // Set font and size
+
+        BaseColor[] colors = new BaseColor[bars_per_row];
+        for (int row_start = 0; row_start < bins.size(); row_start += bars_per_row) {
+            int row_end = Math.min(row_start + bars_per_row, bins.size());
+
+            //reserve the band of this row under the text, on a new page if the rest of this one is too short
+            float top = writer.getVerticalPosition(true);
+            if (top - BAR_AREA_HEIGHT < document.bottom()) {
+                document.newPage();
+                top = writer.getVerticalPosition(true);
+            }
+            canvas = writer.getDirectContent();
+            startX = START_X;
+            startY = top - MAX_BAR_HEIGHT - (BAR_AREA_HEIGHT - MAX_BAR_HEIGHT) / 2;
+
+            for (int i = row_start; i < row_end; i++) {
+                float bar_height = bins.values[i] * scale;
+
+                //generates a random color for each bar
+                BaseColor color = new BaseColor(rand.nextInt(256), rand.nextInt(256), rand.nextInt(256));
+                colors[i - row_start] = color;
+                canvas.setColorFill(color);
+                canvas.rectangle(startX, startY, BAR_WIDTH, bar_height);
+                canvas.fill();
+
+                // Move the starting x position for the next bar
+                startX += BAR_WIDTH + SPACE_BETWEEN_BARS;
+            }
+            document.add(new Paragraph(BAR_AREA_HEIGHT, " ")); //moves the text below the band
+
+            for (int i = row_start; i < row_end; i++) {
+                Paragraph barLabel = new Paragraph(bins.labels[i]); //labeling bars
+                barLabel.getFont().setColor(colors[i - row_start]); // Set the color of the label
+                barLabel.setSpacingAfter(10);
+
+                document.add(barLabel);
+            }
+        }
+    }
+
+    /**
+     * The bars of a histogram: a label and a value for each bin.
+     */
+    static final class Histogram {
+        final String[] labels;
+        final int[] values;
+
+        private Histogram(String[] labels, int[] values) {
+            this.labels = labels;
+            this.values = values;
+        }
+
+        int size() {
+            return labels.length;
+        }
+
+        /**
+         * One bin per card, in the order the cards were read.
+         */
+        static Histogram perCard(CardTable cardDeck) {
+            String[] labels = new String[cardDeck.size()];
+            int[] values = new int[cardDeck.size()];
+            for (int id = 0; id < cardDeck.size(); id++) {
+                values[id] = cardDeck.cost(id);
+                labels[id] = cardDeck.name(id) + " (" + values[id] + " energy )";
+            }
+            return new Histogram(labels, values);
+        }
+
+        /**
+         * The {@code n} most expensive cards and one "other" bin for the rest.
+         * Selecting them keeps a small sorted array, O(cards * n).
+         */
+        static Histogram topN(CardTable cardDeck, int n) {
+            int keep = Math.min(n, cardDeck.size());
+            int[] top = new int[keep]; //card ids, highest cost first
+            int used = 0;
+            for (int id = 0; id < cardDeck.size(); id++) {
+                int cost = cardDeck.cost(id);
+                if (used == keep && cost <= cardDeck.cost(top[keep - 1])) {
+                    continue;
+                }
+                int pos = used < keep ? used++ : keep - 1;
+                while (pos > 0 && cardDeck.cost(top[pos - 1]) < cost) {
+                    top[pos] = top[pos - 1];
+                    pos--;
+                }
+                top[pos] = id;
+            }
+
+            int others = cardDeck.size() - keep;
+            String[] labels = new String[keep + (others > 0 ? 1 : 0)];
+            int[] values = new int[labels.length];
+            int top_total = 0;
+            for (int i = 0; i < keep; i++) {
+                values[i] = cardDeck.cost(top[i]);
+                labels[i] = cardDeck.name(top[i]) + " (" + values[i] + " energy )";
+                top_total += values[i];
+            }
+            if (others > 0) {
+                values[keep] = cardDeck.totalCost() - top_total;
+                labels[keep] = "Other: " + others + " cards (" + values[keep] + " energy )";
+            }
+            return new Histogram(labels, values);
+        }
+
+        /**
+         * Bins the cards by their cost into at most {@code max_bins} ranges of
+         * equal width. The value of a bin is the number of cards in it.
+         */
+        static Histogram byCost(CardTable cardDeck, int max_bins) {
+            if (cardDeck.size() == 0) {
+                return new Histogram(new String[0], new int[0]);
+            }
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int id = 0; id < cardDeck.size(); id++) {
+                min = Math.min(min, cardDeck.cost(id));
+                max = Math.max(max, cardDeck.cost(id));
+            }
+
+            long range = (long) max - min + 1;
+            int width = (int) ((range + max_bins - 1) / max_bins);
+            int bin_count = (int) ((range + width - 1) / width);
+            int[] values = new int[bin_count];
+            int[] energy = new int[bin_count];
+            for (int id = 0; id < cardDeck.size(); id++) {
+                int bin = (int) (((long) cardDeck.cost(id) - min) / width);
+                values[bin]++;
+                energy[bin] += cardDeck.cost(id);
+            }
+
+            String[] labels = new String[bin_count];
+            for (int bin = 0; bin < bin_count; bin++) {
+                long low = (long) min + (long) bin * width;
+                long high = low + width - 1;
+                String range_label = width == 1 ? "Cost " + low : "Cost " + low + "-" + high;
+                labels[bin] = range_label + ": " + values[bin] + " cards (" + energy[bin] + " energy )";
+            }
+            return new Histogram(labels, values);
+        }
+    }
+
+    /**
+     * A PDF in which every deck starts on a new page and that ends with a
+     * table of contents that links to every deck. Calls are serialized, so
+     * worker threads may add decks as they finish.
+     */
+    public class CombinedReport implements AutoCloseable {
+
+        private final Document document = new Document();
+        private final PdfWriter writer;
+        private final StringBuilder toc_lines = new StringBuilder();
+        private PdfTemplate footer;
+        private int deck_count = 0;
+        private boolean closed = false;
+
+        private CombinedReport(OutputStream out) throws DocumentException {
+            writer = PdfWriter.getInstance(document, out);
+            writer.setLinearPageMode(); //needed to move the TOC to the front
+            writer.setPageEvent(new Footer());
+            document.open();
+        }
+
+        /**
+         * Adds a deck report on a new page.
+         *
+         * @param deck_ID the unique identifier for the deck
+         * @param total_cost the total energy cost of the cards in the deck
+         * @param cardDeck the cards of the deck and their costs
+         * @param invalid_cards the invalid lines found while reading the deck
+         * @throws DocumentException if the page cannot be written
+         */
+        public synchronized void addReport(String deck_ID, int total_cost, CardTable cardDeck,
+                                           List<String> invalid_cards) throws DocumentException {
+            startDeck(deck_ID, total_cost + " energy");
+            writeReport(document, writer, deck_ID, total_cost, cardDeck, invalid_cards, "deck-" + deck_ID);
+        }
+
+        /**
+         * Adds a VOID report on a new page.
+         *
+         * @param deck_ID the unique identifier for the deck
+         * @throws DocumentException if the page cannot be written
+         */
+        public synchronized void addVoid(String deck_ID) throws DocumentException {
+            startDeck(deck_ID, "VOID");
+            writeVoid(document, deck_ID, "deck-" + deck_ID);
+        }
+
+        /**
+         * Returns the number of decks added so far.
+         *
+         * @return the deck count
+         */
+        public synchronized int getDeckCount() {
+            return deck_count;
+        }
+
+        private void startDeck(String deck_ID, String summary) {
+            if (deck_count > 0) {
+                document.newPage();
+            }
+            deck_count++;
+            toc_lines.append(deck_ID).append('\t').append(summary).append('\n');
+        }
+
+        /**
+         * Places the footer on every page as it is completed, including the
+         * pages that a long deck continues on.
+         */
+        private final class Footer extends PdfPageEventHelper {
+            @Override
+            public void onEndPage(PdfWriter page_writer, Document page_document) {
+                page_writer.getDirectContent().addTemplate(footer(), page_document.left(), page_document.bottom() - 20);
+            }
+        }
+
+        /**
+         * The footer is drawn once and referenced from every page.
+         */
+        private PdfTemplate footer() {
+            if (footer == null) {
+                footer = writer.getDirectContent().createTemplate(document.right() - document.left(), 12);
+                footer.beginText();
+                footer.setFontAndSize(base_font, 8);
+                footer.showTextAligned(Element.ALIGN_LEFT, TITLE + " - combined report", 0, 2, 0);
+                footer.endText();
+            }
+            return footer;
+        }
+
+        /**
+         * Writes the table of contents, moves it to the front and closes the
+         * document and its stream.
+         *
+         * @throws DocumentException if the table of contents cannot be written
+         */
+        @Override
+        public synchronized void close() throws DocumentException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (deck_count == 0) {
+                document.add(new Paragraph("No decks."));
+                document.close();
+                return;
+            }
+
+            document.newPage();
+            int toc_page = writer.getPageNumber();
+            document.add(new Paragraph(RULE));
+            document.add(new Paragraph("TABLE OF CONTENTS (" + deck_count + " decks)"));
+            document.add(new Paragraph(RULE));
+
+            int start = 0;
+            while (start < toc_lines.length()) {
+                int tab = toc_lines.indexOf("\t", start);
+                int end = toc_lines.indexOf("\n", tab);
+                String deck_ID = toc_lines.substring(start, tab);
+                String summary = toc_lines.substring(tab + 1, end);
+                document.add(new Paragraph(new Chunk("Deck ID: " + deck_ID + "  -  " + summary, link_font)
+                        .setLocalGoto("deck-" + deck_ID)));
+                start = end + 1;
+            }
+
+            document.newPage();
+            int total = writer.reorderPages(null);
+            int[] order = new int[total];
+            for (int i = 0; i < total; i++) { //TOC pages first, then the decks
+                order[i] = i + toc_page;
+                if (order[i] > total) {
+                    order[i] -= total;
+                }
+            }
+            writer.reorderPages(order);
+            document.close();
+        }
+    }
+}
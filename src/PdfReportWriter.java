@@ -0,0 +1,47 @@
+/**
+ * The {@code PdfReportWriter} class is the {@link ReportWriter} for the
+ * original PDF report, rendered by the shared {@link PdfRenderEngine}.
+ *
+ * <p>Files are written through {@link GeneratePDFFile}, so the PDF output of
+ * {@code generateFile} is the same as before report writers existed, but a
+ * failed PDF throws like the other formats instead of only being printed. This
+ * class itself does not refer to iText, so choosing other formats works
+ * without iText on the classpath.</p>
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public class PdfReportWriter implements ReportWriter {
+
+    @Override
+    public String format() {
+        return "pdf";
+    }
+
+    @Override
+    public String extension() {
+        return ".pdf";
+    }
+
+    @Override
+    public void writeReport(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        GeneratePDFFile.writePDF(out, deck_ID, total_cost, cardDeck, invalid_cards);
+    }
+
+    @Override
+    public void writeVoid(OutputStream out, String deck_ID) throws IOException {
+        GeneratePDFFile.writeVoidPDF(out, deck_ID);
+    }
+
+    @Override
+    public void writeReportFile(String file_path, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException {
+        GeneratePDFFile.writePDFFile(file_path, deck_ID, total_cost, cardDeck, invalid_cards);
+    }
+
+    @Override
+    public void writeVoidFile(String file_path, String deck_ID) throws IOException {
+        GeneratePDFFile.writeVoidPDFFile(file_path, deck_ID);
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * The {@code ReportCache} class remembers which report was generated for which
+ * deck contents, so an identical deck is not parsed or rendered again.
+ *
+ * <p>Two kinds of keys point at a report (its deck ID and PDF path):</p>
+ * <ul>
+ *     <li>a SHA-256 digest of the raw file bytes, which lets a byte-for-byte
+ *     identical file skip parsing altogether;</li>
+ *     <li>a SHA-256 digest of the normalized parsed deck (valid or VOID, the
+ *     card to cost totals sorted by name, and the invalid lines in order),
+ *     which catches files that differ only in line order or layout.</li>
+ * </ul>
+ *
+ * <p>The index is kept in least-recently-used order and bounded to a maximum
+ * number of keys; the eldest key is evicted when the bound is passed. A hit
+ * only counts if the PDF still exists. On disk the index is an append-only
+ * journal of {@code put}/{@code hit} lines that is replayed on open and
+ * rewritten compactly when it grows past twice the bound. Hit lines are
+ * buffered and written in batches, and each {@code put} is flushed at once.
+ * Evicting a key never deletes a PDF.</p>
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ReportCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final Path index_file;
+    private final int max_entries;
+    private final LinkedHashMap<String, Entry> entries;
+    private BufferedWriter journal;
+    private int journal_lines = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * A generated report.
+     */
+    public static final class Entry {
+        public final String deck_ID;
+        public final String report_path;
+
+        public Entry(String deck_ID, String report_path) {
+            this.deck_ID = deck_ID;
+            this.report_path = report_path;
+        }
+    }
+
+    /**
+     * Opens the cache, replaying its journal if it exists.
+     *
+     * @param index_file the journal file of the index
+     * @param max_entries the most keys kept before the least recently used is evicted
+     * @throws IOException if the journal cannot be read or opened for appending
+     */
+    public ReportCache(Path index_file, int max_entries) throws IOException {
+        if (max_entries < 1) {
+            throw new IllegalArgumentException("max_entries must be at least 1");
+        }
+        this.index_file = index_file;
+        this.max_entries = max_entries;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ReportCache.this.max_entries;
+            }
+        };
+
+        if (Files.exists(index_file)) {
+            for (String line : Files.readAllLines(index_file, StandardCharsets.UTF_8)) {
+                replay(line);
+            }
+        }
+        journal = Files.newBufferedWriter(index_file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (journal_lines > 2 * max_entries) {
+            compact();
+        }
+    }
+
+    /**
+     * Looks up a report by key and marks it as recently used.
+     *
+     * @param digest a raw or parsed deck digest
+     * @return the report, or {@code null} if the key is unknown or its PDF is gone
+     * @throws IOException if the journal cannot be written
+     */
+    public Entry lookup(String digest) throws IOException {
+        return lookup(digest, true);
+    }
+
+    /**
+     * Looks up a report by key and marks it as recently used. A deck that is
+     * looked up by its raw digest first and then by its parsed digest is
+     * counted once: the first lookup passes {@code count_miss = false}.
+     *
+     * @param digest a raw or parsed deck digest
+     * @param count_miss whether a miss is counted, {@code false} if another key
+     *                   of the same deck is tried next
+     * @return the report, or {@code null} if the key is unknown or its PDF is gone
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized Entry lookup(String digest, boolean count_miss) throws IOException {
+        Entry entry = entries.get(digest);
+        if (entry != null && !Files.isRegularFile(Paths.get(entry.report_path))) {
+            entries.remove(digest); //the PDF was removed, render it again
+            entry = null;
+        }
+        if (entry == null) {
+            misses += count_miss ? 1 : 0;
+            return null;
+        }
+        hits++;
+        append("hit\t" + digest, false); //only the LRU order is lost if these never reach the disk
+        return entry;
+    }
+
+    /**
+     * Records the report generated for a key.
+     *
+     * @param digest a raw or parsed deck digest
+     * @param deck_ID the ID of the deck
+     * @param report_path the path of the generated PDF
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void put(String digest, String deck_ID, String report_path) throws IOException {
+        entries.put(digest, new Entry(deck_ID, report_path));
+        append("put\t" + digest + "\t" + deck_ID + "\t" + report_path, true);
+    }
+
+    /**
+     * Returns the number of keys in the index.
+     *
+     * @return the key count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns how many decks were found since the cache was opened.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many decks were not found since the cache was opened.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Flushes and closes the journal.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * Returns the SHA-256 digest of a file's bytes.
+     *
+     * @param deck_file the deck file
+     * @return the hex digest
+     * @throws IOException if the file cannot be read
+     */
+    public static String rawDigest(Path deck_file) throws IOException {
+        MessageDigest sha = sha256();
+        sha.update("raw\n".getBytes(StandardCharsets.UTF_8));
+        sha.update(Files.readAllBytes(deck_file));
+        return hex(sha.digest());
+    }
+
+    /**
+     * Returns the SHA-256 digest of a parsed deck in normalized form: the
+     * validity, the cards sorted by name with their cost totals, and the
+     * invalid lines in the order they were read.
+     *
+     * @param file_to_generate whether the deck produced a report or a VOID file
+     * @param tally the parsed deck
+     * @return the hex digest
+     */
+    public static String deckDigest(boolean file_to_generate, DeckTally tally) {
+        CardTable cardDeck = tally.cardDeck;
+        Integer[] ids = new Integer[cardDeck.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, (a, b) -> cardDeck.name(a).compareTo(cardDeck.name(b)));
+
+        MessageDigest sha = sha256();
+        StringBuilder normalized = new StringBuilder();
+        normalized.append(file_to_generate ? "report\n" : "void\n");
+        for (Integer id : ids) {
+            normalized.append(cardDeck.name(id)).append('\0').append(cardDeck.cost(id)).append('\n');
+        }
+        normalized.append("invalid\n");
+        for (String line : tally.invalid_cards) {
+            normalized.append(line).append('\n');
+        }
+        sha.update(normalized.toString().getBytes(StandardCharsets.UTF_8));
+        return hex(sha.digest());
+    }
+
+    private void replay(String line) {
+        String[] fields = line.split("\t", 4);
+        journal_lines++;
+        if (fields[0].equals("put") && fields.length == 4) {
+            entries.put(fields[1], new Entry(fields[2], fields[3]));
+        } else if (fields[0].equals("hit") && fields.length >= 2) {
+            entries.get(fields[1]); //moves it to the most recently used end
+        }
+    }
+
+    /**
+     * Appends a journal line. Lines are buffered and written in batches; a
+     * {@code put} is flushed at once, with the buffered hits before it, so a
+     * rendered report is not forgotten if the run is killed.
+     */
+    private void append(String line, boolean flush) throws IOException {
+        journal.write(line);
+        journal.newLine();
+        if (flush) {
+            journal.flush();
+        }
+        journal_lines++;
+        if (journal_lines > 2 * max_entries) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the journal with one {@code put} line per key, eldest first,
+     * and moves it over the old one.
+     */
+    private void compact() throws IOException {
+        journal.close();
+        Path tmp = index_file.resolveSibling(index_file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write("put\t" + entry.getKey() + "\t" + entry.getValue().deck_ID + "\t" + entry.getValue().report_path);
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, index_file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal_lines = entries.size();
+        journal = Files.newBufferedWriter(index_file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); //every JVM ships SHA-256
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] digits = new char[bytes.length * 2];
+        String alphabet = "0123456789abcdef";
+        for (int i = 0; i < bytes.length; i++) {
+            digits[i * 2] = alphabet.charAt((bytes[i] >> 4) & 0xF);
+            digits[i * 2 + 1] = alphabet.charAt(bytes[i] & 0xF);
+        }
+        return new String(digits);
+    }
+}
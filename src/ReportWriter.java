@@ -0,0 +1,156 @@
+/**
+ * The {@code ReportWriter} interface turns one tallied deck into one report
+ * file, in one output format.
+ *
+ * <p>{@link SlayTheSpire#generateFile(boolean, String, DeckTally, String)}
+ * hands the same parsed deck to every writer selected for the run, so asking
+ * for several formats does not read the deck again. The formats are:</p>
+ * <ul>
+ *     <li>{@code pdf}: the iText report, see {@link PdfReportWriter};</li>
+ *     <li>{@code csv}: one row per card, see {@link CsvReportWriter};</li>
+ *     <li>{@code jsonl}: one JSON object per deck on one line, see {@link JsonLinesReportWriter};</li>
+ *     <li>{@code bin}: a compact binary summary, see {@link BinaryReportWriter}.</li>
+ * </ul>
+ *
+ * <p>The formats of a run are read from the {@code deck.formats} system
+ * property (for example {@code -Ddeck.formats=csv,jsonl}) or set with
+ * {@code --format} in the batch, watch and large modes. Only the PDF writer
+ * needs iText.</p>
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public interface ReportWriter {
+
+    /**
+     * Returns the name of the format, as used in {@code deck.formats}.
+     *
+     * @return the format name
+     */
+    String format();
+
+    /**
+     * Returns the file extension of the format, with its leading dot.
+     *
+     * @return the extension
+     */
+    String extension();
+
+    /**
+     * Writes the report of a valid deck to the stream. The stream is not closed.
+     *
+     * @param out where the report is written
+     * @param deck_ID the unique identifier for the deck
+     * @param total_cost the total energy cost of the cards in the deck
+     * @param cardDeck the card names and their summed costs
+     * @param invalid_cards the lines that were rejected
+     * @throws IOException if the report cannot be written
+     */
+    void writeReport(OutputStream out, String deck_ID, int total_cost, CardTable cardDeck, List<String> invalid_cards) throws IOException;
+
+    /**
+     * Writes the report of a VOID deck to the stream. The stream is not closed.
+     *
+     * @param out where the report is written
+     * @param deck_ID the unique identifier for the deck
+     * @throws IOException if the report cannot be written
+     */
+    void writeVoid(OutputStream out, String deck_ID) throws IOException;
+
+    /**
+     * Writes the report of a valid deck to a file and records it in the
+     * {@link DeckMetrics}.
+     *
+     * @param file_path the path of the report file
+     * @param deck_ID the unique identifier for the deck
+     * @param total_cost the total energy cost of the cards in the deck
+     * @param cardDeck the card names and their summed costs
+     * @param invalid_cards the lines that were rejected
+     * @throws IOException if the file cannot be written
+     */
+    default void writeReportFile(String file_path, String deck_ID, int total_cost, CardTable cardDeck,
+                                 List<String> invalid_cards) throws IOException {
+        long start = System.nanoTime();
+        try (OutputStream out = openFile(file_path)) {
+            writeReport(out, deck_ID, total_cost, cardDeck, invalid_cards);
+        }
+        DeckMetrics.recordRender(file_path, start);
+    }
+
+    /**
+     * Writes the report of a VOID deck to a file and records it in the
+     * {@link DeckMetrics}.
+     *
+     * @param file_path the path of the report file
+     * @param deck_ID the unique identifier for the deck
+     * @throws IOException if the file cannot be written
+     */
+    default void writeVoidFile(String file_path, String deck_ID) throws IOException {
+        long start = System.nanoTime();
+        try (OutputStream out = openFile(file_path)) {
+            writeVoid(out, deck_ID);
+        }
+        DeckMetrics.recordRender(file_path, start);
+    }
+
+    /**
+     * Opens a buffered stream to the file.
+     *
+     * @param file_path the file to write
+     * @return the open stream
+     * @throws IOException if the file cannot be created
+     */
+    static OutputStream openFile(String file_path) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(file_path), 64 * 1024);
+    }
+
+    /**
+     * Returns the writer of one format.
+     *
+     * @param format {@code pdf}, {@code csv}, {@code jsonl} or {@code bin}
+     * @return the writer
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static ReportWriter forFormat(String format) {
+        switch (format.trim().toLowerCase(Locale.ROOT)) {
+            case "pdf":
+                return new PdfReportWriter();
+            case "csv":
+                return new CsvReportWriter();
+            case "jsonl":
+            case "json":
+                return new JsonLinesReportWriter();
+            case "bin":
+            case "binary":
+                return new BinaryReportWriter();
+            default:
+                throw new IllegalArgumentException("unknown report format: " + format);
+        }
+    }
+
+    /**
+     * Returns the writers of a comma-separated list of formats, in order.
+     *
+     * @param formats for example {@code "pdf,csv"}
+     * @return the writers, at least one
+     * @throws IllegalArgumentException if a format is unknown or none is given
+     */
+    static List<ReportWriter> forFormats(String formats) {
+        List<ReportWriter> writers = new ArrayList<>();
+        for (String format : formats.split(",")) {
+            if (!format.trim().isEmpty()) {
+                writers.add(forFormat(format));
+            }
+        }
+        if (writers.isEmpty()) {
+            throw new IllegalArgumentException("no report format given");
+        }
+        return writers;
+    }
+}
@@ -31,22 +31,24 @@
  * deck composition and costs.</p>
  */
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 
 public class SlayTheSpire {
 
-    static List<String> invalid_cards = new ArrayList<>();
-    static HashMap<String, Integer> cardDeck = new HashMap<>();
-
+    //formats written by generateFile, from -Ddeck.formats=pdf,csv,jsonl,bin
+    private static volatile List<ReportWriter> report_writers =
+            ReportWriter.forFormats(System.getProperty("deck.formats", "pdf"));
+    private static volatile String catalog_key; //see catalogKey()
 
     /**
      * Reads a text file and processes its content to populate a card deck and
@@ -63,76 +65,33 @@ public class SlayTheSpire {
      * that do not conform to this format, are empty, or have a 'value' outside
      * this range will be considered invalid.</p>
      *
+     * <p>The parsed cards and invalid lines are stored in the given
+     * {@link DeckTally}, so each deck keeps its own parse state. The file is
+     * scanned once at the byte level by {@link DeckTokenizer}. A file ending
+     * in {@code .gz} is inflated while it is read, see {@link DeckArchive}.</p>
+     *
      * @param filePath the path to the text file to be read
+     * @param tally the {@link DeckTally} that receives the cards and invalid lines
      * @return true if the file was read successfully and all conditions were met;
      *         false if there were issues such as exceeding the line limit,
      *         encountering too many invalid cards, or if an IOException occurred.
      */
-    public static boolean  readTxtFile(String filePath) {
-
-        BufferedReader reader = null;
+    public static boolean  readTxtFile(String filePath, DeckTally tally) {
 
         try {
-            //read file
-            reader = new BufferedReader(new FileReader(filePath));
-            String line;
-            int line_counter = 0;
-            String line_no_space;
-
-            //read file line by line
-            while ((line = reader.readLine()) != null) {
-                line_counter += 1; //counts the amount of lines in the txt file
-                if(line_counter > 1000){
-                    return false;
-                }
-
-                if( invalid_cards.size() > 10){
-                    return false;
-                }
-
-                line_no_space = line.replaceAll("\\s+", ""); //remove white spaces in string
-                //line = line.toLowerCase(); //remove uppercase
-
-                if (line_no_space.isEmpty()){ //checks if string is empty
-                    invalid_cards.add(line); //adds to invalid_cards if true
-                }
-
-                if (line == null || !line.contains(":")) { //checks for invalid format
-                    invalid_cards.add(line); //adds invalid card to invalid_card list
-                }
-
-                String[] str_and_int = line.split(":"); //split at ":"
-
-                if(str_and_int.length == 2 && isInteger(str_and_int[1])){
-                    String key = str_and_int[0];
-                    int value = Integer.parseInt(str_and_int[1]);
-
-                    if(!(value <= 6) || !(value >= 0)){
-                        invalid_cards.add(line); //adds invalid card to invalid_card list
-                    }
-
-                    else if (cardDeck.containsKey(key)) {
-                        cardDeck.put(key, cardDeck.get(key) + value); //updates existing values of repeated keys
-                    } else {
-                        cardDeck.put(key, value);  //add new keys
-                    }
-                }
+            if (filePath.toLowerCase(Locale.ROOT).endsWith(".gz")) {
+                return DeckArchive.readGzip(Paths.get(filePath), tally); //records its own metrics
             }
-
+            long start = System.nanoTime();
+            DeckTokenizer tokenizer = new DeckTokenizer(tally);
+            boolean valid = tokenizer.parseFile(filePath); //single pass byte-level parse
+            DeckMetrics.recordParse(tokenizer, valid, System.nanoTime() - start);
+            return valid;
         } catch (IOException e) {
+            DeckMetrics.PARSE_ERRORS.increment();
             e.printStackTrace();
             return false; //returns false if exception occurs
-        } finally {
-            //close BufferedReader
-            try {
-                if (reader != null) {
-                    reader.close();
-                }
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
         }
-        return true;
     }
 
     /**
@@ -180,6 +139,19 @@ public class SlayTheSpire {
         return total_cost;
     }
 
+    /**
+     * Returns the total cost of cards in the specified deck.
+     *
+     * <p>The {@link CardTable} keeps a running total while cards are added,
+     * so this is O(1).</p>
+     *
+     * @param cardDeck a {@link CardTable} of card names and their costs
+     * @return the total cost of all cards in the deck as an {@code int}
+     */
+    public static int calculateTotalDeckCost(CardTable cardDeck){
+        return cardDeck.totalCost();
+    }
+
     /**
      * Generates a PDF file for a deck of cards, either as a report or a VOID file.
      *
@@ -192,28 +164,263 @@ public class SlayTheSpire {
      *                         ({@code true})
      * @param directory_path a {@code String} representing the path to the
      *                       directory where the PDF file will be created
+     * @param tally the {@link DeckTally} holding the parsed deck
+     * @return the path of the generated PDF file
      * @throws IllegalArgumentException if the directory path is invalid or
      *                                  if there are issues generating the file
      */
-    public static void generateFile(boolean file_to_generate, String directory_path){
+    public static String generateFile(boolean file_to_generate, String directory_path, DeckTally tally){
+        long start = System.nanoTime();
+        return writeReports(file_to_generate, directory_path, tally, DeckIDGenerator.generateUniqueNumber(), report_writers,
+                true, start);
+    }
 
-        String deck_ID = DeckIDGenerator.generateUniqueNumber();
+    /**
+     * Generates a PDF file for a deck of cards under an ID that was allocated
+     * before, so that a deck that is re-read keeps its ID and its PDF is
+     * overwritten instead of a new one being created.
+     *
+     * <p>One file is written by every {@link ReportWriter} of the run (see
+     * {@link #setReportWriters(List)}), all from the same parsed deck. The
+     * default is only the PDF.</p>
+     *
+     * @param file_to_generate {@code false} for a VOID file, {@code true} for a report
+     * @param directory_path the directory where the PDF file will be created
+     * @param tally the {@link DeckTally} holding the parsed deck
+     * @param deck_ID the ID of the deck
+     * @return the path of the file of the first writer, the PDF by default
+     */
+    public static String generateFile(boolean file_to_generate, String directory_path, DeckTally tally, String deck_ID){
+        return generateFile(file_to_generate, directory_path, tally, deck_ID, report_writers);
+    }
+
+    /**
+     * Generates one report file per writer for a deck of cards.
+     *
+     * @param file_to_generate {@code false} for a VOID file, {@code true} for a report
+     * @param directory_path the directory where the files will be created
+     * @param tally the {@link DeckTally} holding the parsed deck
+     * @param deck_ID the ID of the deck
+     * @param writers the formats to write, in order
+     * @return the path of the file of the first writer
+     */
+    public static String generateFile(boolean file_to_generate, String directory_path, DeckTally tally, String deck_ID,
+                                      List<ReportWriter> writers){
+        return writeReports(file_to_generate, directory_path, tally, deck_ID, writers, true, System.nanoTime());
+    }
+
+    /**
+     * Writes the reports of a deck again under the ID it was reported with,
+     * for a deck that changed (as in watch mode). It is not recorded in the
+     * {@link DeckLedger} and {@link DeckAnalytics} again, so an edited deck
+     * still counts as one deck.
+     *
+     * @param file_to_generate {@code false} for a VOID file, {@code true} for a report
+     * @param directory_path the directory where the files will be created
+     * @param tally the {@link DeckTally} holding the parsed deck
+     * @param deck_ID the ID the deck was first reported with
+     * @return the path of the file of the first writer
+     */
+    static String regenerateFile(boolean file_to_generate, String directory_path, DeckTally tally, String deck_ID) {
+        return writeReports(file_to_generate, directory_path, tally, deck_ID, report_writers, false, System.nanoTime());
+    }
+
+    /**
+     * Writes one report file per writer and records the time in
+     * {@link DeckMetrics#GENERATE}, from {@code start}.
+     */
+    private static String writeReports(boolean file_to_generate, String directory_path, DeckTally tally, String deck_ID,
+                                       List<ReportWriter> writers, boolean record, long start) {
+        int total_cost = calculateTotalDeckCost(tally.cardDeck);
+        String first_path = null;
+
+        for (ReportWriter writer : writers) {
+            String file_path = reportPath(file_to_generate, directory_path, deck_ID, writer);
+            try {
+                if (!file_to_generate) { // generate VOID file
+                    writer.writeVoidFile(file_path, deck_ID);
+                } else { // generate REPORT
+                    writer.writeReportFile(file_path, deck_ID, total_cost, tally.cardDeck, tally.invalid_cards);
+                }
+            } catch (IOException | RuntimeException e) {
+                DeckMetrics.RENDER_ERRORS.increment();
+                e.printStackTrace();
+                deletePartialReport(file_path);
+            }
+            if (first_path == null) {
+                first_path = file_path;
+            }
+        }
+        if (record) {
+            recordReportedDeck(deck_ID, file_to_generate, tally);
+        }
+        DeckMetrics.GENERATE.recordSince(start);
+        return first_path;
+    }
+
+    /**
+     * Deletes what a failed writer left of a report, so a truncated file is
+     * never taken for a finished one.
+     */
+    private static void deletePartialReport(String file_path) {
+        try {
+            Files.deleteIfExists(Paths.get(file_path));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends a reported deck to the {@link DeckLedger} of
+     * {@code -Ddeck.ledger} and adds it to the {@link DeckAnalytics} of
+     * {@code -Ddeck.analytics}, for each that is set.
+     *
+     * @param deck_ID the ID of the deck
+     * @param file_to_generate {@code false} for a VOID deck
+     * @param tally the parsed deck
+     */
+    static void recordReportedDeck(String deck_ID, boolean file_to_generate, DeckTally tally) {
+        DeckAnalytics analytics = DeckAnalytics.fromProperty();
+        if (analytics != null) {
+            analytics.add(file_to_generate, tally);
+        }
+        DeckLedger ledger = DeckLedger.fromProperty();
+        if (ledger == null) {
+            return;
+        }
+        try {
+            ledger.record(deck_ID, file_to_generate, tally);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Returns the path of the report file of a deck in one format.
+     *
+     * @param file_to_generate {@code false} for a VOID file, {@code true} for a report
+     * @param directory_path the directory of the report
+     * @param deck_ID the ID of the deck
+     * @param writer the format
+     * @return the file path
+     */
+    public static String reportPath(boolean file_to_generate, String directory_path, String deck_ID, ReportWriter writer) {
+        //creating the file path with ID
+        String name = "/SpireDeck_" + deck_ID + (file_to_generate ? "" : "(VOID)") + writer.extension();
+        return Paths.get(directory_path + name).toString();
+    }
 
-        int total_cost = calculateTotalDeckCost(cardDeck);
+    /**
+     * Selects the report formats of this run.
+     *
+     * @param writers the writers, at least one; the first one's path is
+     *                returned by {@code generateFile}
+     */
+    public static void setReportWriters(List<ReportWriter> writers) {
+        if (writers.isEmpty()) {
+            throw new IllegalArgumentException("at least one report writer is needed");
+        }
+        report_writers = new ArrayList<>(writers);
+    }
 
-        if (!file_to_generate) { // generate VOID file
-            //creating the file path with ID
-            directory_path = directory_path +"/SpireDeck_" + deck_ID + "(VOID).pdf";
-            directory_path = Paths.get(directory_path).toString();
+    /**
+     * Returns the report formats of this run.
+     *
+     * @return the writers
+     */
+    public static List<ReportWriter> getReportWriters() {
+        return report_writers;
+    }
 
-            GeneratePDFFile.generateVoidPDF(directory_path, deck_ID);
-        } else { // generate REPORT
-            //creating the file path with ID
-            directory_path = directory_path +"/SpireDeck_" + deck_ID + ".pdf";
-            directory_path = Paths.get(directory_path).toString();
-            GeneratePDFFile.generatePDF(directory_path, deck_ID, total_cost, cardDeck, invalid_cards);
+    /**
+     * Returns the prefix of cache keys for a set of formats and the settings
+     * that change their reports: the {@code deck.histogram} mode when PDFs are
+     * written, and the contents of the {@code deck.catalog} file. It is empty
+     * for the PDF alone with the default settings, so existing cache entries
+     * still match.
+     */
+    private static String cacheKeyPrefix(List<ReportWriter> writers) throws IOException {
+        StringBuilder key = new StringBuilder();
+        boolean pdf = false;
+        for (ReportWriter writer : writers) {
+            pdf |= writer.format().equals("pdf");
+        }
+        if (writers.size() != 1 || !pdf) {
+            for (ReportWriter writer : writers) {
+                key.append(writer.format()).append(',');
+            }
         }
+        String histogram = System.getProperty("deck.histogram", "auto").trim().toLowerCase(Locale.ROOT);
+        if (pdf && !histogram.equals("auto")) {
+            key.append("histogram=").append(histogram).append(',');
+        }
+        key.append(catalogKey());
+        return key.length() == 0 ? "" : key.append(':').toString();
+    }
+
+    /**
+     * Returns the cache key part of the {@code deck.catalog} file, empty when
+     * no catalog is in use. The file is read once.
+     */
+    private static String catalogKey() throws IOException {
+        String key = catalog_key;
+        if (key == null) {
+            key = CardCatalog.fromProperty() == null ? ""
+                    : "catalog=" + ReportCache.rawDigest(Paths.get(System.getProperty("deck.catalog"))) + ",";
+            catalog_key = key;
+        }
+        return key;
+    }
+
+    /**
+     * Generates the PDF file for a deck unless an identical deck was already
+     * reported, in which case the existing deck ID and PDF are returned.
+     *
+     * <p>A byte-for-byte identical file is found without parsing it. Otherwise
+     * the deck is parsed and looked up by its normalized contents, and only if
+     * that misses as well is a new ID allocated and a PDF rendered. Keys
+     * include the formats, the histogram mode and the catalog, so changing
+     * any of them renders the deck again.</p>
+     *
+     * @param filePath the path to the deck file
+     * @param directory_path the directory where a new PDF file would be created
+     * @param cache the {@link ReportCache} of earlier reports
+     * @return the deck ID and PDF path, new or cached
+     * @throws IOException if the deck file or the cache index cannot be accessed
+     */
+    public static ReportCache.Entry generateCachedFile(String filePath, String directory_path, ReportCache cache) throws IOException {
+        String formats = cacheKeyPrefix(report_writers);
+        String raw_digest = formats + ReportCache.rawDigest(Paths.get(filePath));
+        ReportCache.Entry cached = cache.lookup(raw_digest, false); //a miss is counted by the second lookup
+        if (cached != null) {
+            return cached; //identical file, no parsing needed
+        }
+
+        DeckTally tally = new DeckTally();
+        boolean file_to_generate = readTxtFile(filePath, tally);
+        String deck_digest = formats + ReportCache.deckDigest(file_to_generate, tally);
+        cached = cache.lookup(deck_digest);
+        if (cached != null) {
+            cache.put(raw_digest, cached.deck_ID, cached.report_path);
+            return cached;
+        }
+
+        String deck_ID = DeckIDGenerator.generateUniqueNumber();
+        String report_path = generateFile(file_to_generate, directory_path, tally, deck_ID);
+        if (allReportsWritten(file_to_generate, directory_path, deck_ID)) { //a failed writer deletes its file
+            cache.put(deck_digest, deck_ID, report_path);
+            cache.put(raw_digest, deck_ID, report_path);
+        }
+        return new ReportCache.Entry(deck_ID, report_path);
+    }
+
+    private static boolean allReportsWritten(boolean file_to_generate, String directory_path, String deck_ID) {
+        for (ReportWriter writer : report_writers) {
+            if (!new File(reportPath(file_to_generate, directory_path, deck_ID, writer)).isFile()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -229,13 +436,74 @@ public class SlayTheSpire {
      *         should be generated.</li>
      *     <li>Extracts the directory path from the provided file path to
      *         specify where to save the generated PDF.</li>
-     *     <li>Calls the {@link #generateFile(boolean, String)} method to
+     *     <li>Calls the {@link #generateFile(boolean, String, DeckTally)} method to
      *         create the PDF file.</li>
      * </ol>
      *
-     * @param args command-line arguments (not used in this application)
+     * <p>When started with {@code --batch <directory|glob> [--threads N]} the
+     * program skips the prompt and tallies every matching deck file
+     * concurrently through {@link BatchTally}. With {@code --watch <directory>}
+     * it keeps running and re-tallies decks as they change, through
+     * {@link DeckWatcher}. {@code --large <deck file>} reads a deck of any
+     * size without the line and invalid card limits, through
+     * {@link LargeDeckTally}. {@code --serve [--port N]} keeps running as a
+     * local HTTP service that turns posted deck text into a report, through
+     * {@link DeckServer}. With {@code -Ddeck.ledger=<directory>} every
+     * reported deck is also kept in a {@link DeckLedger}, which
+     * {@code --ledger <directory> --card name --min-total N} searches.
+     * {@code --similar <directory|glob>} groups near-duplicate decks, through
+     * {@link DeckSimilarity}. With {@code -Ddeck.analytics=<file>} every
+     * reported deck is also added to the {@link DeckAnalytics} sketches in that
+     * file, which {@code --analytics <file>...} merges and summarizes.
+     * {@code --archive <bundle.zip> [--out-zip reports.zip]} reports every deck
+     * of a zip or gzip export without extracting it, through
+     * {@link DeckArchive}; a {@code .zip} or {@code .gz} path given at the
+     * prompt is read the same way.
+     * {@code -Ddeck.formats=csv,jsonl} (or
+     * {@code --format} in those modes) picks the {@link ReportWriter}s instead
+     * of the PDF alone. With {@code -Ddeck.catalog=<file>} card names and
+     * costs are checked against a {@link CardCatalog} and the disagreements are
+     * printed. With {@code -Ddeck.metrics.file=<file>} the
+     * {@link DeckMetrics} are written to that file while the program runs.</p>
+     *
+     * @param args command-line arguments; empty for the interactive mode
      */
     public static void main(String[] args) {
+        DeckMetrics.startExporterFromProperty(10); //only if -Ddeck.metrics.file is set
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchTally.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            DeckWatcher.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--large")) {
+            LargeDeckTally.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            DeckServer.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--ledger")) {
+            DeckLedger.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--similar")) {
+            DeckSimilarity.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--analytics")) {
+            DeckAnalytics.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--archive")) {
+            DeckArchive.main(args);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         System.out.println("Enter the file path:");
         //String filePath = "/Users/sophiabrix/Desktop/Java Programs/SlayTheSpireDeckCostTally/src/Deck.txt";
@@ -249,17 +517,24 @@ public class SlayTheSpire {
 
         scanner.close();
 
-        boolean file_to_generate = readTxtFile(filePath);
+        Path directory = Paths.get(filePath).toAbsolutePath().getParent(); //the reports go next to the deck
+        if (filePath.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            try {
+                DeckArchive.report(Paths.get(filePath), directory, null, true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        DeckIDGenerator.setBlockSize(1); //a single deck needs a single ID
+        DeckTally tally = new DeckTally();
+        boolean file_to_generate = readTxtFile(filePath, tally);
+        for (String warning : tally.getCatalogWarnings()) { //only with -Ddeck.catalog
+            System.out.println("Catalog warning: " + warning);
+        }
 
-        String directory_path = filePath.substring(0, filePath.lastIndexOf("/")); //get the directory part
-        generateFile(file_to_generate, directory_path);
+        generateFile(file_to_generate, directory.toString(), tally);
 
     }
 }
-
-/*
-Things to Do:
-
-AFTER ALL FILES HAVE BEEN GENERATED THE HASHMAP AND LIST SHOULD BE CLEARED!!!
-
- */
\ No newline at end of file